@@ -0,0 +1,38 @@
+package com.redhat.ceylon.compiler.typechecker.benchmark;
+
+/**
+ * An operation measured by {@link BenchmarkRunner}, over
+ * and over, between {@link #setUp()} and {@link #tearDown()}.
+ */
+public abstract class Benchmark {
+
+    private final String name;
+
+    protected Benchmark(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Prepare the state used by the operation, which is not
+     * measured.
+     */
+    public void setUp() throws Exception {}
+
+    /**
+     * Run the operation once, returning its result, which is
+     * consumed so that the work can't be optimized away.
+     */
+    public abstract Object run() throws Exception;
+
+    public void tearDown() throws Exception {}
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
@@ -0,0 +1,120 @@
+package com.redhat.ceylon.compiler.typechecker.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the benchmarks of the type checker whose names match
+ * any of the given regular expressions, or all of them.
+ *
+ * Each benchmark is run for a number of warmup iterations,
+ * and then of measured iterations, of a fixed time each,
+ * given in milliseconds by the system properties
+ * benchmark.warmup, benchmark.iterations and benchmark.time.
+ * Prints the average time of an operation, with the
+ * standard deviation over the measured iterations.
+ */
+public class BenchmarkRunner {
+
+    private static final int WARMUP_ITERATIONS =
+            Integer.getInteger("benchmark.warmup", 5);
+    private static final int ITERATIONS =
+            Integer.getInteger("benchmark.iterations", 10);
+    private static final long ITERATION_TIME =
+            Long.getLong("benchmark.time", 1000) * 1000000;
+
+    //the results of the operations, so that the JIT
+    //can't eliminate them
+    private static volatile Object sink;
+
+    public static List<Benchmark> benchmarks() {
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        benchmarks.addAll(ModelBenchmarks.benchmarks());
+        benchmarks.addAll(ParserBenchmarks.benchmarks());
+        benchmarks.add(new TypeCheckerBenchmark());
+        return benchmarks;
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Pattern> patterns = new ArrayList<Pattern>();
+        for (String arg: args) {
+            patterns.add(Pattern.compile(arg));
+        }
+        System.out.println(String.format("%-32s %5s %14s    %10s  %s",
+                "Benchmark", "Cnt", "Score", "Stddev", "Units"));
+        for (Benchmark benchmark: benchmarks()) {
+            if (matches(benchmark, patterns)) {
+                run(benchmark);
+            }
+        }
+    }
+
+    private static boolean matches(Benchmark benchmark, List<Pattern> patterns) {
+        if (patterns.isEmpty()) {
+            return true;
+        }
+        for (Pattern pattern: patterns) {
+            if (pattern.matcher(benchmark.getName()).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void run(Benchmark benchmark) throws Exception {
+        benchmark.setUp();
+        double[] results = new double[ITERATIONS];
+        try {
+            for (int i=0; i<WARMUP_ITERATIONS; i++) {
+                iterate(benchmark);
+            }
+            for (int i=0; i<ITERATIONS; i++) {
+                results[i] = iterate(benchmark);
+            }
+        }
+        finally {
+            benchmark.tearDown();
+        }
+        double mean = 0;
+        for (double result: results) {
+            mean += result;
+        }
+        mean /= results.length;
+        double variance = 0;
+        for (double result: results) {
+            variance += (result-mean)*(result-mean);
+        }
+        double stddev = results.length>1 ?
+                Math.sqrt(variance/(results.length-1)) : 0;
+        System.out.println(String.format("%-32s %5d %14.3f +- %10.3f  ns/op",
+                benchmark.getName(), results.length, mean, stddev));
+    }
+
+    /**
+     * Run the operation for an iteration, in batches which
+     * grow until they take a significant part of it, so
+     * that reading the clock does not distort the result.
+     *
+     * @return the average time of an operation
+     */
+    private static double iterate(Benchmark benchmark) throws Exception {
+        long operations = 0;
+        long batch = 1;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (long i=0; i<batch; i++) {
+                sink = benchmark.run();
+            }
+            operations += batch;
+            elapsed = System.nanoTime()-start;
+            if (elapsed<ITERATION_TIME/100) {
+                batch *= 2;
+            }
+        }
+        while (elapsed<ITERATION_TIME);
+        return elapsed / (double) operations;
+    }
+
+}
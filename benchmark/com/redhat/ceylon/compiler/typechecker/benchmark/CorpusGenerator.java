@@ -0,0 +1,343 @@
+package com.redhat.ceylon.compiler.typechecker.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Generates a synthetic Ceylon project, free of errors,
+ * whose size and shape are given by its parameters:
+ *
+ * - modules: the number of modules, each of which imports,
+ *   and exports, the two previous modules, so that the
+ *   imports form diamonds,
+ * - packages: the number of packages of each module,
+ * - files: the number of files of declarations of each
+ *   package,
+ * - declarations: the number of toplevel declarations of
+ *   each of these files,
+ * - depth: the depth of the hierarchy of classes and of
+ *   interfaces declared in each package,
+ * - width: the number of cases of the enumerated class
+ *   declared in each package, and so the width of the
+ *   unions of its cases,
+ * - refinements: the number of members refined at each
+ *   level of the hierarchy.
+ *
+ * Run with the directory to generate the project in, and
+ * the parameters given by the system properties
+ * corpus.modules, corpus.packages, corpus.files,
+ * corpus.declarations, corpus.depth, corpus.width and
+ * corpus.refinements.
+ */
+public class CorpusGenerator {
+
+    /**
+     * The names of the parameters.
+     */
+    public static final List<String> PARAMETERS =
+            Collections.unmodifiableList(Arrays.asList(
+                    "modules", "packages", "files", "declarations",
+                    "depth", "width", "refinements"));
+
+    private int modules = 4;
+    private int packages = 4;
+    private int files = 4;
+    private int declarations = 25;
+    private int depth = 4;
+    private int width = 4;
+    private int refinements = 4;
+
+    public CorpusGenerator modules(int modules) {
+        this.modules = atLeast(1, modules, "modules");
+        return this;
+    }
+
+    public CorpusGenerator packages(int packages) {
+        this.packages = atLeast(1, packages, "packages");
+        return this;
+    }
+
+    public CorpusGenerator files(int files) {
+        this.files = atLeast(0, files, "files");
+        return this;
+    }
+
+    public CorpusGenerator declarations(int declarations) {
+        this.declarations = atLeast(0, declarations, "declarations");
+        return this;
+    }
+
+    public CorpusGenerator depth(int depth) {
+        this.depth = atLeast(1, depth, "depth");
+        return this;
+    }
+
+    public CorpusGenerator width(int width) {
+        this.width = atLeast(1, width, "width");
+        return this;
+    }
+
+    public CorpusGenerator refinements(int refinements) {
+        this.refinements = atLeast(0, refinements, "refinements");
+        return this;
+    }
+
+    /**
+     * The value of the parameter with the given name.
+     */
+    public int get(String parameter) {
+        switch (PARAMETERS.indexOf(parameter)) {
+        case 0: return modules;
+        case 1: return packages;
+        case 2: return files;
+        case 3: return declarations;
+        case 4: return depth;
+        case 5: return width;
+        case 6: return refinements;
+        default: throw new IllegalArgumentException("unknown parameter: " +
+                parameter + ", expected one of " + PARAMETERS);
+        }
+    }
+
+    /**
+     * Set the parameter with the given name.
+     */
+    public CorpusGenerator set(String parameter, int value) {
+        switch (PARAMETERS.indexOf(parameter)) {
+        case 0: return modules(value);
+        case 1: return packages(value);
+        case 2: return files(value);
+        case 3: return declarations(value);
+        case 4: return depth(value);
+        case 5: return width(value);
+        case 6: return refinements(value);
+        default: throw new IllegalArgumentException("unknown parameter: " +
+                parameter + ", expected one of " + PARAMETERS);
+        }
+    }
+
+    private static int atLeast(int min, int value, String parameter) {
+        if (value<min) {
+            throw new IllegalArgumentException(parameter +
+                    " must be at least " + min + ": " + value);
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "modules=" + modules + " packages=" + packages +
+                " files=" + files + " declarations=" + declarations +
+                " depth=" + depth + " width=" + width +
+                " refinements=" + refinements;
+    }
+
+    /**
+     * The number of source files of the generated project.
+     */
+    public int getSourceFiles() {
+        return modules * (1 + packages * (3 + files));
+    }
+
+    /**
+     * Generate the project in the given source directory.
+     */
+    public void generate(File directory) throws IOException {
+        for (int m=0; m<modules; m++) {
+            File moduleDirectory = new File(directory, "gen/m" + m);
+            write(new File(moduleDirectory, "module.ceylon"), module(m));
+            for (int p=0; p<packages; p++) {
+                File packageDirectory = new File(moduleDirectory, "p" + p);
+                write(new File(packageDirectory, "package.ceylon"),
+                        "shared package " + packageName(m, p) + ";\n");
+                write(new File(packageDirectory, "Hierarchy.ceylon"), hierarchy());
+                write(new File(packageDirectory, "Cases.ceylon"), cases());
+                for (int f=0; f<files; f++) {
+                    write(new File(packageDirectory, "Declarations" + f + ".ceylon"),
+                            declarations(m, p, f));
+                }
+            }
+        }
+    }
+
+    private static String moduleName(int m) {
+        return "gen.m" + m;
+    }
+
+    private static String packageName(int m, int p) {
+        return moduleName(m) + ".p" + p;
+    }
+
+    private static String module(int m) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("module ").append(moduleName(m)).append(" '1.0' {\n");
+        for (int d=Math.max(0, m-2); d<m; d++) {
+            sb.append("    shared import ").append(moduleName(d)).append(" '1.0';\n");
+        }
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    /**
+     * An interface declaring the refined members, a chain of
+     * interfaces and a chain of classes refining each member
+     * at each level, and a class at the bottom.
+     */
+    private String hierarchy() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("shared interface Root {\n");
+        for (int r=0; r<refinements; r++) {
+            sb.append("    shared formal Integer member").append(r)
+                    .append("(Integer x);\n");
+        }
+        sb.append("}\n");
+        for (int l=0; l<depth; l++) {
+            sb.append("shared interface Trait").append(l).append(" satisfies ")
+                    .append(l==0 ? "Root" : "Trait" + (l-1)).append(" {}\n");
+        }
+        for (int l=0; l<depth; l++) {
+            sb.append("shared abstract class Level").append(l).append("() ");
+            if (l>0) {
+                sb.append("extends Level").append(l-1).append("() ");
+            }
+            sb.append("satisfies Trait").append(l).append(" {\n");
+            for (int r=0; r<refinements; r++) {
+                sb.append("    shared actual default Integer member").append(r)
+                        .append("(Integer x) => ")
+                        .append(l==0 ? "x" : "super.member" + r + "(x)")
+                        .append(" + ").append(l).append(";\n");
+            }
+            sb.append("}\n");
+        }
+        sb.append("shared class Leaf() extends Level").append(depth-1).append("() {}\n");
+        return sb.toString();
+    }
+
+    /**
+     * An enumerated class, a function returning the union of
+     * its cases, and a function switching over its cases.
+     */
+    private String cases() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("shared abstract class Case() of ");
+        appendCases(sb);
+        sb.append(" {}\n");
+        for (int c=0; c<width; c++) {
+            sb.append("shared class Case").append(c).append("() extends Case() {}\n");
+        }
+        sb.append("shared ");
+        appendCases(sb);
+        sb.append(" anyCase(Integer i) {\n");
+        for (int c=0; c<width-1; c++) {
+            sb.append("    if (i==").append(c).append(") { return Case")
+                    .append(c).append("(); }\n");
+        }
+        sb.append("    return Case").append(width-1).append("();\n");
+        sb.append("}\n");
+        sb.append("shared Integer caseIndex(Case c) {\n");
+        sb.append("    switch (c)\n");
+        for (int c=0; c<width; c++) {
+            sb.append("    case (is Case").append(c).append(") { return ")
+                    .append(c).append("; }\n");
+        }
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private void appendCases(StringBuilder sb) {
+        for (int c=0; c<width; c++) {
+            if (c>0) {
+                sb.append("|");
+            }
+            sb.append("Case").append(c);
+        }
+    }
+
+    /**
+     * Functions, classes extending the hierarchy and refining
+     * its members, and values using the cases and the
+     * declarations of the imported modules.
+     */
+    private String declarations(int m, int p, int f) {
+        int dependencies = Math.min(m, 2);
+        StringBuilder sb = new StringBuilder();
+        for (int d=1; d<=dependencies; d++) {
+            sb.append("import ").append(packageName(m-d, p % packages))
+                    .append(" { Root").append(d).append("=Root, Leaf")
+                    .append(d).append("=Leaf, anyCase").append(d)
+                    .append("=anyCase, caseIndex").append(d)
+                    .append("=caseIndex }\n");
+        }
+        for (int k=0; k<declarations; k++) {
+            String name = "declaration" + f + "_" + k;
+            int level = (k/4) % depth;
+            switch (k%4) {
+            case 0:
+                sb.append("shared Integer ").append(name)
+                        .append("(Integer x) => x + ").append(k).append(";\n");
+                break;
+            case 1:
+                sb.append("shared class Declaration").append(f).append("_").append(k)
+                        .append("() extends Level").append(level).append("() {\n");
+                if (refinements>0) {
+                    int r = (k/4) % refinements;
+                    sb.append("    shared actual Integer member").append(r)
+                            .append("(Integer x) => super.member").append(r)
+                            .append("(x) * 2;\n");
+                }
+                sb.append("}\n");
+                break;
+            case 2:
+                sb.append("shared Integer ").append(name)
+                        .append(" = caseIndex(anyCase(").append(k).append("));\n");
+                break;
+            default:
+                if (dependencies==0) {
+                    sb.append("shared Root ").append(name).append(" = Leaf();\n");
+                }
+                else {
+                    int d = 1 + level % dependencies;
+                    sb.append("shared Root").append(d).append(" ").append(name)
+                            .append(" = Leaf").append(d).append("();\n");
+                    sb.append("shared Integer ").append(name).append("Case = caseIndex")
+                            .append(d).append("(anyCase").append(d).append("(")
+                            .append(k).append("));\n");
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void write(File file, String contents) throws IOException {
+        file.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(contents);
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length!=1) {
+            System.err.println("Usage: CorpusGenerator <source directory>");
+            System.exit(1);
+        }
+        CorpusGenerator generator = new CorpusGenerator();
+        for (String parameter: PARAMETERS) {
+            generator.set(parameter, Integer.getInteger("corpus." + parameter,
+                    generator.get(parameter)));
+        }
+        generator.generate(new File(args[0]));
+        System.out.println("Generated " + generator.getSourceFiles() +
+                " source files with " + generator + " in " + args[0]);
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.redhat.ceylon.compiler.typechecker.benchmark;
+
+import java.io.File;
+
+import com.redhat.ceylon.compiler.typechecker.TypeChecker;
+import com.redhat.ceylon.compiler.typechecker.TypeCheckerBuilder;
+import com.redhat.ceylon.compiler.typechecker.model.Package;
+import com.redhat.ceylon.compiler.typechecker.model.Unit;
+
+/**
+ * The sources and the model measured by the benchmarks:
+ * test/main, or the source directory given by the system
+ * property benchmark.sources.
+ */
+final class Fixtures {
+
+    private static TypeChecker typeChecker;
+
+    private Fixtures() {}
+
+    static File sources() {
+        return new File(System.getProperty("benchmark.sources", "test/main"));
+    }
+
+    static TypeChecker typeCheck() {
+        TypeChecker typeChecker = new TypeCheckerBuilder()
+                .verbose(false)
+                .addSrcDirectory(sources())
+                .getTypeChecker();
+        typeChecker.process();
+        return typeChecker;
+    }
+
+    /**
+     * A type checker which has checked the sources, shared
+     * by the benchmarks of the model.
+     */
+    static synchronized TypeChecker checkedTypeChecker() {
+        if (typeChecker==null) {
+            typeChecker = typeCheck();
+        }
+        return typeChecker;
+    }
+
+    static Package languagePackage() {
+        return checkedTypeChecker().getContext().getModules()
+                .getLanguageModule().getDirectPackage("ceylon.language");
+    }
+
+    /**
+     * A unit of the language module, to look up the types
+     * of the language module.
+     */
+    static Unit languageUnit() {
+        return languagePackage().getUnits().iterator().next();
+    }
+
+    /**
+     * The largest source file.
+     */
+    static File largestSourceFile() {
+        File largest = largest(sources(), null);
+        if (largest==null) {
+            throw new IllegalStateException("no source file in " + sources());
+        }
+        return largest;
+    }
+
+    private static File largest(File file, File largest) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children!=null) {
+                for (File child: children) {
+                    largest = largest(child, largest);
+                }
+            }
+        }
+        else if (file.getName().endsWith(".ceylon") &&
+                (largest==null || file.length()>largest.length())) {
+            largest = file;
+        }
+        return largest;
+    }
+
+}
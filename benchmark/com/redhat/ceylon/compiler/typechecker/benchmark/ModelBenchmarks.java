@@ -0,0 +1,264 @@
+package com.redhat.ceylon.compiler.typechecker.benchmark;
+
+import static com.redhat.ceylon.compiler.typechecker.model.Util.intersectionType;
+import static com.redhat.ceylon.compiler.typechecker.model.Util.producedType;
+import static com.redhat.ceylon.compiler.typechecker.model.Util.unionType;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.redhat.ceylon.compiler.typechecker.model.Package;
+import com.redhat.ceylon.compiler.typechecker.model.ProducedType;
+import com.redhat.ceylon.compiler.typechecker.model.SubtypeCache;
+import com.redhat.ceylon.compiler.typechecker.model.TypeCaches;
+import com.redhat.ceylon.compiler.typechecker.model.TypeDeclaration;
+import com.redhat.ceylon.compiler.typechecker.model.Unit;
+
+/**
+ * Benchmarks of the operations of the model the type checker
+ * spends most of its time in, applied to the types of the
+ * language module. Each operation cycles through a few
+ * different arguments, so that no single case dominates.
+ */
+final class ModelBenchmarks {
+
+    private ModelBenchmarks() {}
+
+    static List<Benchmark> benchmarks() {
+        return Arrays.asList(
+                new SubtypeBenchmark("model.isSubtypeOf", false),
+                new SubtypeBenchmark("model.isSubtypeOf.cached", true),
+                new SupertypeBenchmark(),
+                new UnionBenchmark(),
+                new IntersectionBenchmark(),
+                new MemberBenchmark(),
+                new PackageMemberBenchmark());
+    }
+
+    /**
+     * Types of the language module.
+     */
+    private static abstract class TypesBenchmark extends Benchmark {
+
+        Unit unit;
+        ProducedType string;
+        ProducedType integer;
+        ProducedType float_;
+        ProducedType object;
+        ProducedType null_;
+        ProducedType stringSequential;
+        ProducedType objectIterable;
+        ProducedType integerComparable;
+        int index;
+
+        TypesBenchmark(String name) {
+            super(name);
+        }
+
+        @Override
+        public void setUp() {
+            unit = Fixtures.languageUnit();
+            string = unit.getStringDeclaration().getType();
+            integer = unit.getIntegerDeclaration().getType();
+            float_ = unit.getFloatDeclaration().getType();
+            object = unit.getObjectDeclaration().getType();
+            null_ = unit.getNullDeclaration().getType();
+            stringSequential = unit.getSequentialType(string);
+            objectIterable = unit.getIterableType(object);
+            integerComparable = producedType(unit.getComparableDeclaration(), integer);
+        }
+
+        /**
+         * The next of the given number of cases.
+         */
+        int next(int cases) {
+            int next = index;
+            index = next+1==cases ? 0 : next+1;
+            return next;
+        }
+
+    }
+
+    private static class SubtypeBenchmark extends TypesBenchmark {
+
+        private final boolean cached;
+        private ProducedType[][] cases;
+        private TypeCaches previous;
+
+        SubtypeBenchmark(String name, boolean cached) {
+            super(name);
+            this.cached = cached;
+        }
+
+        @Override
+        public void setUp() {
+            super.setUp();
+            cases = new ProducedType[][] {
+                    { string, object },
+                    { stringSequential, objectIterable },
+                    { integer, integerComparable },
+                    { unit.getOptionalType(string), object },
+                    { unionType(string, integer, unit), object },
+                    { float_, integerComparable }
+            };
+            previous = cached ?
+                    new TypeCaches(new SubtypeCache(100000), null, null, null).install() :
+                    TypeCaches.suspend();
+        }
+
+        @Override
+        public Object run() {
+            ProducedType[] types = cases[next(cases.length)];
+            return types[0].isSubtypeOf(types[1]);
+        }
+
+        @Override
+        public void tearDown() {
+            TypeCaches.restore(previous);
+        }
+
+    }
+
+    private static class SupertypeBenchmark extends TypesBenchmark {
+
+        private ProducedType[] types;
+        private TypeDeclaration[] declarations;
+
+        SupertypeBenchmark() {
+            super("model.getSupertype");
+        }
+
+        @Override
+        public void setUp() {
+            super.setUp();
+            types = new ProducedType[] {
+                    string, stringSequential, integer, integer
+            };
+            declarations = new TypeDeclaration[] {
+                    unit.getIterableDeclaration(),
+                    unit.getIterableDeclaration(),
+                    unit.getComparableDeclaration(),
+                    unit.getObjectDeclaration()
+            };
+        }
+
+        @Override
+        public Object run() {
+            int i = next(types.length);
+            return types[i].getSupertype(declarations[i]);
+        }
+
+    }
+
+    private static class UnionBenchmark extends TypesBenchmark {
+
+        private List<ProducedType> types;
+
+        UnionBenchmark() {
+            super("model.unionType");
+        }
+
+        @Override
+        public void setUp() {
+            super.setUp();
+            types = Arrays.asList(string, integer, float_, null_,
+                    stringSequential, object);
+        }
+
+        @Override
+        public Object run() {
+            //the unions of 2 to 6 types, the last of which
+            //absorbs the other types but the null type
+            return unionType(types.subList(0, 2 + next(types.size()-1)), unit);
+        }
+
+    }
+
+    private static class IntersectionBenchmark extends TypesBenchmark {
+
+        private ProducedType[][] cases;
+
+        IntersectionBenchmark() {
+            super("model.intersectionType");
+        }
+
+        @Override
+        public void setUp() {
+            super.setUp();
+            cases = new ProducedType[][] {
+                    { string, object },
+                    { stringSequential, objectIterable },
+                    { integer, integerComparable },
+                    { string, integer },
+                    { unit.getOptionalType(string), object }
+            };
+        }
+
+        @Override
+        public Object run() {
+            ProducedType[] types = cases[next(cases.length)];
+            return intersectionType(types[0], types[1], unit);
+        }
+
+    }
+
+    private static class MemberBenchmark extends TypesBenchmark {
+
+        private TypeDeclaration[] declarations;
+        private String[] names;
+
+        MemberBenchmark() {
+            super("model.getMember");
+        }
+
+        @Override
+        public void setUp() {
+            super.setUp();
+            declarations = new TypeDeclaration[] {
+                    unit.getStringDeclaration(),
+                    unit.getStringDeclaration(),
+                    unit.getSequentialDeclaration(),
+                    unit.getIntegerDeclaration(),
+                    unit.getObjectDeclaration()
+            };
+            names = new String[] {
+                    "size", "iterator", "first", "plus", "undefined"
+            };
+        }
+
+        @Override
+        public Object run() {
+            int i = next(names.length);
+            return declarations[i].getMember(names[i], null, false);
+        }
+
+    }
+
+    private static class PackageMemberBenchmark extends Benchmark {
+
+        private Package pkg;
+        private final String[] names = {
+                "String", "Integer", "Iterable", "print", "Sequential",
+                "undefined"
+        };
+        private int index;
+
+        PackageMemberBenchmark() {
+            super("model.packageMember");
+        }
+
+        @Override
+        public void setUp() {
+            pkg = Fixtures.languagePackage();
+        }
+
+        @Override
+        public Object run() {
+            String name = names[index];
+            index = index+1==names.length ? 0 : index+1;
+            return pkg.getMember(name, null, false);
+        }
+
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.redhat.ceylon.compiler.typechecker.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.CommonTokenStream;
+
+import com.redhat.ceylon.compiler.typechecker.parser.CeylonLexer;
+import com.redhat.ceylon.compiler.typechecker.parser.CeylonParser;
+
+/**
+ * Benchmarks of the lexing and parsing of the largest
+ * source file.
+ */
+final class ParserBenchmarks {
+
+    private ParserBenchmarks() {}
+
+    static List<Benchmark> benchmarks() {
+        return Arrays.<Benchmark>asList(
+                new SourceBenchmark("parser.lex") {
+                    @Override
+                    public Object run() {
+                        CommonTokenStream tokens = new CommonTokenStream(lexer());
+                        tokens.fill();
+                        return tokens.size();
+                    }
+                },
+                new SourceBenchmark("parser.parse") {
+                    @Override
+                    public Object run() throws Exception {
+                        return new CeylonParser(new CommonTokenStream(lexer()))
+                                .compilationUnit();
+                    }
+                });
+    }
+
+    private static abstract class SourceBenchmark extends Benchmark {
+
+        private String source;
+
+        SourceBenchmark(String name) {
+            super(name);
+        }
+
+        @Override
+        public void setUp() throws Exception {
+            source = read(Fixtures.largestSourceFile());
+        }
+
+        CeylonLexer lexer() {
+            return new CeylonLexer(new ANTLRStringStream(source));
+        }
+
+    }
+
+    private static String read(File file) throws Exception {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream contents = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer))>=0) {
+                contents.write(buffer, 0, read);
+            }
+            return contents.toString("UTF-8");
+        }
+        finally {
+            in.close();
+        }
+    }
+
+}
@@ -0,0 +1,156 @@
+package com.redhat.ceylon.compiler.typechecker.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.redhat.ceylon.compiler.typechecker.TypeChecker;
+import com.redhat.ceylon.compiler.typechecker.TypeCheckerBuilder;
+import com.redhat.ceylon.compiler.typechecker.util.Timings.Measurement;
+
+/**
+ * Type checks synthetic projects generated by the
+ * {@link CorpusGenerator}, growing each of the given
+ * parameters of the generator in turn, or all of them,
+ * and prints the time of each phase at each size. The
+ * exponent of the growth of the time of a phase with the
+ * size is about 1 when it scales linearly, and about 2
+ * when it scales quadratically.
+ *
+ * The sizes are the multiples of the default value of the
+ * parameter given by the system property scaling.factors,
+ * 1,2,4,8 by default. Each project is type checked
+ * scaling.runs times, 3 by default, and the fastest time
+ * of each phase is reported.
+ */
+public class ScalingBenchmark {
+
+    private static final int RUNS =
+            Integer.getInteger("scaling.runs", 3);
+
+    public static void main(String[] args) throws Exception {
+        int[] factors = factors(System.getProperty("scaling.factors", "1,2,4,8"));
+        List<String> parameters = args.length==0 ?
+                CorpusGenerator.PARAMETERS : Arrays.asList(args);
+        for (String parameter: parameters) {
+            //reject unknown parameters before measuring anything
+            new CorpusGenerator().get(parameter);
+        }
+        //warm up the JIT, so that the first size is not
+        //measured interpreted
+        for (int i=0; i<RUNS; i++) {
+            typeCheck(new CorpusGenerator());
+        }
+        for (String parameter: parameters) {
+            scale(parameter, factors);
+        }
+    }
+
+    private static int[] factors(String factors) {
+        String[] values = factors.split(",");
+        int[] result = new int[values.length];
+        for (int i=0; i<values.length; i++) {
+            result[i] = Integer.parseInt(values[i].trim());
+        }
+        return result;
+    }
+
+    private static void scale(String parameter, int[] factors)
+            throws IOException {
+        int base = new CorpusGenerator().get(parameter);
+        //the fastest time of each phase, in ms, at each size
+        Map<String,double[]> phases = new LinkedHashMap<String,double[]>();
+        int[] sizes = new int[factors.length];
+        int errors = 0;
+        for (int i=0; i<factors.length; i++) {
+            sizes[i] = base*factors[i];
+            CorpusGenerator generator = new CorpusGenerator()
+                    .set(parameter, sizes[i]);
+            for (int run=0; run<RUNS; run++) {
+                TypeChecker typeChecker = typeCheck(generator);
+                errors += typeChecker.getErrors();
+                for (Measurement phase: typeChecker.getTimings().getPhases()) {
+                    double[] times = phases.get(phase.getName());
+                    if (times==null) {
+                        times = new double[factors.length];
+                        Arrays.fill(times, Double.MAX_VALUE);
+                        phases.put(phase.getName(), times);
+                    }
+                    times[i] = Math.min(times[i], phase.getWallTime()/1e6);
+                }
+            }
+        }
+        System.out.println();
+        System.out.println("Scaling " + parameter +
+                (errors==0 ? "" : " (" + errors + " errors)"));
+        StringBuilder header = new StringBuilder(String.format("%-24s", "Phase"));
+        for (int size: sizes) {
+            header.append(String.format(" %10s", parameter.substring(0, 3) + "=" + size));
+        }
+        header.append(String.format(" %9s", "Exponent"));
+        System.out.println(header);
+        for (Map.Entry<String,double[]> phase: phases.entrySet()) {
+            double[] times = phase.getValue();
+            StringBuilder row = new StringBuilder(String.format("%-24s", phase.getKey()));
+            for (double time: times) {
+                row.append(String.format(" %10.1f", time));
+            }
+            row.append(String.format(" %9.2f", exponent(sizes, times)));
+            System.out.println(row);
+        }
+    }
+
+    /**
+     * The exponent of the growth of the times from the
+     * smallest to the largest size.
+     */
+    private static double exponent(int[] sizes, double[] times) {
+        int last = sizes.length-1;
+        if (last==0 || sizes[last]==sizes[0] ||
+                times[0]<=0 || times[last]<=0) {
+            return Double.NaN;
+        }
+        return Math.log(times[last]/times[0]) /
+                Math.log(sizes[last]/(double) sizes[0]);
+    }
+
+    private static TypeChecker typeCheck(CorpusGenerator generator)
+            throws IOException {
+        File directory = createDirectory();
+        try {
+            generator.generate(directory);
+            TypeChecker typeChecker = new TypeCheckerBuilder()
+                    .verbose(false)
+                    .timings(true)
+                    .addSrcDirectory(directory)
+                    .getTypeChecker();
+            typeChecker.process();
+            return typeChecker;
+        }
+        finally {
+            delete(directory);
+        }
+    }
+
+    private static File createDirectory() throws IOException {
+        File directory = File.createTempFile("corpus", "");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("could not create " + directory);
+        }
+        return directory;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children!=null) {
+            for (File child: children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+}
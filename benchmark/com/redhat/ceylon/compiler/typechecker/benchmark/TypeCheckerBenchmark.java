@@ -0,0 +1,18 @@
+package com.redhat.ceylon.compiler.typechecker.benchmark;
+
+/**
+ * Parses and type checks the sources with a new type
+ * checker.
+ */
+class TypeCheckerBenchmark extends Benchmark {
+
+    TypeCheckerBenchmark() {
+        super("typechecker.process");
+    }
+
+    @Override
+    public Object run() {
+        return Fixtures.typeCheck();
+    }
+
+}
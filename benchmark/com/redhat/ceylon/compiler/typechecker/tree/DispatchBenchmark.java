@@ -0,0 +1,174 @@
+package com.redhat.ceylon.compiler.typechecker.tree;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.antlr.runtime.ANTLRInputStream;
+import org.antlr.runtime.CommonTokenStream;
+
+import com.redhat.ceylon.compiler.typechecker.analyzer.AliasVisitor;
+import com.redhat.ceylon.compiler.typechecker.analyzer.ControlFlowVisitor;
+import com.redhat.ceylon.compiler.typechecker.analyzer.DeclarationVisitor;
+import com.redhat.ceylon.compiler.typechecker.analyzer.ExpressionVisitor;
+import com.redhat.ceylon.compiler.typechecker.analyzer.LiteralVisitor;
+import com.redhat.ceylon.compiler.typechecker.analyzer.OccurrenceVisitor;
+import com.redhat.ceylon.compiler.typechecker.analyzer.RefinementVisitor;
+import com.redhat.ceylon.compiler.typechecker.analyzer.SpecificationVisitor;
+import com.redhat.ceylon.compiler.typechecker.analyzer.TypeArgumentVisitor;
+import com.redhat.ceylon.compiler.typechecker.analyzer.TypeHierarchyVisitor;
+import com.redhat.ceylon.compiler.typechecker.analyzer.TypeVisitor;
+import com.redhat.ceylon.compiler.typechecker.parser.CeylonLexer;
+import com.redhat.ceylon.compiler.typechecker.parser.CeylonParser;
+import com.redhat.ceylon.compiler.typechecker.util.ReferenceCounter;
+import com.redhat.ceylon.compiler.typechecker.util.UsageVisitor;
+
+/**
+ * Measures the dispatch of nodes to visitors over the given
+ * source directories or files, test/main by default.
+ *
+ * For each visitor of the type checker, prints the number of
+ * virtual calls it takes, on average, to get from a node to
+ * the visit() method that handles it: through each of the
+ * default visit() methods of its supertypes, up to the one
+ * the visitor overrides, or to visitAny(), as the visitors
+ * used to, or in a single call through the dispatch table.
+ * Then prints the time it takes to walk the trees.
+ */
+public class DispatchBenchmark {
+
+    @SuppressWarnings("unchecked")
+    private static final Class<? extends Visitor>[] VISITORS = new Class[] {
+        Validator.class, LiteralVisitor.class, DeclarationVisitor.class,
+        TypeVisitor.class, AliasVisitor.class, RefinementVisitor.class,
+        ExpressionVisitor.class, TypeArgumentVisitor.class,
+        TypeHierarchyVisitor.class, ControlFlowVisitor.class,
+        OccurrenceVisitor.class, SpecificationVisitor.class,
+        ReferenceCounter.class, UsageVisitor.class
+    };
+
+    private static final int ITERATIONS = 20;
+
+    public static void main(String[] args) throws Exception {
+        List<File> files = new ArrayList<File>();
+        if (args.length==0) {
+            collect(new File("test/main"), files);
+        }
+        for (String arg: args) {
+            collect(new File(arg), files);
+        }
+        List<Tree.CompilationUnit> units = new ArrayList<Tree.CompilationUnit>();
+        for (File file: files) {
+            units.add(parse(file));
+        }
+        int[] kinds = countKinds(units);
+        long nodes = 0;
+        for (int count: kinds) {
+            nodes += count;
+        }
+        System.out.println(files.size() + " files, " + nodes + " nodes");
+        System.out.println();
+        System.out.println("virtual calls per node   cascade   table");
+        for (Class<? extends Visitor> visitorClass: VISITORS) {
+            int[] handlers = DispatchTable.handlers(visitorClass);
+            long calls = 0;
+            for (int kind=0; kind<kinds.length; kind++) {
+                calls += kinds[kind] * (long) cascadeCalls(kind, handlers[kind]);
+            }
+            System.out.println(String.format("%-24s %8.2f %7.2f",
+                    visitorClass.getSimpleName(), calls / (double) nodes, 1.0));
+        }
+        System.out.println();
+        time("walk, no visit() overridden", units, nodes, new Visitor() {});
+        time("walk, visit(Term) and visit(Declaration) overridden",
+                units, nodes, new Visitor() {
+            @Override
+            public void visit(Tree.Term that) {
+                super.visit(that);
+            }
+            @Override
+            public void visit(Tree.Declaration that) {
+                super.visit(that);
+            }
+        });
+    }
+
+    /**
+     * The number of virtual calls from the visit(Visitor)
+     * method of a node of the given kind to the method which
+     * handles it, when each default visit() method calls the
+     * visit() method of the supertype.
+     */
+    private static int cascadeCalls(int kind, int handler) {
+        int calls = 1;
+        for (int k=kind; k!=handler; k=Visitor.SUPER_KINDS[k]) {
+            //one more call to the supertype, or to visitAny()
+            calls++;
+        }
+        return calls;
+    }
+
+    private static int[] countKinds(List<Tree.CompilationUnit> units) {
+        final int[] kinds = new int[Tree.NODE_KINDS];
+        Visitor counter = new Visitor() {
+            @Override
+            public void visitAny(Node that) {
+                kinds[that.getNodeKind()]++;
+                super.visitAny(that);
+            }
+        };
+        for (Tree.CompilationUnit unit: units) {
+            unit.visit(counter);
+        }
+        return kinds;
+    }
+
+    private static void time(String description, List<Tree.CompilationUnit> units,
+            long nodes, Visitor visitor) {
+        //warm up
+        for (int i=0; i<ITERATIONS; i++) {
+            walk(units, visitor);
+        }
+        long start = System.nanoTime();
+        for (int i=0; i<ITERATIONS; i++) {
+            walk(units, visitor);
+        }
+        long time = System.nanoTime()-start;
+        System.out.println(String.format("%-52s %6.2f ns/node", description,
+                time / (double) (ITERATIONS * nodes)));
+    }
+
+    private static void walk(List<Tree.CompilationUnit> units, Visitor visitor) {
+        for (Tree.CompilationUnit unit: units) {
+            unit.visit(visitor);
+        }
+    }
+
+    private static void collect(File file, List<File> files) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children!=null) {
+                for (File child: children) {
+                    collect(child, files);
+                }
+            }
+        }
+        else if (file.getName().endsWith(".ceylon")) {
+            files.add(file);
+        }
+    }
+
+    private static Tree.CompilationUnit parse(File file) throws Exception {
+        InputStream in = new FileInputStream(file);
+        try {
+            CeylonLexer lexer = new CeylonLexer(new ANTLRInputStream(in, "UTF-8"));
+            return new CeylonParser(new CommonTokenStream(lexer)).compilationUnit();
+        }
+        finally {
+            in.close();
+        }
+    }
+
+}
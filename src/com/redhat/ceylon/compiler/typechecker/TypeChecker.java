@@ -1,19 +1,47 @@
 package com.redhat.ceylon.compiler.typechecker;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
-import com.redhat.ceylon.cmr.api.RepositoryManager;
+import com.redhat.ceylon.compiler.typechecker.analyzer.ModelArchive;
+import com.redhat.ceylon.compiler.typechecker.analyzer.ModuleManager;
 import com.redhat.ceylon.compiler.typechecker.analyzer.ModuleValidator;
 import com.redhat.ceylon.compiler.typechecker.context.Context;
+import com.redhat.ceylon.compiler.typechecker.context.PackageLoader;
+import com.redhat.ceylon.compiler.typechecker.context.ParsedUnitCache;
 import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
 import com.redhat.ceylon.compiler.typechecker.context.PhasedUnits;
-import com.redhat.ceylon.compiler.typechecker.io.VFS;
 import com.redhat.ceylon.compiler.typechecker.io.VirtualFile;
 import com.redhat.ceylon.compiler.typechecker.model.Module;
+import com.redhat.ceylon.compiler.typechecker.model.Package;
+import com.redhat.ceylon.compiler.typechecker.model.MemberLookupCache;
+import com.redhat.ceylon.compiler.typechecker.model.SharedLanguageModule;
+import com.redhat.ceylon.compiler.typechecker.model.SubtypeCache;
+import com.redhat.ceylon.compiler.typechecker.model.TupleTypeCache;
+import com.redhat.ceylon.compiler.typechecker.model.TypeCaches;
+import com.redhat.ceylon.compiler.typechecker.model.TypeInterner;
+import com.redhat.ceylon.compiler.typechecker.model.Unit;
 import com.redhat.ceylon.compiler.typechecker.tree.Message;
+import com.redhat.ceylon.compiler.typechecker.tree.Tree;
 import com.redhat.ceylon.compiler.typechecker.util.AssertionVisitor;
-import com.redhat.ceylon.compiler.typechecker.util.ModuleManagerFactory;
 import com.redhat.ceylon.compiler.typechecker.util.StatisticsVisitor;
+import com.redhat.ceylon.compiler.typechecker.util.Timings;
 
 /**
  * Executes type checking upon construction and retrieve a CompilationUnit object for a given File.
@@ -33,26 +61,69 @@ public class TypeChecker {
     private List<PhasedUnits> phasedUnitsOfDependencies;
     private final boolean verifyDependencies;
     private final AssertionVisitor assertionVisitor;
+    //the errors and warnings counted for each unit
+    private final Map<String, int[]> messageCounts = 
+            new HashMap<String, int[]>();
     private final StatisticsVisitor statsVisitor;
+    private final int parallelism;
+    private final TypeCaches typeCaches;
+    private final Timings timings;
+    private final File timingsReport;
+    private boolean processed;
+    private SharedLanguageModule sharedLanguageModule;
 
     //package level
-    TypeChecker(VFS vfs, List<VirtualFile> srcDirectories, RepositoryManager repositoryManager, boolean verifyDependencies,
-            AssertionVisitor assertionVisitor, ModuleManagerFactory moduleManagerFactory, boolean verbose, boolean statistics,
-            List<String> moduleFilters) {
+    TypeChecker(TypeCheckerOptions options) {
         long start = System.nanoTime();
-        this.srcDirectories = srcDirectories;
-        this.verbose = verbose;
-        this.statistics = statistics;
-        this.context = new Context(repositoryManager, vfs);
-        this.phasedUnits = new PhasedUnits(context, moduleManagerFactory);
-        this.verifyDependencies = verifyDependencies;
-        this.assertionVisitor = assertionVisitor;
+        this.srcDirectories = options.srcDirectories;
+        this.verbose = options.verbose;
+        this.statistics = options.statistics;
+        this.context = new Context(options.repositoryManager, options.vfs);
+        if (options.parsedUnitCacheDirectory!=null) {
+            context.setParsedUnitCache(new ParsedUnitCache(options.parsedUnitCacheDirectory));
+        }
+        if (options.lazyDependencies) {
+            context.setPackageLoader(new PackageLoader());
+        }
+        context.setModelArchives(options.modelArchives);
+        context.setSharedLanguageModule(options.sharedLanguageModule);
+        this.timings = options.timings ? new Timings() : null;
+        this.timingsReport = options.timingsReport;
+        context.setTimings(this.timings);
+        this.phasedUnits = new PhasedUnits(context, options.moduleManagerFactory);
+        this.verifyDependencies = options.verifyDependencies;
+        this.assertionVisitor = options.assertionVisitor;
+        this.parallelism = options.parallelism;
+        this.typeCaches = new TypeCaches(
+                options.subtypeCacheSize>0 ? 
+                        new SubtypeCache(options.subtypeCacheSize) : null,
+                options.typeInternerSize>0 ? 
+                        new TypeInterner(options.typeInternerSize) : null,
+                options.memberLookupCacheSize>0 ? 
+                        new MemberLookupCache(options.memberLookupCacheSize) : null,
+                options.tupleTypeCacheSize>0 ? 
+                        new TupleTypeCache(options.tupleTypeCacheSize) : null);
         statsVisitor = new StatisticsVisitor();
-        phasedUnits.setModuleFilters(moduleFilters);
-        phasedUnits.parseUnits(srcDirectories);
+        phasedUnits.setModuleFilters(options.moduleFilters);
+        Timings.Timer timer = startPhase();
+        if (parallelism>1) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                phasedUnits.parseUnits(srcDirectories, pool);
+            }
+            finally {
+                pool.shutdown();
+            }
+        }
+        else {
+            phasedUnits.parseUnits(srcDirectories);
+        }
+        recordPhase("parse", timer);
         long time = System.nanoTime()-start;
-        if(statistics)
+        if(statistics) {
         	System.out.println("Parsed in " + time/1000000 + " ms");
+        	printParsedUnitCacheStatistics();
+        }
     }
 
     public PhasedUnits getPhasedUnits() {
@@ -72,6 +143,92 @@ public class TypeChecker {
         return context;
     }
 
+    /**
+     * A frozen copy of the model of the language module 
+     * read by this type checker, which can be shared with 
+     * type checkers created later, by passing it to
+     * {@link TypeCheckerBuilder#sharedLanguageModule(SharedLanguageModule)},
+     * or the one this type checker shares itself. The copy
+     * is made the first time, and is not affected when this
+     * type checker checks units again.
+     * 
+     * @throws IllegalStateException if this type checker 
+     *         has not processed its units yet
+     */
+    public synchronized SharedLanguageModule getSharedLanguageModule() {
+        if (!processed) {
+            throw new IllegalStateException("units not processed yet");
+        }
+        if (sharedLanguageModule==null) {
+            sharedLanguageModule = context.getSharedLanguageModule();
+        }
+        if (sharedLanguageModule==null) {
+            //the copy is read outside of this session
+            TypeCaches previous = TypeCaches.suspend();
+            try {
+                Module copy = ModelArchive.copyLanguageModule(
+                        context.getModules().getLanguageModule());
+                sharedLanguageModule = SharedLanguageModule.freeze(copy);
+            }
+            catch (IOException e) {
+                throw new IllegalStateException("unable to copy the language module", e);
+            }
+            finally {
+                TypeCaches.restore(previous);
+            }
+        }
+        return sharedLanguageModule;
+    }
+
+    /**
+     * The caches used once the type hierarchy is complete.
+     */
+    public TypeCaches getTypeCaches() {
+        return typeCaches;
+    }
+
+    /**
+     * The cache of subtype checks used once the type
+     * hierarchy is complete, or null if it is disabled.
+     */
+    public SubtypeCache getSubtypeCache() {
+        return typeCaches.getSubtypeCache();
+    }
+
+    /**
+     * The interner which shares the types produced once
+     * the type hierarchy is complete, or null if it is 
+     * disabled.
+     */
+    public TypeInterner getTypeInterner() {
+        return typeCaches.getTypeInterner();
+    }
+
+    /**
+     * The cache of member lookups used once the type
+     * hierarchy is complete, or null if it is disabled.
+     */
+    public MemberLookupCache getMemberLookupCache() {
+        return typeCaches.getMemberLookupCache();
+    }
+
+    /**
+     * The cache of the tuple types of parameter lists and
+     * tuples used once the type hierarchy is complete, or
+     * null if it is disabled.
+     */
+    public TupleTypeCache getTupleTypeCache() {
+        return typeCaches.getTupleTypeCache();
+    }
+
+    /**
+     * The measurements of the work done by this type 
+     * checker, or null if timings are disabled.
+     */
+    public Timings getTimings() {
+        return timings;
+    }
+
     /**
      * Return the PhasedUnit for a given relative path.
      * The path is relative to the source directory
@@ -121,17 +278,116 @@ public class TypeChecker {
     public void process() throws RuntimeException {
         long start = System.nanoTime();
         executePhases(phasedUnits, false);
+        processed = true;
         long time = System.nanoTime()-start;
-        if(statistics)
+        if(statistics) {
         	System.out.println("Type checked in " + time/1000000 + " ms");
+        	SubtypeCache subtypeCache = getSubtypeCache();
+        	TypeInterner typeInterner = getTypeInterner();
+        	MemberLookupCache memberLookupCache = getMemberLookupCache();
+        	TupleTypeCache tupleTypeCache = getTupleTypeCache();
+        	if (subtypeCache!=null)
+        	    System.out.println("Subtype checks: " + subtypeCache.getHits() + " cache hits, " + 
+        	            subtypeCache.getMisses() + " misses");
+        	if (typeInterner!=null)
+        	    System.out.println("Interned types: " + typeInterner.getHits() + " shared, " + 
+        	            typeInterner.getMisses() + " created");
+        	if (memberLookupCache!=null)
+        	    System.out.println("Member lookups: " + memberLookupCache.getHits() + " cache hits, " + 
+        	            memberLookupCache.getMisses() + " misses");
+        	if (tupleTypeCache!=null)
+        	    System.out.println("Tuple types: " + tupleTypeCache.getHits() + " cache hits, " + 
+        	            tupleTypeCache.getMisses() + " misses");
+        	//including the units of dependencies
+        	printParsedUnitCacheStatistics();
+        	PackageLoader loader = context.getPackageLoader();
+        	if (loader!=null)
+        	    System.out.println("Dependency packages: " + loader.getLoadedPackages() + " of " + 
+        	            loader.getDeferredPackages() + " loaded");
+        	if (timings!=null)
+        	    for (Timings.Measurement phase: timings.getPhases())
+        	        System.out.println("Phase " + phase);
+        }
+        writeTimingsReport();
+    }
+
+    /**
+     * Writes the model archive of every module checked from
+     * source, except the default module, to the given 
+     * repository directory, where a type checker built with
+     * {@link TypeCheckerBuilder#modelArchives(boolean)} 
+     * looks it up. Must be called once this type checker 
+     * has processed its units.
+     * 
+     * @return the archives written
+     */
+    public List<File> writeModelArchives(File repository) throws IOException {
+        if (!processed) {
+            throw new IllegalStateException("units not processed yet");
+        }
+        Set<Module> modules = new LinkedHashSet<Module>();
+        for (PhasedUnit pu: phasedUnits.getPhasedUnits()) {
+            Module module = pu.getPackage().getModule();
+            if (!module.isDefault()) {
+                modules.add(module);
+            }
+        }
+        List<File> archives = new ArrayList<File>();
+        for (Module module: modules) {
+            String name = module.getNameAsString();
+            File directory = new File(new File(repository, 
+                    name.replace('.', File.separatorChar)), module.getVersion());
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("unable to create directory: " + directory);
+            }
+            File archive = new File(directory, name + "-" + module.getVersion() + 
+                    ModelArchive.SUFFIX);
+            OutputStream out = new FileOutputStream(archive);
+            try {
+                ModelArchive.write(module, out);
+            }
+            finally {
+                out.close();
+            }
+            archives.add(archive);
+        }
+        return archives;
+    }
+
+    /**
+     * The number of slowest units listed by the timings
+     * report.
+     */
+    private static final int SLOWEST_UNITS = 50;
+
+    private void writeTimingsReport() {
+        if (timingsReport!=null) {
+            try {
+                timings.writeReport(timingsReport, SLOWEST_UNITS);
+            }
+            catch (IOException e) {
+                throw new RuntimeException("unable to write timings report: " + 
+                        timingsReport, e);
+            }
+        }
+    }
+
+    private void printParsedUnitCacheStatistics() {
+        ParsedUnitCache cache = context.getParsedUnitCache();
+        if (cache!=null) {
+            System.out.println("Parsed unit cache: " + cache.getHits() + " hits, " + 
+                    cache.getMisses() + " misses");
+        }
     }
 
     private void executePhases(PhasedUnits phasedUnits, boolean forceSilence) {
         final List<PhasedUnit> listOfUnits = phasedUnits.getPhasedUnits();
 
+        Timings.Timer timer = startPhase();
         phasedUnits.getModuleManager().prepareForTypeChecking();
         phasedUnits.visitModules();
         phasedUnits.getModuleManager().modulesVisited();
+        recordPhase("visitModules", timer);
 
         //By now le language module version should be known (as local)
         //or we should use the default one.
@@ -142,38 +398,38 @@ public class TypeChecker {
 
         final ModuleValidator moduleValidator = new ModuleValidator(context, phasedUnits);
         if (verifyDependencies) {
-            moduleValidator.verifyModuleDependencyTree();
+            timer = startPhase();
+            if (parallelism>1) {
+                ForkJoinPool pool = new ForkJoinPool(parallelism);
+                try {
+                    moduleValidator.verifyModuleDependencyTree(pool);
+                }
+                finally {
+                    pool.shutdown();
+                }
+            }
+            else {
+                moduleValidator.verifyModuleDependencyTree();
+            }
+            recordPhase("verifyDependencies", timer);
         }
         phasedUnitsOfDependencies = moduleValidator.getPhasedUnitsOfDependencies();
 
-        for (PhasedUnit pu : listOfUnits) {
-            pu.validateTree();
-            pu.scanDeclarations();
-        }
-        for (PhasedUnit pu : listOfUnits) {
-            pu.scanTypeDeclarations();
-        }
-        for (PhasedUnit pu: listOfUnits) {
-            pu.validateRefinement();
-        }
-        for (PhasedUnit pu : listOfUnits) {
-            pu.analyseTypes();
-        }
-        for (PhasedUnit pu: listOfUnits) {
-            pu.analyseFlow();
-        }
-        for (PhasedUnit pu: listOfUnits) {
-            pu.analyseUsage();
-        }
+        executeUnitPhases(listOfUnits);
 
         if (!forceSilence) {
+            timer = startPhase();
             for (PhasedUnit pu : listOfUnits) {
                 if (verbose) {
                     pu.display();
                 }
-                pu.generateStatistics(statsVisitor);
-                pu.runAssertions(assertionVisitor);
+                int errors = assertionVisitor.getErrors();
+                int warnings = assertionVisitor.getWarnings();
+                pu.generateStatisticsAndRunAssertions(statsVisitor, 
+                        assertionVisitor);
+                countMessages(pu, errors, warnings);
             }
+            recordPhase("assertions", timer);
             if(verbose||statistics)
             	statsVisitor.print();
             assertionVisitor.print(verbose);
@@ -181,6 +437,457 @@ public class TypeChecker {
         
     }
     
+    private void executeUnitPhases(List<PhasedUnit> listOfUnits) {
+        if (parallelism>1) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                executeUnitPhasesConcurrently(listOfUnits, pool);
+            }
+            finally {
+                pool.shutdown();
+            }
+        }
+        else {
+            Timings.Timer timer = startPhase();
+            for (PhasedUnit pu : listOfUnits) {
+                pu.validateTree();
+                pu.scanDeclarations();
+            }
+            languageModuleCompleted();
+            recordPhase("scanDeclarations", timer);
+            timer = startPhase();
+            for (PhasedUnit pu : listOfUnits) {
+                pu.scanTypeDeclarations();
+            }
+            recordPhase("scanTypeDeclarations", timer);
+            TypeCaches previous = typeCaches.install();
+            try {
+                timer = startPhase();
+                for (PhasedUnit pu: listOfUnits) {
+                    pu.validateRefinement();
+                }
+                recordPhase("validateRefinement", timer);
+                timer = startPhase();
+                for (PhasedUnit pu : listOfUnits) {
+                    pu.analyseTypes();
+                }
+                recordPhase("analyseTypes", timer);
+                timer = startPhase();
+                for (PhasedUnit pu: listOfUnits) {
+                    pu.analyseFlow();
+                }
+                recordPhase("analyseFlow", timer);
+                timer = startPhase();
+                for (PhasedUnit pu: listOfUnits) {
+                    pu.analyseUsage();
+                }
+                recordPhase("analyseUsage", timer);
+            }
+            finally {
+                TypeCaches.restore(previous);
+            }
+        }
+    }
+    
+    /**
+     * Type checks again the given source files, which were 
+     * changed or added since the last check, after removing 
+     * the given deleted source files. The units which import
+     * or reference declarations of these files, directly or
+     * indirectly, are parsed and checked again too, as are 
+     * the units with unresolved references or duplicate 
+     * declarations, whose errors may have gone away. When
+     * the toplevel declarations of a file are added or 
+     * removed, their names may now resolve differently, so
+     * every unit of its package, and every unit importing 
+     * the package, is checked again. Every other unit is 
+     * left as it is. 
+     * 
+     * An added file must belong to a folder which already 
+     * contains a checked source file, and module and package
+     * descriptors can't be checked again.
+     * 
+     * @return the units which were checked again
+     */
+    public List<PhasedUnit> recheck(Collection<VirtualFile> changedFiles, 
+            Collection<VirtualFile> deletedFiles) {
+        long start = System.nanoTime();
+        List<VirtualFile> files = new ArrayList<VirtualFile>(changedFiles);
+        files.addAll(deletedFiles);
+        for (VirtualFile file: files) {
+            if (ModuleManager.MODULE_FILE.equals(file.getName()) ||
+                    ModuleManager.PACKAGE_FILE.equals(file.getName())) {
+                throw new IllegalArgumentException("module and package descriptors can't be checked again: " + 
+                        file.getPath());
+            }
+        }
+        
+        //the units whose model is about to be replaced
+        Set<String> stalePaths = new HashSet<String>();
+        //and the names of their toplevel declarations
+        Map<VirtualFile, Set<String>> toplevelNames = 
+                new HashMap<VirtualFile, Set<String>>();
+        for (VirtualFile file: files) {
+            PhasedUnit pu = phasedUnits.getPhasedUnit(file);
+            if (pu!=null) {
+                stalePaths.add(pu.getPathRelativeToSrcDir());
+                toplevelNames.put(file, toplevelNames(pu));
+            }
+        }
+        for (PhasedUnit pu: phasedUnits.getPhasedUnits()) {
+            Unit unit = pu.getUnit();
+            if (!unit.getUnresolvedReferences().isEmpty() ||
+                    !unit.getDuplicateDeclarations().isEmpty()) {
+                stalePaths.add(pu.getPathRelativeToSrcDir());
+            }
+        }
+        addDependents(stalePaths, new ArrayList<String>(stalePaths));
+        
+        //the packages whose toplevel declarations change
+        Set<Package> changedPackages = new HashSet<Package>();
+        for (VirtualFile file: deletedFiles) {
+            PhasedUnit pu = phasedUnits.getPhasedUnit(file);
+            if (pu!=null) {
+                if (!toplevelNames.get(file).isEmpty()) {
+                    changedPackages.add(pu.getPackage());
+                }
+                phasedUnits.removePhasedUnitForRelativePath(pu.getPathRelativeToSrcDir());
+            }
+        }
+        reparseUnits(stalePaths);
+        for (VirtualFile file: changedFiles) {
+            PhasedUnit pu = phasedUnits.getPhasedUnit(file);
+            if (pu==null) {
+                pu = addUnit(file);
+                stalePaths.add(pu.getPathRelativeToSrcDir());
+            }
+            Set<String> names = toplevelNames.get(file);
+            if (names==null ? 
+                    !toplevelNames(pu).isEmpty() : 
+                    !names.equals(toplevelNames(pu))) {
+                changedPackages.add(pu.getPackage());
+            }
+        }
+        //names declared by these packages may now resolve
+        //to other declarations, or become ambiguous, in the
+        //units of the packages and the units importing them
+        if (!changedPackages.isEmpty()) {
+            List<String> shadowedPaths = new ArrayList<String>();
+            for (PhasedUnit pu: phasedUnits.getPhasedUnits()) {
+                String path = pu.getPathRelativeToSrcDir();
+                if (!stalePaths.contains(path) && 
+                        (changedPackages.contains(pu.getPackage()) ||
+                        importsAny(pu, changedPackages))) {
+                    stalePaths.add(path);
+                    shadowedPaths.add(path);
+                }
+            }
+            List<String> newlyStalePaths = new ArrayList<String>(shadowedPaths);
+            newlyStalePaths.addAll(addDependents(stalePaths, shadowedPaths));
+            reparseUnits(newlyStalePaths);
+        }
+        
+        //check them in the order of a full check
+        List<PhasedUnit> listOfUnits = new ArrayList<PhasedUnit>();
+        for (PhasedUnit pu: phasedUnits.getPhasedUnits()) {
+            if (stalePaths.contains(pu.getPathRelativeToSrcDir())) {
+                listOfUnits.add(pu);
+            }
+        }
+        typeCaches.invalidate();
+        executeUnitPhases(listOfUnits);
+        
+        //count the errors of the other units again, since
+        //those of the units checked again may have changed
+        int errors = 0;
+        int warnings = 0;
+        Set<String> paths = new HashSet<String>();
+        for (PhasedUnit pu: phasedUnits.getPhasedUnits()) {
+            String path = pu.getPathRelativeToSrcDir();
+            paths.add(path);
+            int[] counts = messageCounts.get(path);
+            if (counts!=null && !stalePaths.contains(path)) {
+                errors += counts[0];
+                warnings += counts[1];
+            }
+        }
+        messageCounts.keySet().retainAll(paths);
+        assertionVisitor.setCounts(errors, warnings);
+        for (PhasedUnit pu : listOfUnits) {
+            if (verbose) {
+                pu.display();
+            }
+            errors = assertionVisitor.getErrors();
+            warnings = assertionVisitor.getWarnings();
+            pu.runAssertions(assertionVisitor);
+            countMessages(pu, errors, warnings);
+        }
+        assertionVisitor.print(verbose);
+        long time = System.nanoTime()-start;
+        if(statistics) {
+            System.out.println("Type checked " + listOfUnits.size() + " units again in " + 
+                    time/1000000 + " ms");
+        }
+        return listOfUnits;
+    }
+
+    private void countMessages(PhasedUnit pu, int errorsBefore, 
+            int warningsBefore) {
+        messageCounts.put(pu.getPathRelativeToSrcDir(), new int[] {
+                assertionVisitor.getErrors()-errorsBefore,
+                assertionVisitor.getWarnings()-warningsBefore });
+    }
+    
+    /**
+     * Adds the units which depend on the given units to the
+     * given stale units, since they hold on to declarations
+     * of the replaced model, directly or indirectly.
+     * 
+     * @return the paths of the units added
+     */
+    private List<String> addDependents(Set<String> stalePaths, 
+            List<String> paths) {
+        List<String> added = new ArrayList<String>();
+        LinkedList<String> queue = new LinkedList<String>(paths);
+        while (!queue.isEmpty()) {
+            PhasedUnit pu = phasedUnits.getPhasedUnitFromRelativePath(queue.removeFirst());
+            if (pu!=null) {
+                for (String dependent: pu.getUnit().getDependentsOf()) {
+                    if (stalePaths.add(dependent)) {
+                        added.add(dependent);
+                        queue.addLast(dependent);
+                    }
+                }
+            }
+        }
+        return added;
+    }
+    
+    private void reparseUnits(Collection<String> paths) {
+        for (String path: paths) {
+            PhasedUnit pu = phasedUnits.getPhasedUnitFromRelativePath(path);
+            if (pu!=null) {
+                phasedUnits.reparseUnit(pu.getUnitFile(), pu.getSrcDir(), pu.getPackage());
+            }
+        }
+    }
+    
+    private static Set<String> toplevelNames(PhasedUnit pu) {
+        Set<String> names = new HashSet<String>();
+        for (Tree.Declaration d: pu.getCompilationUnit().getDeclarations()) {
+            if (d.getIdentifier()!=null) {
+                names.add(d.getIdentifier().getText());
+            }
+        }
+        return names;
+    }
+    
+    private static boolean importsAny(PhasedUnit pu, Set<Package> packages) {
+        Tree.ImportList importList = pu.getCompilationUnit().getImportList();
+        if (importList!=null) {
+            for (Tree.Import i: importList.getImports()) {
+                if (packages.contains(i.getImportPath().getModel())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Parses a source file added to a folder which already
+     * contains a source file of the same source directory,
+     * as a unit of the same package.
+     */
+    private PhasedUnit addUnit(VirtualFile file) {
+        String folder = file.getPath().substring(0, 
+                file.getPath().length()-file.getName().length());
+        for (PhasedUnit pu: phasedUnits.getPhasedUnits()) {
+            String path = pu.getUnitFile().getPath();
+            if (path.length()==folder.length()+pu.getUnitFile().getName().length() &&
+                    path.startsWith(folder)) {
+                return phasedUnits.reparseUnit(file, pu.getSrcDir(), pu.getPackage());
+            }
+        }
+        throw new IllegalArgumentException("source file not in the folder of a checked source file: " + 
+                file.getPath());
+    }
+    
+    /**
+     * Runs the same phases as the serial loops above, 
+     * with the units of each phase processed on the pool,
+     * and every phase completed before the next starts.
+     */
+    private void executeUnitPhasesConcurrently(List<PhasedUnit> listOfUnits, 
+            ForkJoinPool pool) {
+        //declarations are checked for duplicates against
+        //the other units of their package, so the units
+        //of a package are scanned one after the other, in 
+        //the same order as the serial run
+        Map<Package, List<PhasedUnit>> unitsPerPackage = 
+                new LinkedHashMap<Package, List<PhasedUnit>>();
+        for (PhasedUnit pu: listOfUnits) {
+            List<PhasedUnit> units = unitsPerPackage.get(pu.getPackage());
+            if (units==null) {
+                units = new ArrayList<PhasedUnit>();
+                unitsPerPackage.put(pu.getPackage(), units);
+            }
+            units.add(pu);
+        }
+        List<Callable<Void>> scans = new ArrayList<Callable<Void>>();
+        for (final List<PhasedUnit> units: unitsPerPackage.values()) {
+            scans.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    Timings.Timer timer = startPhase();
+                    for (PhasedUnit pu : units) {
+                        pu.validateTree();
+                        pu.scanDeclarations();
+                    }
+                    recordPhaseWork("scanDeclarations", timer);
+                    return null;
+                }
+            });
+        }
+        Timings.Timer timer = startPhase();
+        invokeAll(pool, scans);
+        languageModuleCompleted();
+        recordPhase("scanDeclarations", timer);
+        //member types are looked up in supertypes which
+        //are only known once the units declaring them have
+        //been scanned, so this phase stays in order
+        timer = startPhase();
+        for (PhasedUnit pu : listOfUnits) {
+            pu.scanTypeDeclarations();
+        }
+        recordPhase("scanTypeDeclarations", timer);
+        executePhase(pool, listOfUnits, new UnitPhase("validateRefinement") {
+            @Override void execute(PhasedUnit pu) {
+                pu.validateRefinement();
+            }
+        });
+        executePhase(pool, listOfUnits, new UnitPhase("analyseTypes") {
+            @Override void execute(PhasedUnit pu) {
+                pu.analyseTypes();
+            }
+        });
+        executePhase(pool, listOfUnits, new UnitPhase("analyseFlow") {
+            @Override void execute(PhasedUnit pu) {
+                pu.analyseFlow();
+            }
+        });
+        executePhase(pool, listOfUnits, new UnitPhase("analyseUsage") {
+            @Override void execute(PhasedUnit pu) {
+                pu.analyseUsage();
+            }
+        });
+    }
+    
+    /**
+     * Once the declarations of every unit are scanned, the
+     * shared declarations of the language module are known,
+     * whether it is type checked from source or is a 
+     * dependency.
+     */
+    private void languageModuleCompleted() {
+        Module languageModule = context.getModules().getLanguageModule();
+        if (languageModule.isAvailable()) {
+            languageModule.packagesCompleted();
+        }
+    }
+    
+    private void executePhase(ForkJoinPool pool, List<PhasedUnit> listOfUnits, 
+            UnitPhase phase) {
+        Timings.Timer timer = startPhase();
+        invokeAll(pool, phase(listOfUnits, phase));
+        recordPhase(phase.name, timer);
+    }
+    
+    /**
+     * Start measuring a phase run by the current thread, if
+     * timings are enabled.
+     */
+    private Timings.Timer startPhase() {
+        return timings==null ? null : timings.start();
+    }
+    
+    private void recordPhase(String phase, Timings.Timer timer) {
+        if (timings!=null) {
+            timings.recordPhase(phase, timer);
+        }
+    }
+    
+    /**
+     * Record the work done by a thread of the pool for a 
+     * phase run by another thread.
+     */
+    private void recordPhaseWork(String phase, Timings.Timer timer) {
+        if (timings!=null) {
+            timings.recordPhaseWork(phase, timer);
+        }
+    }
+    
+    private static abstract class UnitPhase {
+        final String name;
+        UnitPhase(String name) {
+            this.name = name;
+        }
+        abstract void execute(PhasedUnit pu);
+    }
+    
+    private List<Callable<Void>> phase(List<PhasedUnit> listOfUnits, 
+            final UnitPhase phase) {
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(listOfUnits.size());
+        for (final PhasedUnit pu: listOfUnits) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    //the caches may only be used once the type
+                    //hierarchy is complete, that is, after the
+                    //type declarations of every unit have been
+                    //scanned
+                    TypeCaches previous = typeCaches.install();
+                    Timings.Timer timer = startPhase();
+                    try {
+                        phase.execute(pu);
+                    }
+                    finally {
+                        recordPhaseWork(phase.name, timer);
+                        TypeCaches.restore(previous);
+                    }
+                    return null;
+                }
+            });
+        }
+        return tasks;
+    }
+    
+    /**
+     * Waits for all the tasks to complete, rethrowing the
+     * first failure in the order the tasks were given.
+     */
+    private static void invokeAll(ForkJoinPool pool, List<Callable<Void>> tasks) {
+        for (Future<Void> future: pool.invokeAll(tasks)) {
+            try {
+                future.get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+    
     public int getErrors(){
     	return assertionVisitor.getErrors();
     }
@@ -1,7 +1,6 @@
 package com.redhat.ceylon.compiler.typechecker;
 
 import java.io.File;
-import java.util.ArrayList;
 import java.util.List;
 
 import com.redhat.ceylon.cmr.api.RepositoryManager;
@@ -9,6 +8,7 @@ import com.redhat.ceylon.cmr.ceylon.CeylonUtils;
 import com.redhat.ceylon.compiler.typechecker.io.VFS;
 import com.redhat.ceylon.compiler.typechecker.io.VirtualFile;
 import com.redhat.ceylon.compiler.typechecker.io.cmr.impl.LeakingLogger;
+import com.redhat.ceylon.compiler.typechecker.model.SharedLanguageModule;
 import com.redhat.ceylon.compiler.typechecker.util.AssertionVisitor;
 import com.redhat.ceylon.compiler.typechecker.util.ModuleManagerFactory;
 
@@ -24,19 +24,7 @@ import com.redhat.ceylon.compiler.typechecker.util.ModuleManagerFactory;
  * @author Emmanuel Bernard <emmanuel@hibernate.org>
  */
 public class TypeCheckerBuilder {
-    private boolean verbose = false;
-    private boolean statistics = false;
-    private List<VirtualFile> srcDirectories = new ArrayList<VirtualFile>();
-    private final VFS vfs = new VFS();
-    private boolean verifyDependencies = true;
-    private AssertionVisitor assertionVisitor = new AssertionVisitor() { 
-        @Override protected boolean includeWarnings() {
-            return false;
-        }
-    };
-    private ModuleManagerFactory moduleManagerFactory;
-    private RepositoryManager repositoryManager;
-    private List<String> moduleFilters = new ArrayList<String>();
+    private final TypeCheckerOptions options = new TypeCheckerOptions();
 
     public TypeCheckerBuilder() {
     }
@@ -46,7 +34,7 @@ public class TypeCheckerBuilder {
 	 * Directories are better as the type checker can extract the context like module name, package etc
 	 */
     public TypeCheckerBuilder addSrcDirectory(File srcDirectory) {
-        return addSrcDirectory( vfs.getFromFile( srcDirectory ) );
+        return addSrcDirectory( options.vfs.getFromFile( srcDirectory ) );
     }
 
 	/**
@@ -54,17 +42,17 @@ public class TypeCheckerBuilder {
 	 * Directories are better as the type checker can extract the context like module name, package etc
 	 */
 	public TypeCheckerBuilder addSrcDirectory(VirtualFile srcDirectory) {
-        srcDirectories.add( srcDirectory);
+        options.srcDirectories.add( srcDirectory);
         return this;
     }
 
     public void setRepositoryManager(RepositoryManager repositoryManager) {
-        this.repositoryManager = repositoryManager;
+        options.repositoryManager = repositoryManager;
     }
 
     public TypeCheckerBuilder setModuleFilters(List<String> moduleFilters){
-        this.moduleFilters.clear();
-        this.moduleFilters.addAll(moduleFilters);
+        options.moduleFilters.clear();
+        options.moduleFilters.addAll(moduleFilters);
         return this;
     }
     
@@ -82,22 +70,22 @@ public class TypeCheckerBuilder {
      *
      */
     public TypeCheckerBuilder skipDependenciesVerification() {
-        this.verifyDependencies = false;
+        options.verifyDependencies = false;
         return this;
     }
 
     public TypeCheckerBuilder assertionVisitor(AssertionVisitor visitor) {
-        this.assertionVisitor = visitor;
+        options.assertionVisitor = visitor;
         return this;
     }
 
     public TypeCheckerBuilder verbose(boolean isVerbose) {
-        this.verbose = isVerbose;
+        options.verbose = isVerbose;
         return this;
     }
     
     public TypeCheckerBuilder statistics(boolean statistics) {
-        this.statistics = statistics;
+        options.statistics = statistics;
         return this;
     }
 
@@ -108,26 +96,177 @@ public class TypeCheckerBuilder {
      * @return type checker instance.
      */
     public TypeCheckerBuilder usageWarnings(boolean usageWarnings) {
-        this.assertionVisitor.includeUsageWarnings(usageWarnings);
+        options.assertionVisitor.includeUsageWarnings(usageWarnings);
+        return this;
+    }
+
+    /**
+     * Parses the source files, and type checks the units of each
+     * phase, concurrently, using one thread per available 
+     * processor. Phases still run one after the other, and the
+     * results are the same as those of the default, serial, run.
+     */
+    public TypeCheckerBuilder parallel(boolean parallel) {
+        return parallelism(parallel ? 
+                Runtime.getRuntime().availableProcessors() : 1);
+    }
+
+    /**
+     * Parses and type checks using the given number of threads,
+     * or serially if it is 1.
+     */
+    public TypeCheckerBuilder parallelism(int threads) {
+        options.parallelism = Math.max(threads, 1);
+        return this;
+    }
+
+    /**
+     * Remembers subtype checks, member lookups and tuple 
+     * types once the type hierarchy is complete, using the
+     * default size of each cache, or disables these caches.
+     * They are disabled by default. The results are the
+     * same, but the types produced by the type checker may
+     * be shared, and must then not be modified.
+     */
+    public TypeCheckerBuilder typeCaches(boolean typeCaches) {
+        subtypeCacheSize(typeCaches ? 100000 : 0);
+        memberLookupCacheSize(typeCaches ? 1000 : 0);
+        return tupleTypeCacheSize(typeCaches ? 10000 : 0);
+    }
+
+    /**
+     * Sets the maximum number of subtype checks remembered by
+     * the type checker, or disables the cache if it is 0, as
+     * it is by default.
+     */
+    public TypeCheckerBuilder subtypeCacheSize(int subtypeCacheSize) {
+        options.subtypeCacheSize = subtypeCacheSize;
+        return this;
+    }
+
+    /**
+     * Shares equal types produced by the type checker, using
+     * the default size of the interner, or disables interning,
+     * as it is by default. The shared types may not be 
+     * modified.
+     */
+    public TypeCheckerBuilder typeInterning(boolean typeInterning) {
+        return typeInternerSize(typeInterning ? 100000 : 0);
+    }
+
+    /**
+     * Sets the maximum number of distinct types shared by
+     * the type checker, or disables interning if it is 0, as
+     * it is by default.
+     */
+    public TypeCheckerBuilder typeInternerSize(int typeInternerSize) {
+        options.typeInternerSize = typeInternerSize;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of member lookups remembered 
+     * for each type declaration, or disables the cache if 
+     * it is 0, as it is by default.
+     */
+    public TypeCheckerBuilder memberLookupCacheSize(int memberLookupCacheSize) {
+        options.memberLookupCacheSize = memberLookupCacheSize;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of tuple types, including the
+     * tuple types of parameter lists, remembered by the type
+     * checker, or disables the cache if it is 0, as it is
+     * by default.
+     */
+    public TypeCheckerBuilder tupleTypeCacheSize(int tupleTypeCacheSize) {
+        options.tupleTypeCacheSize = tupleTypeCacheSize;
+        return this;
+    }
+
+    /**
+     * Keeps the units parsed from source files, including the
+     * source archives of dependencies, in the given directory,
+     * and reads them back instead of parsing the files again 
+     * when their contents did not change.
+     */
+    public TypeCheckerBuilder parsedUnitCacheDirectory(File directory) {
+        options.parsedUnitCacheDirectory = directory;
+        return this;
+    }
+
+    /**
+     * Parses and scans the source files of a package of a
+     * dependency only when the members of the package are 
+     * first needed, instead of every source file of every
+     * dependency up front.
+     */
+    public TypeCheckerBuilder lazyDependencies(boolean lazyDependencies) {
+        options.lazyDependencies = lazyDependencies;
+        return this;
+    }
+
+    /**
+     * Reads the model archive of a dependency, written by
+     * {@link TypeChecker#writeModelArchives(File)}, instead
+     * of its source archive, when the repository has one.
+     */
+    public TypeCheckerBuilder modelArchives(boolean modelArchives) {
+        options.modelArchives = modelArchives;
+        return this;
+    }
+
+    /**
+     * Uses the model of the language module already read by
+     * another type checker, obtained from 
+     * {@link TypeChecker#getSharedLanguageModule()}, instead
+     * of reading and type checking the language module again.
+     */
+    public TypeCheckerBuilder sharedLanguageModule(SharedLanguageModule sharedLanguageModule) {
+        options.sharedLanguageModule = sharedLanguageModule;
+        return this;
+    }
+
+    /**
+     * Measures the elapsed time, CPU time and allocation of 
+     * each phase, each unit and each class of visitor, as 
+     * given by {@link TypeChecker#getTimings()}.
+     */
+    public TypeCheckerBuilder timings(boolean timings) {
+        options.timings = timings;
+        return this;
+    }
+
+    /**
+     * Measures timings, and writes them to the given file, as 
+     * JSON, with the slowest units, once the type checker has 
+     * processed its units.
+     */
+    public TypeCheckerBuilder timingsReport(File report) {
+        options.timingsReport = report;
+        if (report!=null) {
+            options.timings = true;
+        }
         return this;
     }
 
     public TypeCheckerBuilder moduleManagerFactory(ModuleManagerFactory moduleManagerFactory){
-    	this.moduleManagerFactory = moduleManagerFactory;
+    	options.moduleManagerFactory = moduleManagerFactory;
     	return this;
     }
 
     public VFS getVFS(){
-        return vfs;
+        return options.vfs;
     }
     
     public TypeChecker getTypeChecker() {
-        if (repositoryManager == null) {
-            repositoryManager = CeylonUtils.repoManager()
+        if (options.repositoryManager == null) {
+            options.repositoryManager = CeylonUtils.repoManager()
                     .logger(new LeakingLogger())
                     .buildManager();
         }
-        return new TypeChecker(vfs, srcDirectories, repositoryManager, verifyDependencies, assertionVisitor, moduleManagerFactory, verbose, statistics, moduleFilters);
+        return new TypeChecker(options);
     }
 
 }
@@ -0,0 +1,44 @@
+package com.redhat.ceylon.compiler.typechecker;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.redhat.ceylon.cmr.api.RepositoryManager;
+import com.redhat.ceylon.compiler.typechecker.io.VFS;
+import com.redhat.ceylon.compiler.typechecker.io.VirtualFile;
+import com.redhat.ceylon.compiler.typechecker.model.SharedLanguageModule;
+import com.redhat.ceylon.compiler.typechecker.util.AssertionVisitor;
+import com.redhat.ceylon.compiler.typechecker.util.ModuleManagerFactory;
+
+/**
+ * The options a {@link TypeChecker} is created with, set
+ * by the {@link TypeCheckerBuilder}. The type checker reads
+ * them when it is created.
+ */
+final class TypeCheckerOptions {
+    boolean verbose = false;
+    boolean statistics = false;
+    final List<VirtualFile> srcDirectories = new ArrayList<VirtualFile>();
+    final VFS vfs = new VFS();
+    boolean verifyDependencies = true;
+    AssertionVisitor assertionVisitor = new AssertionVisitor() {
+        @Override protected boolean includeWarnings() {
+            return false;
+        }
+    };
+    ModuleManagerFactory moduleManagerFactory;
+    RepositoryManager repositoryManager;
+    final List<String> moduleFilters = new ArrayList<String>();
+    int parallelism = 1;
+    int subtypeCacheSize = 0;
+    int typeInternerSize = 0;
+    int memberLookupCacheSize = 0;
+    int tupleTypeCacheSize = 0;
+    File parsedUnitCacheDirectory;
+    boolean lazyDependencies = false;
+    boolean modelArchives = false;
+    SharedLanguageModule sharedLanguageModule;
+    boolean timings = false;
+    File timingsReport;
+}
@@ -4483,17 +4483,16 @@ public class ExpressionVisitor extends Visitor {
                         return; //Note: early exit!
                     }
                     else {
-                        addToUnion(list, ct);
+                        list.add(ct);
                     }
                 }
-                UnionType ut = new UnionType(unit);
-                ut.setCaseTypes(list);
+                ProducedType ut = unionType(list, unit);
                 //if the union of the case types covers 
                 //the switch expression type then the 
                 //switch is exhaustive
-                if (!ut.getType().covers(st)) {
+                if (!ut.covers(st)) {
                     that.addError("case types must cover all cases of the switch type or an else clause must appear: " +
-                            ut.getType().getProducedTypeName(unit) + " does not cover " + st.getProducedTypeName(unit));
+                            ut.getProducedTypeName(unit) + " does not cover " + st.getProducedTypeName(unit));
                 }
             }
             /*else if (dynamic) {
@@ -4828,38 +4827,39 @@ public class ExpressionVisitor extends Visitor {
         TypeDeclaration td = (TypeDeclaration) that.getScope();
         
         //TODO: get rid of this awful hack:
-        List<ProducedType> cases = td.getCaseTypes();
-        td.setCaseTypes(null);
-        
-        if (!(td instanceof TypeParameter)) {
-            for (Tree.StaticType t: that.getTypes()) {
-                ProducedType type = t.getTypeModel();
-                if (!(type.getDeclaration() instanceof TypeParameter)) {
-                    //it's not a self type
+        td.hideCaseTypes();
+        try {
+            if (!(td instanceof TypeParameter)) {
+                for (Tree.StaticType t: that.getTypes()) {
+                    ProducedType type = t.getTypeModel();
+                    if (!(type.getDeclaration() instanceof TypeParameter)) {
+                        //it's not a self type
+                        if (type!=null) {
+                            checkAssignable(type, td.getType(), t, 
+                                    "case type must be a subtype of enumerated type");
+                            //note: this is a better, faster way to call 
+                            //      validateEnumeratedSupertypeArguments()
+                            //      but unfortunately it winds up displaying
+                            //      the error on the wrong node, confusing
+                            //      the user
+                            /*ProducedType supertype = type.getDeclaration().getType().getSupertype(td);
+                            validateEnumeratedSupertypeArguments(t, type.getDeclaration(), supertype);*/
+                        }
+                    }
+                }
+                for (Tree.BaseMemberExpression bme: that.getBaseMemberExpressions()) {
+                    ProducedType type = bme.getTypeModel();
                     if (type!=null) {
-                        checkAssignable(type, td.getType(), t, 
+                        checkAssignable(type, td.getType(), bme, 
                                 "case type must be a subtype of enumerated type");
-                        //note: this is a better, faster way to call 
-                        //      validateEnumeratedSupertypeArguments()
-                        //      but unfortunately it winds up displaying
-                        //      the error on the wrong node, confusing
-                        //      the user
-                        /*ProducedType supertype = type.getDeclaration().getType().getSupertype(td);
-                        validateEnumeratedSupertypeArguments(t, type.getDeclaration(), supertype);*/
                     }
                 }
             }
-            for (Tree.BaseMemberExpression bme: that.getBaseMemberExpressions()) {
-                ProducedType type = bme.getTypeModel();
-                if (type!=null) {
-                    checkAssignable(type, td.getType(), bme, 
-                            "case type must be a subtype of enumerated type");
-                }
-            }
         }
-        
-        //TODO: get rid of this awful hack:
-        td.setCaseTypes(cases);
+        finally {
+            //TODO: get rid of this awful hack:
+            td.unhideCaseTypes();
+        }
     }
 
     private void checkExtensionOfMemberType(Node that, TypeDeclaration td,
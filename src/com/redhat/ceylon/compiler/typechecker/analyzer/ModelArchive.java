@@ -0,0 +1,1319 @@
+package com.redhat.ceylon.compiler.typechecker.analyzer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.redhat.ceylon.compiler.typechecker.context.Context;
+import com.redhat.ceylon.compiler.typechecker.model.Annotation;
+import com.redhat.ceylon.compiler.typechecker.model.Class;
+import com.redhat.ceylon.compiler.typechecker.model.ClassAlias;
+import com.redhat.ceylon.compiler.typechecker.model.Declaration;
+import com.redhat.ceylon.compiler.typechecker.model.Element;
+import com.redhat.ceylon.compiler.typechecker.model.ExternalUnit;
+import com.redhat.ceylon.compiler.typechecker.model.FunctionalParameter;
+import com.redhat.ceylon.compiler.typechecker.model.Getter;
+import com.redhat.ceylon.compiler.typechecker.model.Interface;
+import com.redhat.ceylon.compiler.typechecker.model.InterfaceAlias;
+import com.redhat.ceylon.compiler.typechecker.model.IntersectionType;
+import com.redhat.ceylon.compiler.typechecker.model.Method;
+import com.redhat.ceylon.compiler.typechecker.model.MethodOrValue;
+import com.redhat.ceylon.compiler.typechecker.model.Module;
+import com.redhat.ceylon.compiler.typechecker.model.ModuleImport;
+import com.redhat.ceylon.compiler.typechecker.model.NothingType;
+import com.redhat.ceylon.compiler.typechecker.model.Package;
+import com.redhat.ceylon.compiler.typechecker.model.Parameter;
+import com.redhat.ceylon.compiler.typechecker.model.ParameterList;
+import com.redhat.ceylon.compiler.typechecker.model.ProducedType;
+import com.redhat.ceylon.compiler.typechecker.model.Scope;
+import com.redhat.ceylon.compiler.typechecker.model.Setter;
+import com.redhat.ceylon.compiler.typechecker.model.TypeAlias;
+import com.redhat.ceylon.compiler.typechecker.model.TypeCaches;
+import com.redhat.ceylon.compiler.typechecker.model.TypeDeclaration;
+import com.redhat.ceylon.compiler.typechecker.model.TypeParameter;
+import com.redhat.ceylon.compiler.typechecker.model.TypedDeclaration;
+import com.redhat.ceylon.compiler.typechecker.model.UnionType;
+import com.redhat.ceylon.compiler.typechecker.model.Unit;
+import com.redhat.ceylon.compiler.typechecker.model.UnknownType;
+import com.redhat.ceylon.compiler.typechecker.model.Value;
+import com.redhat.ceylon.compiler.typechecker.model.ValueParameter;
+
+/**
+ * The declaration model of a module, as a binary artifact
+ * which is read instead of parsing and scanning the source
+ * archive of the module when it is a dependency.
+ *
+ * The archive holds the packages and units of the module
+ * and every declaration which can be seen from outside the
+ * bodies of functions and values: the toplevel declarations,
+ * the members of classes and interfaces, and the parameters
+ * and type parameters of these. Local declarations are left
+ * out. A declaration of another module is referred to by
+ * its qualified name, and resolved once the declarations of
+ * every dependency exist, just like the types of a source
+ * dependency are.
+ *
+ * An archive is read in the same phases as the units of a
+ * source dependency: {@link #scanDeclarations()} creates the
+ * declarations, and {@link #scanTypeDeclarations()} resolves
+ * their types and their references to other declarations.
+ */
+public class ModelArchive {
+
+    /**
+     * The suffix of a model archive in a repository.
+     */
+    public static final String SUFFIX = ".model";
+
+    //the archive is compressed with gzip
+    private static final int MAGIC = 0xCE7100DE;
+    //change when the stored form changes
+    private static final int FORMAT = 1;
+
+    private static final int CLASS = 0;
+    private static final int CLASS_ALIAS = 1;
+    private static final int INTERFACE = 2;
+    private static final int INTERFACE_ALIAS = 3;
+    private static final int TYPE_ALIAS = 4;
+    private static final int TYPE_PARAMETER = 5;
+    private static final int METHOD = 6;
+    private static final int VALUE = 7;
+    private static final int GETTER = 8;
+    private static final int SETTER = 9;
+    private static final int VALUE_PARAMETER = 10;
+    private static final int FUNCTIONAL_PARAMETER = 11;
+
+    private static final int TYPE = 0;
+    private static final int UNION = 1;
+    private static final int INTERSECTION = 2;
+    private static final int NOTHING = 3;
+    private static final int UNKNOWN = 4;
+
+    private static final int NO_DECLARATION = -1;
+    private static final int EXTERNAL_DECLARATION = -2;
+    private static final int ANONYMOUS_DECLARATION = -3;
+
+    private static final int NO_UNIT = -1;
+    private static final int OTHER_UNIT = -2;
+
+    private final Module module;
+    private final ModuleManager moduleManager;
+    private final DataInputStream in;
+    private final List<Package> packages = new ArrayList<Package>();
+    private final List<Unit> units = new ArrayList<Unit>();
+    private Declaration[] declarations;
+    private Object[] types;
+    private final Map<Scope, List<Declaration>> membersOfScope =
+            new IdentityHashMap<Scope, List<Declaration>>();
+    private boolean declarationsScanned;
+    private boolean typeDeclarationsScanned;
+
+    private ModelArchive(Module module, ModuleManager moduleManager,
+            DataInputStream in) {
+        this.module = module;
+        this.moduleManager = moduleManager;
+        this.in = in;
+    }
+
+    public Module getModule() {
+        return module;
+    }
+
+    /**
+     * Write the declaration model of the given module, which
+     * must have been scanned at least up to the validation
+     * of refinement.
+     */
+    public static void write(Module module, OutputStream out)
+            throws IOException {
+        GZIPOutputStream zip = new GZIPOutputStream(out);
+        new Writer(module).write(new DataOutputStream(zip));
+        zip.finish();
+    }
+
+    /**
+     * Read the given model archive of the given module,
+     * adding the imports, the packages and the units of the
+     * module to the model. The declarations are only read
+     * by the following phases, but the whole archive is
+     * checked first, so that a damaged archive leaves the
+     * model alone, and the source archive can be read
+     * instead.
+     *
+     * @return the archive, or null if it is an archive of a
+     *         different module, or written in a different
+     *         format
+     * @throws IOException if the archive is damaged
+     */
+    static ModelArchive read(File file, Module module,
+            ModuleManager moduleManager) throws IOException {
+        byte[] bytes;
+        InputStream stream = new FileInputStream(file);
+        try {
+            bytes = uncompress(stream);
+        }
+        finally {
+            stream.close();
+        }
+        if (!check(bytes, module)) {
+            return null;
+        }
+        return read(bytes, module, moduleManager);
+    }
+
+    /**
+     * Read the whole of the given uncompressed archive into
+     * a model of its own, which is then thrown away, so that
+     * the following phases cannot fail.
+     *
+     * @return false if it is an archive of a different
+     *         module, or written in a different format
+     */
+    private static boolean check(byte[] bytes, Module module)
+            throws IOException {
+        Context context = new Context(null, null);
+        ModuleManager moduleManager = new ModuleManager(context);
+        moduleManager.initCoreModules();
+        Module copy = moduleManager.getOrCreateModule(module.getName(),
+                module.getVersion());
+        if (copy.getVersion()==null) {
+            copy.setVersion(module.getVersion());
+        }
+        //the types of the copy must not be shared with the
+        //types of the model
+        TypeCaches previous = TypeCaches.suspend();
+        try {
+            ModelArchive archive = read(bytes, copy, moduleManager);
+            if (archive==null) {
+                return false;
+            }
+            archive.readDeclarations();
+            archive.readTypes();
+            if (archive.in.read()>=0) {
+                throw new IOException("unexpected data after the types");
+            }
+            return true;
+        }
+        catch (RuntimeException e) {
+            //an index or a kind of declaration which does
+            //not match the rest of the archive
+            throw new IOException("damaged model archive: " + e, e);
+        }
+        finally {
+            TypeCaches.restore(previous);
+        }
+    }
+
+    private static byte[] uncompress(InputStream stream) throws IOException {
+        //reading to the end checks the length and checksum
+        InputStream in = new GZIPInputStream(stream);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer))>=0) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+
+    private static ModelArchive read(byte[] bytes, Module module,
+            ModuleManager moduleManager) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(bytes));
+        if (in.readInt()!=MAGIC || in.readInt()!=FORMAT ||
+                !module.getNameAsString().equals(readString(in)) ||
+                !equal(module.getVersion(), readString(in))) {
+            return null;
+        }
+        ModelArchive archive = new ModelArchive(module, moduleManager, in);
+        archive.readModule();
+        return archive;
+    }
+
+    /**
+     * Copy the declaration model of the given language 
+     * module, by writing its archive and reading it back 
+     * into a model of its own, which no type checker ever
+     * modifies.
+     */
+    public static Module copyLanguageModule(Module languageModule)
+            throws IOException {
+        if (languageModule.getLanguageModule()!=languageModule) {
+            throw new IllegalArgumentException("not the language module: " +
+                    languageModule);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(languageModule, out);
+        Context context = new Context(null, null);
+        ModuleManager moduleManager = new ModuleManager(context);
+        moduleManager.initCoreModules();
+        Module copy = context.getModules().getLanguageModule();
+        copy.setVersion(languageModule.getVersion());
+        ModelArchive archive = read(uncompress(new ByteArrayInputStream(out.toByteArray())),
+                copy, moduleManager);
+        archive.scanTypeDeclarations();
+        return copy;
+    }
+
+    private void readModule() throws IOException {
+        //read everything up front, so that the model is
+        //left alone if the archive turns out to be damaged
+        List<Annotation> annotations = readAnnotations(in);
+        int importCount = in.readInt();
+        List<String[]> importNames = new ArrayList<String[]>(importCount);
+        List<boolean[]> importFlags = new ArrayList<boolean[]>(importCount);
+        List<List<Annotation>> importAnnotations = new ArrayList<List<Annotation>>(importCount);
+        for (int i=0; i<importCount; i++) {
+            importNames.add(new String[] { readString(in), readString(in) });
+            importFlags.add(new boolean[] { in.readBoolean(), in.readBoolean() });
+            importAnnotations.add(readAnnotations(in));
+        }
+        int packageCount = in.readInt();
+        List<String> packageNames = new ArrayList<String>(packageCount);
+        List<Boolean> packageShared = new ArrayList<Boolean>(packageCount);
+        List<List<Annotation>> packageAnnotations = new ArrayList<List<Annotation>>(packageCount);
+        for (int i=0; i<packageCount; i++) {
+            packageNames.add(readString(in));
+            packageShared.add(in.readBoolean());
+            packageAnnotations.add(readAnnotations(in));
+        }
+        int unitCount = in.readInt();
+        int[] unitPackages = new int[unitCount];
+        String[][] unitPaths = new String[unitCount][];
+        for (int i=0; i<unitCount; i++) {
+            unitPackages[i] = in.readInt();
+            unitPaths[i] = new String[] { readString(in), readString(in), readString(in) };
+        }
+        int moduleUnit = in.readInt();
+        int[] packageUnits = new int[packageCount];
+        for (int i=0; i<packageCount; i++) {
+            packageUnits[i] = in.readInt();
+        }
+
+        module.getAnnotations().addAll(annotations);
+        for (int i=0; i<importCount; i++) {
+            String[] name = importNames.get(i);
+            Module importedModule = moduleManager.getOrCreateModule(
+                    ModuleManager.splitModuleName(name[0]), name[1]);
+            if (importedModule.getVersion()==null) {
+                importedModule.setVersion(name[1]);
+            }
+            if (moduleManager.findImport(module, importedModule)==null) {
+                boolean[] flags = importFlags.get(i);
+                ModuleImport moduleImport = new ModuleImport(importedModule,
+                        flags[0], flags[1]);
+                moduleImport.getAnnotations().addAll(importAnnotations.get(i));
+                module.getImports().add(moduleImport);
+            }
+        }
+        for (int i=0; i<packageCount; i++) {
+            Package pkg = moduleManager.createPackage(packageNames.get(i), module);
+            pkg.setShared(packageShared.get(i));
+            pkg.getAnnotations().addAll(packageAnnotations.get(i));
+            packages.add(pkg);
+        }
+        for (int i=0; i<unitCount; i++) {
+            Unit unit = new ExternalUnit();
+            Package pkg = packages.get(unitPackages[i]);
+            unit.setPackage(pkg);
+            unit.setFilename(unitPaths[i][0]);
+            unit.setFullPath(unitPaths[i][1]);
+            unit.setRelativePath(unitPaths[i][2]);
+            pkg.addUnit(unit);
+            units.add(unit);
+        }
+        if (moduleUnit>=0) {
+            module.setUnit(units.get(moduleUnit));
+        }
+        for (int i=0; i<packageCount; i++) {
+            if (packageUnits[i]>=0) {
+                packages.get(i).setUnit(units.get(packageUnits[i]));
+            }
+        }
+        module.setAvailable(true);
+    }
+
+    /**
+     * Create the declarations of the module, and add them to
+     * their units and containers.
+     */
+    public void scanDeclarations() {
+        if (!declarationsScanned) {
+            try {
+                readDeclarations();
+            }
+            catch (IOException e) {
+                throw new IllegalStateException("damaged model archive of module " +
+                        module.getNameAsString(), e);
+            }
+            declarationsScanned = true;
+        }
+    }
+
+    /**
+     * Resolve the types of the declarations of the module,
+     * and their references to other declarations, once the
+     * declarations of every dependency exist.
+     */
+    public void scanTypeDeclarations() {
+        if (!typeDeclarationsScanned) {
+            scanDeclarations();
+            try {
+                readTypes();
+            }
+            catch (IOException e) {
+                throw new IllegalStateException("damaged model archive of module " +
+                        module.getNameAsString(), e);
+            }
+            membersOfScope.clear();
+            typeDeclarationsScanned = true;
+        }
+    }
+
+    private void readDeclarations() throws IOException {
+        int count = in.readInt();
+        declarations = new Declaration[count];
+        for (int i=0; i<count; i++) {
+            Declaration d = createDeclaration(in.readByte());
+            d.setName(readString(in));
+            declarations[i] = d;
+        }
+        for (Declaration d: declarations) {
+            Scope container = readScope();
+            d.setContainer(container);
+            d.setScope(container);
+            d.setUnit(units.get(in.readInt()));
+            int flags = in.readInt();
+            d.setShared((flags&1)!=0);
+            d.setFormal((flags&2)!=0);
+            d.setActual((flags&4)!=0);
+            d.setDefault((flags&8)!=0);
+            d.setNative((flags&16)!=0);
+            d.setStaticallyImportable((flags&32)!=0);
+            d.setProtectedVisibility((flags&64)!=0);
+            d.setOtherInstanceAccess((flags&128)!=0);
+            d.getAnnotations().addAll(readAnnotations(in));
+            d.setVisibleScope(readScope());
+            readDetails(d);
+            if (!(container instanceof Package)) {
+                membersOf(container).add(d);
+            }
+            d.getUnit().addDeclaration(d);
+        }
+    }
+
+    private static Declaration createDeclaration(int kind)
+            throws IOException {
+        switch (kind) {
+        case CLASS: return new Class();
+        case CLASS_ALIAS: return new ClassAlias();
+        case INTERFACE: return new Interface();
+        case INTERFACE_ALIAS: return new InterfaceAlias();
+        case TYPE_ALIAS: return new TypeAlias();
+        case TYPE_PARAMETER: return new TypeParameter();
+        case METHOD: return new Method();
+        case VALUE: return new Value();
+        case GETTER: return new Getter();
+        case SETTER: return new Setter();
+        case VALUE_PARAMETER: return new ValueParameter();
+        case FUNCTIONAL_PARAMETER: return new FunctionalParameter();
+        default: throw new IOException("unknown kind of declaration: " + kind);
+        }
+    }
+
+    private void readDetails(Declaration d) throws IOException {
+        if (d instanceof TypeDeclaration) {
+            TypeDeclaration td = (TypeDeclaration) d;
+            if (!(td instanceof TypeParameter)) {
+                td.setTypeParameters(readTypeParameters());
+            }
+            if (td instanceof Class) {
+                Class c = (Class) td;
+                c.setAbstract(in.readBoolean());
+                c.setAnonymous(in.readBoolean());
+                c.setFinal(in.readBoolean());
+                c.setOverloaded(in.readBoolean());
+                c.setAbstraction(in.readBoolean());
+                if (in.readBoolean()) {
+                    c.setParameterList(readParameterList());
+                }
+            }
+            else if (td instanceof TypeParameter) {
+                TypeParameter tp = (TypeParameter) td;
+                tp.setCovariant(in.readBoolean());
+                tp.setContravariant(in.readBoolean());
+                tp.setDefaulted(in.readBoolean());
+                tp.setConstrained(in.readBoolean());
+                tp.setDeclaration(readLocalDeclaration());
+                if (in.readBoolean()) {
+                    tp.setParameterList(readParameterList());
+                }
+            }
+        }
+        else {
+            TypedDeclaration td = (TypedDeclaration) d;
+            td.setUncheckedNullType(in.readBoolean());
+            td.setTypeErased(in.readBoolean());
+            byte unboxed = in.readByte();
+            td.setUnboxed(unboxed<0 ? null : Boolean.valueOf(unboxed!=0));
+            if (td instanceof MethodOrValue) {
+                MethodOrValue mv = (MethodOrValue) td;
+                mv.setShortcutRefinement(in.readBoolean());
+                mv.setInitializerParameter((ValueParameter) readLocalDeclaration());
+            }
+            if (td instanceof Method) {
+                Method m = (Method) td;
+                m.setTypeParameters(readTypeParameters());
+                m.setOverloaded(in.readBoolean());
+                m.setAbstraction(in.readBoolean());
+                m.setDeclaredAnything(in.readBoolean());
+                readParameterLists(m.getParameterLists());
+            }
+            else if (td instanceof Value) {
+                Value v = (Value) td;
+                v.setVariable(in.readBoolean());
+                v.setTransient(in.readBoolean());
+                v.setCaptured(in.readBoolean());
+                v.setLate(in.readBoolean());
+            }
+            else if (td instanceof Getter) {
+                ((Getter) td).setSetter((Setter) readLocalDeclaration());
+            }
+            else if (td instanceof Setter) {
+                Setter s = (Setter) td;
+                s.setGetter((Getter) readLocalDeclaration());
+                s.setParameter((ValueParameter) readLocalDeclaration());
+            }
+            else if (td instanceof Parameter) {
+                Parameter p = (Parameter) td;
+                p.setDefaulted(in.readBoolean());
+                p.setSequenced(in.readBoolean());
+                p.setCaptured(in.readBoolean());
+                p.setDeclaration(readLocalDeclaration());
+                if (p instanceof ValueParameter) {
+                    ((ValueParameter) p).setHidden(in.readBoolean());
+                }
+                else {
+                    FunctionalParameter fp = (FunctionalParameter) p;
+                    fp.setDeclaredAnything(in.readBoolean());
+                    readParameterLists(fp.getParameterLists());
+                }
+            }
+        }
+    }
+
+    private List<TypeParameter> readTypeParameters() throws IOException {
+        int count = in.readInt();
+        if (count==0) {
+            return Collections.emptyList();
+        }
+        List<TypeParameter> list = new ArrayList<TypeParameter>(count);
+        for (int i=0; i<count; i++) {
+            list.add((TypeParameter) readLocalDeclaration());
+        }
+        return list;
+    }
+
+    private void readParameterLists(List<ParameterList> list) throws IOException {
+        int count = in.readInt();
+        for (int i=0; i<count; i++) {
+            list.add(readParameterList());
+        }
+    }
+
+    private ParameterList readParameterList() throws IOException {
+        ParameterList pl = new ParameterList();
+        pl.setFirst(in.readBoolean());
+        pl.setNamedParametersSupported(in.readBoolean());
+        int count = in.readInt();
+        for (int i=0; i<count; i++) {
+            pl.getParameters().add((Parameter) readLocalDeclaration());
+        }
+        return pl;
+    }
+
+    private Declaration readLocalDeclaration() throws IOException {
+        int id = in.readInt();
+        return id<0 ? null : declarations[id];
+    }
+
+    private Scope readScope() throws IOException {
+        int id = in.readInt();
+        if (id>0) {
+            return (Scope) declarations[id-1];
+        }
+        else if (id<0) {
+            return packages.get(-id-1);
+        }
+        else {
+            return null;
+        }
+    }
+
+    private void readTypes() throws IOException {
+        int count = in.readInt();
+        types = new Object[count];
+        for (int i=0; i<count; i++) {
+            types[i] = readTypeEntry();
+        }
+        for (Declaration d: declarations) {
+            Declaration rd = readDeclaration();
+            if (rd!=null) {
+                d.setRefinedDeclaration(rd);
+            }
+            if (d instanceof TypeDeclaration) {
+                TypeDeclaration td = (TypeDeclaration) d;
+                td.setExtendedType(readType());
+                td.setSatisfiedTypes(readTypeList());
+                if (in.readBoolean()) {
+                    td.setCaseTypes(readTypeList());
+                }
+                td.setSelfType(readType());
+                if (td instanceof TypeParameter) {
+                    TypeParameter tp = (TypeParameter) td;
+                    tp.setDefaultTypeArgument(readType());
+                    tp.setSelfTypedDeclaration((TypeDeclaration) readDeclaration());
+                }
+            }
+            else {
+                TypedDeclaration td = (TypedDeclaration) d;
+                td.setType(readType());
+                td.setOriginalDeclaration((TypedDeclaration) readDeclaration());
+                if (td instanceof Parameter) {
+                    Parameter ap = (Parameter) readDeclaration();
+                    if (ap!=null) {
+                        ((Parameter) td).setAliasedParameter(ap);
+                    }
+                }
+            }
+            if (d instanceof Class) {
+                ((Class) d).setOverloads(readDeclarationList());
+            }
+            else if (d instanceof Method) {
+                ((Method) d).setOverloads(readDeclarationList());
+            }
+        }
+    }
+
+    private Object readTypeEntry() throws IOException {
+        int kind = in.readByte();
+        switch (kind) {
+        case TYPE:
+            TypeDeclaration td = (TypeDeclaration) readDeclaration();
+            ProducedType qualifyingType = readType();
+            int count = in.readInt();
+            List<ProducedType> typeArguments = new ArrayList<ProducedType>(count);
+            for (int i=0; i<count; i++) {
+                typeArguments.add(readType());
+            }
+            String underlyingType = readString(in);
+            boolean raw = in.readBoolean();
+            if (td==null) {
+                //a declaration which no longer exists
+                return new UnknownType(units.isEmpty() ? null : units.get(0)).getType();
+            }
+            ProducedType type = td.getProducedType(qualifyingType, typeArguments);
+            if ((underlyingType!=null || raw) && type.isCanonical()) {
+                //the type is shared, so modify a copy
+                type = type.withoutUnderlyingType();
+            }
+            if (underlyingType!=null) {
+                type.setUnderlyingType(underlyingType);
+            }
+            if (raw) {
+                type.setRaw(true);
+            }
+            return type;
+        case UNION:
+            UnionType ut = new UnionType(readUnit());
+            ut.setCaseTypes(readTypeList());
+            return ut;
+        case INTERSECTION:
+            IntersectionType it = new IntersectionType(readUnit());
+            it.setSatisfiedTypes(readTypeList());
+            return it;
+        case NOTHING:
+            return new NothingType(readUnit());
+        case UNKNOWN:
+            return new UnknownType(readUnit());
+        default:
+            throw new IOException("unknown kind of type: " + kind);
+        }
+    }
+
+    private Unit readUnit() throws IOException {
+        int id = in.readInt();
+        if (id>=0) {
+            return units.get(id);
+        }
+        else if (id==OTHER_UNIT && !units.isEmpty()) {
+            return units.get(0);
+        }
+        else {
+            return null;
+        }
+    }
+
+    private ProducedType readType() throws IOException {
+        int id = in.readInt();
+        return id<0 ? null : (ProducedType) types[id];
+    }
+
+    private List<ProducedType> readTypeList() throws IOException {
+        int count = in.readInt();
+        List<ProducedType> list = new ArrayList<ProducedType>(count);
+        for (int i=0; i<count; i++) {
+            list.add(readType());
+        }
+        return list;
+    }
+
+    private List<Declaration> readDeclarationList() throws IOException {
+        int count = in.readInt();
+        if (count<0) {
+            return null;
+        }
+        List<Declaration> list = new ArrayList<Declaration>(count);
+        for (int i=0; i<count; i++) {
+            Declaration d = readDeclaration();
+            if (d!=null) {
+                list.add(d);
+            }
+        }
+        return list;
+    }
+
+    private Declaration readDeclaration() throws IOException {
+        int id = in.readInt();
+        if (id>=0) {
+            return declarations[id];
+        }
+        else if (id==ANONYMOUS_DECLARATION) {
+            return (Declaration) types[in.readInt()];
+        }
+        else if (id==EXTERNAL_DECLARATION) {
+            String moduleName = readString(in);
+            String version = readString(in);
+            String packageName = readString(in);
+            int count = in.readInt();
+            String[] names = new String[count];
+            int[] indexes = new int[count];
+            for (int i=0; i<count; i++) {
+                names[i] = readString(in);
+                indexes[i] = in.readInt();
+            }
+            return findExternalDeclaration(moduleName, version, packageName,
+                    names, indexes);
+        }
+        else {
+            return null;
+        }
+    }
+
+    private Declaration findExternalDeclaration(String moduleName,
+            String version, String packageName, String[] names, int[] indexes) {
+        Scope scope = null;
+        for (Module m: moduleManager.getContext().getModules().getModules(moduleName)) {
+            if (m.getNameAsString().equals(moduleName) &&
+                    equal(m.getVersion(), version)) {
+                scope = m.getDirectPackage(packageName);
+                break;
+            }
+        }
+        Declaration result = null;
+        for (int i=0; i<names.length && scope!=null; i++) {
+            result = null;
+            int index = indexes[i];
+            for (Declaration member: getMembers(scope)) {
+                if (names[i].equals(member.getName()) && index--==0) {
+                    result = member;
+                    break;
+                }
+            }
+            scope = result instanceof Scope ? (Scope) result : null;
+        }
+        return result;
+    }
+
+    private List<Declaration> getMembers(Scope scope) {
+        List<Declaration> members = membersOfScope.get(scope);
+        if (members==null) {
+            members = membersOf(scope);
+            membersOfScope.put(scope, members);
+        }
+        return members;
+    }
+
+    /**
+     * The members of the given package or element, which
+     * every scope of an archive is.
+     */
+    private static List<Declaration> membersOf(Scope scope) {
+        if (scope instanceof Package) {
+            return ((Package) scope).getMembers();
+        }
+        else {
+            return ((Element) scope).getMembers();
+        }
+    }
+
+    private static List<Annotation> readAnnotations(DataInputStream in)
+            throws IOException {
+        int count = in.readInt();
+        List<Annotation> list = new ArrayList<Annotation>(count);
+        for (int i=0; i<count; i++) {
+            Annotation a = new Annotation();
+            a.setName(readString(in));
+            int positional = in.readInt();
+            for (int j=0; j<positional; j++) {
+                a.addPositionalArgment(readString(in));
+            }
+            int named = in.readInt();
+            for (int j=0; j<named; j++) {
+                a.addNamedArgument(readString(in), readString(in));
+            }
+            list.add(a);
+        }
+        return list;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length<0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static void writeString(DataOutputStream out, String string)
+            throws IOException {
+        if (string==null) {
+            out.writeInt(-1);
+        }
+        else {
+            byte[] bytes = string.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static boolean equal(String x, String y) {
+        return x==null ? y==null : x.equals(y);
+    }
+
+    /**
+     * Writes the model of a module in the order in which
+     * {@link ModelArchive} reads it.
+     */
+    private static class Writer {
+
+        private final Module module;
+        private final Map<Package, Integer> packageIds =
+                new IdentityHashMap<Package, Integer>();
+        private final List<Unit> units = new ArrayList<Unit>();
+        private final Map<Unit, Integer> unitIds =
+                new IdentityHashMap<Unit, Integer>();
+        private final List<Declaration> declarations = new ArrayList<Declaration>();
+        private final Map<Declaration, Integer> declarationIds =
+                new IdentityHashMap<Declaration, Integer>();
+        private final Map<Object, Integer> typeIds =
+                new IdentityHashMap<Object, Integer>();
+        private final ByteArrayOutputStream typeBytes = new ByteArrayOutputStream();
+        private final DataOutputStream typeOut = new DataOutputStream(typeBytes);
+
+        Writer(Module module) {
+            this.module = module;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            writeString(out, module.getNameAsString());
+            writeString(out, module.getVersion());
+            writeAnnotations(out, module.getAnnotations());
+            out.writeInt(module.getImports().size());
+            for (ModuleImport mi: module.getImports()) {
+                writeString(out, mi.getModule().getNameAsString());
+                writeString(out, mi.getModule().getVersion());
+                out.writeBoolean(mi.isOptional());
+                out.writeBoolean(mi.isExport());
+                writeAnnotations(out, mi.getAnnotations());
+            }
+            List<Package> packages = module.getPackages();
+            out.writeInt(packages.size());
+            for (Package pkg: packages) {
+                packageIds.put(pkg, packageIds.size());
+                writeString(out, pkg.getNameAsString());
+                out.writeBoolean(pkg.isShared());
+                writeAnnotations(out, pkg.getAnnotations());
+            }
+            for (Package pkg: packages) {
+                for (Unit unit: pkg.getUnits()) {
+                    unitIds.put(unit, units.size());
+                    units.add(unit);
+                }
+            }
+            out.writeInt(units.size());
+            for (Unit unit: units) {
+                out.writeInt(packageIds.get(unit.getPackage()));
+                writeString(out, unit.getFilename());
+                writeString(out, unit.getFullPath());
+                writeString(out, unit.getRelativePath());
+            }
+            out.writeInt(unitId(module.getUnit()));
+            for (Package pkg: packages) {
+                out.writeInt(unitId(pkg.getUnit()));
+            }
+
+            //containers come before their members
+            for (Unit unit: units) {
+                for (Declaration d: unit.getDeclarations()) {
+                    if (d.getContainer()==unit.getPackage()) {
+                        addDeclaration(d);
+                    }
+                }
+            }
+            out.writeInt(declarations.size());
+            for (Declaration d: declarations) {
+                out.writeByte(kind(d));
+                writeString(out, d.getName());
+            }
+            for (Declaration d: declarations) {
+                writeScope(out, d.getContainer());
+                out.writeInt(unitIds.get(d.getUnit()));
+                int flags = 0;
+                if (d.isShared()) flags |= 1;
+                if (d.isFormal()) flags |= 2;
+                if (d.isActual()) flags |= 4;
+                if (d.isDefault()) flags |= 8;
+                if (d.isNative()) flags |= 16;
+                if (d.isStaticallyImportable()) flags |= 32;
+                if (d.isProtectedVisibility()) flags |= 64;
+                if (d.getOtherInstanceAccess()) flags |= 128;
+                out.writeInt(flags);
+                writeAnnotations(out, d.getAnnotations());
+                writeScope(out, d.getVisibleScope());
+                writeDetails(out, d);
+            }
+
+            //the types are written in the order in which
+            //they are first used, after the types they use
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream typesOfDeclarations = new DataOutputStream(bytes);
+            for (Declaration d: declarations) {
+                writeTypes(typesOfDeclarations, d);
+            }
+            typesOfDeclarations.flush();
+            typeOut.flush();
+            out.writeInt(typeIds.size());
+            typeBytes.writeTo(out);
+            bytes.writeTo(out);
+            out.flush();
+        }
+
+        private void addDeclaration(Declaration d) {
+            declarationIds.put(d, declarations.size());
+            declarations.add(d);
+            boolean typeDeclaration = d instanceof TypeDeclaration;
+            for (Declaration member: d.getMembers()) {
+                //leave out the local declarations of
+                //functions and values
+                if (member.getContainer()==d &&
+                        (typeDeclaration ||
+                         member instanceof Parameter ||
+                         member instanceof TypeParameter)) {
+                    addDeclaration(member);
+                }
+            }
+        }
+
+        private int unitId(Unit unit) {
+            Integer id = unit==null ? null : unitIds.get(unit);
+            return id==null ? NO_UNIT : id;
+        }
+
+        private int declarationId(Declaration d) {
+            Integer id = d==null ? null : declarationIds.get(d);
+            return id==null ? NO_DECLARATION : id;
+        }
+
+        private static int kind(Declaration d) {
+            if (d instanceof ClassAlias) return CLASS_ALIAS;
+            if (d instanceof Class) return CLASS;
+            if (d instanceof InterfaceAlias) return INTERFACE_ALIAS;
+            if (d instanceof Interface) return INTERFACE;
+            if (d instanceof TypeAlias) return TYPE_ALIAS;
+            if (d instanceof TypeParameter) return TYPE_PARAMETER;
+            if (d instanceof Method) return METHOD;
+            if (d instanceof Value) return VALUE;
+            if (d instanceof Getter) return GETTER;
+            if (d instanceof Setter) return SETTER;
+            if (d instanceof ValueParameter) return VALUE_PARAMETER;
+            if (d instanceof FunctionalParameter) return FUNCTIONAL_PARAMETER;
+            throw new IllegalArgumentException("unsupported declaration: " + d);
+        }
+
+        private void writeScope(DataOutputStream out, Scope scope)
+                throws IOException {
+            if (scope instanceof Package && packageIds.containsKey(scope)) {
+                out.writeInt(-packageIds.get(scope)-1);
+            }
+            else if (scope instanceof Declaration) {
+                out.writeInt(declarationId((Declaration) scope)+1);
+            }
+            else {
+                out.writeInt(0);
+            }
+        }
+
+        private void writeDetails(DataOutputStream out, Declaration d)
+                throws IOException {
+            if (d instanceof TypeDeclaration) {
+                TypeDeclaration td = (TypeDeclaration) d;
+                if (!(td instanceof TypeParameter)) {
+                    writeTypeParameters(out, td.getTypeParameters());
+                }
+                if (td instanceof Class) {
+                    Class c = (Class) td;
+                    out.writeBoolean(c.isAbstract());
+                    out.writeBoolean(c.isAnonymous());
+                    out.writeBoolean(c.isFinal());
+                    out.writeBoolean(c.isOverloaded());
+                    out.writeBoolean(c.isAbstraction());
+                    out.writeBoolean(c.getParameterList()!=null);
+                    if (c.getParameterList()!=null) {
+                        writeParameterList(out, c.getParameterList());
+                    }
+                }
+                else if (td instanceof TypeParameter) {
+                    TypeParameter tp = (TypeParameter) td;
+                    out.writeBoolean(tp.isCovariant());
+                    out.writeBoolean(tp.isContravariant());
+                    out.writeBoolean(tp.isDefaulted());
+                    out.writeBoolean(tp.isConstrained());
+                    out.writeInt(declarationId(tp.getDeclaration()));
+                    out.writeBoolean(tp.getParameterList()!=null);
+                    if (tp.getParameterList()!=null) {
+                        writeParameterList(out, tp.getParameterList());
+                    }
+                }
+            }
+            else {
+                TypedDeclaration td = (TypedDeclaration) d;
+                out.writeBoolean(td.hasUncheckedNullType());
+                out.writeBoolean(td.getTypeErased());
+                Boolean unboxed = td.getUnboxed();
+                out.writeByte(unboxed==null ? -1 : unboxed ? 1 : 0);
+                if (td instanceof MethodOrValue) {
+                    MethodOrValue mv = (MethodOrValue) td;
+                    out.writeBoolean(mv.isShortcutRefinement());
+                    out.writeInt(declarationId(mv.getInitializerParameter()));
+                }
+                if (td instanceof Method) {
+                    Method m = (Method) td;
+                    writeTypeParameters(out, m.getTypeParameters());
+                    out.writeBoolean(m.isOverloaded());
+                    out.writeBoolean(m.isAbstraction());
+                    out.writeBoolean(m.isDeclaredVoid());
+                    writeParameterLists(out, m.getParameterLists());
+                }
+                else if (td instanceof Value) {
+                    Value v = (Value) td;
+                    out.writeBoolean(v.isVariable());
+                    out.writeBoolean(v.isTransient());
+                    out.writeBoolean(v.isCaptured());
+                    out.writeBoolean(v.isLate());
+                }
+                else if (td instanceof Getter) {
+                    out.writeInt(declarationId(((Getter) td).getSetter()));
+                }
+                else if (td instanceof Setter) {
+                    Setter s = (Setter) td;
+                    out.writeInt(declarationId(s.getGetter()));
+                    out.writeInt(declarationId(s.getParameter()));
+                }
+                else if (td instanceof Parameter) {
+                    Parameter p = (Parameter) td;
+                    out.writeBoolean(p.isDefaulted());
+                    out.writeBoolean(p.isSequenced());
+                    out.writeBoolean(p.isCaptured());
+                    out.writeInt(declarationId(p.getDeclaration()));
+                    if (p instanceof ValueParameter) {
+                        out.writeBoolean(((ValueParameter) p).isHidden());
+                    }
+                    else {
+                        FunctionalParameter fp = (FunctionalParameter) p;
+                        out.writeBoolean(fp.isDeclaredVoid());
+                        writeParameterLists(out, fp.getParameterLists());
+                    }
+                }
+            }
+        }
+
+        private void writeTypeParameters(DataOutputStream out,
+                List<TypeParameter> typeParameters) throws IOException {
+            out.writeInt(typeParameters.size());
+            for (TypeParameter tp: typeParameters) {
+                out.writeInt(declarationId(tp));
+            }
+        }
+
+        private void writeParameterLists(DataOutputStream out,
+                List<ParameterList> parameterLists) throws IOException {
+            out.writeInt(parameterLists.size());
+            for (ParameterList pl: parameterLists) {
+                writeParameterList(out, pl);
+            }
+        }
+
+        private void writeParameterList(DataOutputStream out, ParameterList pl)
+                throws IOException {
+            out.writeBoolean(pl.isFirst());
+            out.writeBoolean(pl.isNamedParametersSupported());
+            out.writeInt(pl.getParameters().size());
+            for (Parameter p: pl.getParameters()) {
+                out.writeInt(declarationId(p));
+            }
+        }
+
+        private void writeTypes(DataOutputStream out, Declaration d)
+                throws IOException {
+            Declaration rd = d.getRefinedDeclaration();
+            writeDeclaration(out, rd==d ? null : rd);
+            if (d instanceof TypeDeclaration) {
+                TypeDeclaration td = (TypeDeclaration) d;
+                writeType(out, td.getExtendedType());
+                writeTypeList(out, td.getSatisfiedTypes());
+                List<ProducedType> caseTypes = td.getCaseTypes();
+                out.writeBoolean(caseTypes!=null);
+                if (caseTypes!=null) {
+                    writeTypeList(out, caseTypes);
+                }
+                writeType(out, td.getSelfType());
+                if (td instanceof TypeParameter) {
+                    TypeParameter tp = (TypeParameter) td;
+                    writeType(out, tp.getDefaultTypeArgument());
+                    writeDeclaration(out, tp.getSelfTypedDeclaration());
+                }
+            }
+            else {
+                TypedDeclaration td = (TypedDeclaration) d;
+                writeType(out, td.getType());
+                writeDeclaration(out, td.getOriginalDeclaration());
+                if (td instanceof Parameter) {
+                    Parameter ap = ((Parameter) td).getAliasedParameter();
+                    writeDeclaration(out, ap==td ? null : ap);
+                }
+            }
+            if (d instanceof Class) {
+                writeDeclarationList(out, ((Class) d).getOverloads());
+            }
+            else if (d instanceof Method) {
+                writeDeclarationList(out, ((Method) d).getOverloads());
+            }
+        }
+
+        private void writeTypeList(DataOutputStream out,
+                List<ProducedType> types) throws IOException {
+            out.writeInt(types.size());
+            for (ProducedType type: types) {
+                writeType(out, type);
+            }
+        }
+
+        private void writeDeclarationList(DataOutputStream out,
+                List<Declaration> list) throws IOException {
+            if (list==null) {
+                out.writeInt(-1);
+            }
+            else {
+                out.writeInt(list.size());
+                for (Declaration d: list) {
+                    writeDeclaration(out, d);
+                }
+            }
+        }
+
+        private void writeType(DataOutputStream out, ProducedType type)
+                throws IOException {
+            out.writeInt(type==null ? -1 : typeId(type));
+        }
+
+        private int typeId(ProducedType type) throws IOException {
+            Integer id = typeIds.get(type);
+            if (id!=null) {
+                return id;
+            }
+            TypeDeclaration td = type.getDeclaration();
+            ProducedType qualifyingType = type.getQualifyingType();
+            List<ProducedType> typeArguments = type.getTypeArgumentList();
+            //make sure that everything this type uses
+            //comes before it
+            if (isAnonymous(td)) {
+                anonymousTypeId(td);
+            }
+            if (qualifyingType!=null) {
+                typeId(qualifyingType);
+            }
+            for (ProducedType ta: typeArguments) {
+                if (ta!=null) {
+                    typeId(ta);
+                }
+            }
+            typeOut.writeByte(TYPE);
+            writeDeclaration(typeOut, td);
+            writeType(typeOut, qualifyingType);
+            writeTypeList(typeOut, typeArguments);
+            writeString(typeOut, type.getUnderlyingType());
+            typeOut.writeBoolean(type.isRaw());
+            id = typeIds.size();
+            typeIds.put(type, id);
+            return id;
+        }
+
+        private static boolean isAnonymous(TypeDeclaration td) {
+            return td instanceof UnionType ||
+                    td instanceof IntersectionType ||
+                    td instanceof NothingType ||
+                    td instanceof UnknownType;
+        }
+
+        private int anonymousTypeId(TypeDeclaration td) throws IOException {
+            Integer id = typeIds.get(td);
+            if (id!=null) {
+                return id;
+            }
+            List<ProducedType> types;
+            if (td instanceof UnionType) {
+                types = td.getCaseTypes();
+            }
+            else if (td instanceof IntersectionType) {
+                types = td.getSatisfiedTypes();
+            }
+            else {
+                types = Collections.emptyList();
+            }
+            for (ProducedType type: types) {
+                if (type!=null) {
+                    typeId(type);
+                }
+            }
+            if (td instanceof UnionType) {
+                typeOut.writeByte(UNION);
+            }
+            else if (td instanceof IntersectionType) {
+                typeOut.writeByte(INTERSECTION);
+            }
+            else if (td instanceof NothingType) {
+                typeOut.writeByte(NOTHING);
+            }
+            else {
+                typeOut.writeByte(UNKNOWN);
+            }
+            Unit unit = td.getUnit();
+            int unitId = unitId(unit);
+            typeOut.writeInt(unit!=null && unitId==NO_UNIT ? OTHER_UNIT : unitId);
+            if (td instanceof UnionType || td instanceof IntersectionType) {
+                writeTypeList(typeOut, types);
+            }
+            id = typeIds.size();
+            typeIds.put(td, id);
+            return id;
+        }
+
+        private void writeDeclaration(DataOutputStream out, Declaration d)
+                throws IOException {
+            if (d==null) {
+                out.writeInt(NO_DECLARATION);
+            }
+            else if (declarationIds.containsKey(d)) {
+                out.writeInt(declarationIds.get(d));
+            }
+            else if (d instanceof TypeDeclaration &&
+                    isAnonymous((TypeDeclaration) d)) {
+                int id = anonymousTypeId((TypeDeclaration) d);
+                out.writeInt(ANONYMOUS_DECLARATION);
+                out.writeInt(id);
+            }
+            else {
+                //a declaration of another module, by its
+                //qualified name
+                List<String> names = new ArrayList<String>();
+                List<Integer> indexes = new ArrayList<Integer>();
+                Declaration member = d;
+                Scope scope = d.getContainer();
+                while (member!=null && scope!=null && !(scope instanceof Package)) {
+                    addStep(scope, member, names, indexes);
+                    member = scope instanceof Declaration ? (Declaration) scope : null;
+                    scope = member==null ? null : member.getContainer();
+                }
+                if (member==null || scope==null) {
+                    //a local declaration
+                    out.writeInt(NO_DECLARATION);
+                    return;
+                }
+                addStep(scope, member, names, indexes);
+                Package pkg = (Package) scope;
+                out.writeInt(EXTERNAL_DECLARATION);
+                writeString(out, pkg.getModule().getNameAsString());
+                writeString(out, pkg.getModule().getVersion());
+                writeString(out, pkg.getNameAsString());
+                out.writeInt(names.size());
+                for (int i=names.size()-1; i>=0; i--) {
+                    writeString(out, names.get(i));
+                    out.writeInt(indexes.get(i));
+                }
+            }
+        }
+
+        private static void addStep(Scope scope, Declaration member,
+                List<String> names, List<Integer> indexes) {
+            //the members with the same name, such as a
+            //getter and its setter, are told apart by
+            //their position
+            int index = 0;
+            for (Declaration d: membersOf(scope)) {
+                if (d==member) break;
+                if (d.getName()!=null && d.getName().equals(member.getName())) {
+                    index++;
+                }
+            }
+            names.add(member.getName());
+            indexes.add(index);
+        }
+
+        private static void writeAnnotations(DataOutputStream out,
+                List<Annotation> annotations) throws IOException {
+            out.writeInt(annotations.size());
+            for (Annotation a: annotations) {
+                writeString(out, a.getName());
+                out.writeInt(a.getPositionalArguments().size());
+                for (String arg: a.getPositionalArguments()) {
+                    writeString(out, arg);
+                }
+                out.writeInt(a.getNamedArguments().size());
+                for (Map.Entry<String, String> arg: a.getNamedArguments().entrySet()) {
+                    writeString(out, arg.getKey());
+                    writeString(out, arg.getValue());
+                }
+            }
+        }
+
+    }
+
+}
@@ -11,19 +11,24 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import com.redhat.ceylon.cmr.api.ArtifactContext;
 import com.redhat.ceylon.cmr.api.ArtifactResult;
 import com.redhat.ceylon.cmr.api.RepositoryManager;
 import com.redhat.ceylon.compiler.typechecker.TypeChecker;
 import com.redhat.ceylon.compiler.typechecker.context.Context;
+import com.redhat.ceylon.compiler.typechecker.context.PackageLoader;
 import com.redhat.ceylon.compiler.typechecker.context.PhasedUnits;
 import com.redhat.ceylon.compiler.typechecker.io.ClosableVirtualFile;
+import com.redhat.ceylon.compiler.typechecker.io.VirtualFile;
 import com.redhat.ceylon.compiler.typechecker.model.Module;
 import com.redhat.ceylon.compiler.typechecker.model.ModuleImport;
 import com.redhat.ceylon.compiler.typechecker.model.Modules;
 import com.redhat.ceylon.compiler.typechecker.model.Package;
+import com.redhat.ceylon.compiler.typechecker.model.SharedLanguageModule;
 import com.redhat.ceylon.compiler.typechecker.tree.Node;
+import com.redhat.ceylon.compiler.typechecker.util.Timings;
 
 /**
  * Manager modules and packages (build, retrieve, handle errors etc)
@@ -35,11 +40,16 @@ public class ModuleManager {
     public static final String PACKAGE_FILE = "package.ceylon";
     private final Context context;
     private final LinkedList<Package> packageStack = new LinkedList<Package>();
+    //the package of the file a thread is parsing, while
+    //files are parsed concurrently
+    private final ThreadLocal<Package> parsedPackage = new ThreadLocal<Package>();
     private Module currentModule;
     private Modules modules;
     private final Map<ModuleImport,Set<Node>> moduleImportToNode = new HashMap<ModuleImport, Set<Node>>();
     private Map<List<String>, Set<String>> topLevelErrorsPerModuleName = new HashMap<List<String>,Set<String>>();
     private Map<Module, Node> moduleToNode = new HashMap<Module, Node>();
+    private final List<ModelArchive> modelArchives = new ArrayList<ModelArchive>();
+    private ExecutorService executor;
 
     public ModuleManager(Context context) {
         this.context = context;
@@ -79,10 +89,18 @@ public class ModuleManager {
 
             //create language module and add it as a dependency of defaultModule
             //since packages outside a module cannot declare dependencies
-            final List<String> languageName = Arrays.asList("ceylon", "language");
-            Module languageModule = createModule(languageName, TypeChecker.LANGUAGE_MODULE_VERSION);
-            languageModule.setLanguageModule(languageModule);
-            languageModule.setAvailable(false); //not available yet
+            Module languageModule;
+            SharedLanguageModule sharedLanguageModule = context.getSharedLanguageModule();
+            if (sharedLanguageModule==null) {
+                final List<String> languageName = Arrays.asList("ceylon", "language");
+                languageModule = createModule(languageName, TypeChecker.LANGUAGE_MODULE_VERSION);
+                languageModule.setLanguageModule(languageModule);
+                languageModule.setAvailable(false); //not available yet
+            }
+            else {
+                //already available, and never resolved again
+                languageModule = sharedLanguageModule.getModule();
+            }
             modules.setLanguageModule(languageModule);
             modules.getListOfModules().add(languageModule);
             defaultModule.getImports().add(new ModuleImport(languageModule, false, false));
@@ -110,7 +128,23 @@ public class ModuleManager {
     }
 
     public Package getCurrentPackage() {
-        return packageStack.peekLast();
+        Package pkg = parsedPackage.get();
+        return pkg==null ? packageStack.peekLast() : pkg;
+    }
+
+    /**
+     * Makes the given package the current package of the
+     * current thread while it parses a file of the package,
+     * concurrently with other threads, or, given null, makes
+     * the package being walked current again.
+     */
+    public void setParsedPackage(Package pkg) {
+        if (pkg==null) {
+            parsedPackage.remove();
+        }
+        else {
+            parsedPackage.set(pkg);
+        }
     }
 
     /**
@@ -123,8 +157,8 @@ public class ModuleManager {
             return null;
         }
         Module module = null;
-        final Set<Module> moduleList = context.getModules().getListOfModules();
-        for (Module current : moduleList) {
+        final Modules contextModules = context.getModules();
+        for (Module current : contextModules.getModules(formatPath(moduleName))) {
             final List<String> names = current.getName();
             if (moduleName.equals(names)
                     && compareVersions(version, current.getVersion())) {
@@ -135,7 +169,7 @@ public class ModuleManager {
         if (module == null) {
             module = createModule(moduleName, version);
             module.setLanguageModule(modules.getLanguageModule());
-            moduleList.add(module);
+            contextModules.getListOfModules().add(module);
         }
         return module;
     }
@@ -238,6 +272,29 @@ public class ModuleManager {
         }
     }
 
+    private boolean attachWarningToDependencyDeclaration(ModuleImport moduleImport, 
+            List<Module> dependencyTree, String warning) {
+        //the import of the module, or else the import of
+        //the module of the dependency tree which imports it
+        ModuleImport dependencyImport = moduleImport;
+        if (!moduleImportToNode.containsKey(dependencyImport) && 
+                dependencyTree.size()>=2) {
+            for (ModuleImport imp: dependencyTree.get(0).getImports()) {
+                if (imp.getModule()==dependencyTree.get(1)) {
+                    dependencyImport = imp;
+                }
+            }
+        }
+        Set<Node> nodes = moduleImportToNode.get(dependencyImport);
+        if (nodes==null) {
+            return false;
+        }
+        for (Node definition: nodes) {
+            definition.addWarning(warning);
+        }
+        return true;
+    }
+
     private boolean attachErrorToDependencyDeclaration(ModuleImport moduleImport, String error) {
         Set<Node> moduleDepError = moduleImportToNode.get(moduleImport);
         if (moduleDepError != null) {
@@ -319,7 +376,7 @@ public class ModuleManager {
     }
     
     public Module findLoadedModule(String moduleName, String searchedVersion, Modules modules) {
-        for(Module module : modules.getListOfModules()){
+        for(Module module : modules.getModules(moduleName)){
             if(module.getNameAsString().equals(moduleName)) {
                 if (searchedVersion != null && searchedVersion.equals(module.getVersion())){
                     return module;
@@ -329,9 +386,26 @@ public class ModuleManager {
         return null;
     }
 
+    /**
+     * Parse the source archives of the modules resolved
+     * concurrently using the given executor, or on the 
+     * calling thread if it is null.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
     public void resolveModule(ArtifactResult artifact, Module module, ModuleImport moduleImport, LinkedList<Module> dependencyTree, List<PhasedUnits> phasedUnitsOfDependencies, boolean forCompiledModule) {
         //This implementation relies on the ability to read the model from source
         //the compiler for example subclasses this to read lazily and from the compiled model
+        if (context.isModelArchives() && 
+                readModelArchive(module, moduleImport, dependencyTree)) {
+            return;
+        }
         ArtifactContext artifactContext = new ArtifactContext(module.getNameAsString(), module.getVersion(), ArtifactContext.SRC);
         RepositoryManager repositoryManager = context.getRepositoryManager();
         Exception exceptionOnGetArtifact = null;
@@ -349,9 +423,22 @@ public class ModuleManager {
             PhasedUnits modulePhasedUnit = createPhasedUnits();
             phasedUnitsOfDependencies.add(modulePhasedUnit);
             ClosableVirtualFile virtualArtifact= null;
+            Timings timings = context.getTimings();
+            Timings.Timer timer = timings==null ? null : timings.start();
             try {
                 virtualArtifact = context.getVfs().getFromZipFile(sourceArtifact.artifact());
-                modulePhasedUnit.parseUnit(virtualArtifact);
+                PackageLoader packageLoader = context.getPackageLoader();
+                if (packageLoader==null) {
+                    if (executor==null) {
+                        modulePhasedUnit.parseUnit(virtualArtifact);
+                    }
+                    else {
+                        modulePhasedUnit.parseUnits(Collections.<VirtualFile>singletonList(virtualArtifact), executor);
+                    }
+                }
+                else {
+                    modulePhasedUnit.parseUnitLazily(virtualArtifact, packageLoader);
+                }
                 //populate module.getDependencies()
                 modulePhasedUnit.visitModules();
             } catch (Exception e) {
@@ -363,16 +450,66 @@ public class ModuleManager {
                 if (virtualArtifact != null) {
                     virtualArtifact.close();
                 }
+                if (timings != null) {
+                    timings.recordPhase("parseDependencies", timer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the model of the given module from its model 
+     * archive, if the repository has one. An archive which
+     * can't be read is reported as a warning on the import
+     * of the module.
+     * 
+     * @return false if the module must be read from source
+     */
+    private boolean readModelArchive(Module module, ModuleImport moduleImport, 
+            LinkedList<Module> dependencyTree) {
+        ArtifactContext artifactContext = new ArtifactContext(module.getNameAsString(), module.getVersion(), ModelArchive.SUFFIX);
+        try {
+            ArtifactResult modelArtifact = context.getRepositoryManager().getArtifactResult(artifactContext);
+            if (modelArtifact==null) {
+                return false;
+            }
+            ModelArchive archive = ModelArchive.read(modelArtifact.artifact(), module, this);
+            if (archive==null) {
+                return false;
+            }
+            modelArchives.add(archive);
+            return true;
+        }
+        catch (Exception e) {
+            //fall back to the source archive
+            String warning = "unable to read model archive for " + artifactContext + 
+                    ", reading source archive instead: " + e;
+            if (!attachWarningToDependencyDeclaration(moduleImport, dependencyTree, warning)) {
+                System.err.println(warning);
             }
+            return false;
         }
     }
 
+    /**
+     * The model archives of the dependencies which are read
+     * instead of their source archives.
+     */
+    public List<ModelArchive> getModelArchives() {
+        return modelArchives;
+    }
+
     protected PhasedUnits createPhasedUnits() {
         return new PhasedUnits(getContext());
     }
 
     public Iterable<String> getSearchedArtifactExtensions() {
-        return Arrays.asList("src");
+        if (context.isModelArchives()) {
+            return Arrays.asList("model", "src");
+        }
+        else {
+            return Arrays.asList("src");
+        }
     }
 
     public static List<String> splitModuleName(String moduleName) {
@@ -2,15 +2,21 @@ package com.redhat.ceylon.compiler.typechecker.analyzer;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import com.redhat.ceylon.cmr.api.ArtifactContext;
 import com.redhat.ceylon.cmr.api.ArtifactResult;
 import com.redhat.ceylon.cmr.api.RepositoryManager;
 import com.redhat.ceylon.compiler.typechecker.context.Context;
+import com.redhat.ceylon.compiler.typechecker.context.PackageLoader;
 import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
 import com.redhat.ceylon.compiler.typechecker.context.PhasedUnits;
 import com.redhat.ceylon.compiler.typechecker.model.Module;
@@ -20,7 +26,8 @@ import com.redhat.ceylon.compiler.typechecker.model.ModuleImport;
  * Validate module dependency:
  *  - make sure all modules are available
  *  - get modules from local or remote repos if necessary
- *  - parse and process external modules
+ *  - parse and process external modules, or read their
+ *    model archives
  *
  * @author Emmanuel Bernard <emmanuel@hibernate.org>
  */
@@ -28,6 +35,10 @@ public class ModuleValidator {
     private final Context context;
     private List<PhasedUnits> phasedUnitsOfDependencies;
     private final ModuleManager moduleManager;
+    //the lookups of the artifacts of modules, when they are
+    //looked up concurrently
+    private ExecutorService executor;
+    private Map<Module, Future<ArtifactLookup>> artifactLookups;
 
     
     public ModuleValidator(Context context, PhasedUnits phasedUnits) {
@@ -48,86 +59,215 @@ public class ModuleValidator {
      *  - detect module version conflicts
      */
     public void verifyModuleDependencyTree() {
+        verifyModuleDependencyTree(null);
+    }
+
+    /**
+     * Verifies the module dependency tree like 
+     * {@link #verifyModuleDependencyTree()}, but looks up
+     * the artifacts of the modules imported by a module
+     * concurrently, using the given executor, as soon as
+     * its imports are known, and parses source archives
+     * concurrently. Modules are still resolved, and errors
+     * attached, on the calling thread in the same order.
+     */
+    public void verifyModuleDependencyTree(ExecutorService executor) {
         phasedUnitsOfDependencies = new ArrayList<PhasedUnits>();
-        LinkedList<Module> dependencyTree = new LinkedList<Module>();
         // only verify modules we compile (and default/language), as that makes us traverse their dependencies anyways
         Set<Module> compiledModules = moduleManager.getCompiledModules();
         List<Module> modules = new ArrayList<Module>(compiledModules.size()+2);
         modules.addAll(compiledModules);
         modules.add(context.getModules().getDefaultModule());
         modules.add(context.getModules().getLanguageModule());
-        for (Module module : modules) {
-            dependencyTree.addLast(module);
-            //we don't care about propagated dependency here as top modules are independent from one another
-            verifyModuleDependencyTree(module.getImports(), dependencyTree, new ArrayList<Module>(), true);
-            dependencyTree.pollLast();
+        if (executor != null) {
+            this.executor = executor;
+            artifactLookups = new HashMap<Module, Future<ArtifactLookup>>();
+            moduleManager.setExecutor(executor);
+            for (Module module : modules) {
+                lookupArtifacts(module.getImports());
+            }
+        }
+        try {
+            verifyModuleDependencyTrees(modules);
+        }
+        finally {
+            if (executor != null) {
+                moduleManager.setExecutor(null);
+                for (Future<ArtifactLookup> lookup : artifactLookups.values()) {
+                    lookup.cancel(true);
+                }
+                artifactLookups = null;
+                this.executor = null;
+            }
         }
         moduleManager.addImplicitImports();
         executeExternalModulePhases();
     }
 
+    private void verifyModuleDependencyTrees(List<Module> modules) {
+        for (Module module : modules) {
+            //conflicts are reported on the top module, so
+            //the dependencies of the modules it imports
+            //are only remembered while verifying it
+            DependencyTree dependencyTree = new DependencyTree();
+            dependencyTree.push(module);
+            //we don't care about propagated dependency here as top modules are independent from one another
+            verifyModuleDependencyTree(module.getImports(), dependencyTree, new Dependencies(), true);
+            dependencyTree.pop();
+        }
+    }
+
     private void verifyModuleDependencyTree(
             Collection<ModuleImport> moduleImports,
-            LinkedList<Module> dependencyTree,
-            List<Module> propagatedDependencies, 
+            DependencyTree dependencyTree,
+            Dependencies propagatedDependencies, 
             boolean forCompiledModule) {
-        List<Module> visibleDependencies = new ArrayList<Module>();
+        if (executor != null) {
+            lookupArtifacts(moduleImports);
+        }
+        Dependencies visibleDependencies = new Dependencies();
         visibleDependencies.add(dependencyTree.getLast()); //first addition => no possible conflict
         for (ModuleImport moduleImport : moduleImports) {
             Module module = moduleImport.getModule();
-            if (moduleManager.findModule(module, dependencyTree, true) != null) {
+            if (dependencyTree.contains(module)) {
                 //circular dependency: stop right here
+                dependencyTree.pathDependent = true;
                 return;
             }
-            Iterable<String> searchedArtifactExtensions = moduleManager.getSearchedArtifactExtensions();
-            
             if ( ! module.isAvailable() ) {
                 //try and load the module from the repository
-                ArtifactResult artifact = null;
-                RepositoryManager repositoryManager = context.getRepositoryManager();
-                Exception exceptionOnGetArtifact = null;
-                ArtifactContext artifactContext = null;
-                for(String extension : searchedArtifactExtensions){
-                    artifactContext = new ArtifactContext(module.getNameAsString(), module.getVersion(), "."+extension);
-                    try {
-                        artifact = repositoryManager.getArtifactResult(artifactContext);
-                        if(artifact != null) 
-                            break;
-                    } catch (Exception e) {
-                        exceptionOnGetArtifact = e;
-                    }
-                }
-                if (artifact == null) {
-                    //not there => error
-                    ModuleHelper.buildErrorOnMissingArtifact(artifactContext, module, moduleImport, dependencyTree, exceptionOnGetArtifact, moduleManager);
+                ArtifactLookup lookup = getArtifactLookup(module);
+                if (lookup.artifact == null) {
+                    //not there => error, reported with the
+                    //path to the module
+                    ModuleHelper.buildErrorOnMissingArtifact(lookup.artifactContext, module, moduleImport, dependencyTree.modules, lookup.exception, moduleManager);
+                    dependencyTree.pathDependent = true;
                 }
                 else {
                     //parse module units and build module dependency and carry on
-                    moduleManager.resolveModule(artifact, module, moduleImport, dependencyTree, phasedUnitsOfDependencies, forCompiledModule);
+                    moduleManager.resolveModule(lookup.artifact, module, moduleImport, dependencyTree.modules, phasedUnitsOfDependencies, forCompiledModule);
                 }
             }
-            dependencyTree.addLast(module);
-            List<Module> subModulePropagatedDependencies = new ArrayList<Module>();
-            verifyModuleDependencyTree( module.getImports(), dependencyTree, subModulePropagatedDependencies, forCompiledModule & moduleImport.isExport() );
+            dependencyTree.push(module);
+            Dependencies subModulePropagatedDependencies = 
+                    verifySubModuleDependencyTree(module, dependencyTree, forCompiledModule & moduleImport.isExport());
             //visible dependency += subModule + subModulePropagatedDependencies
             checkAndAddDependency(visibleDependencies, module, dependencyTree);
-            for (Module submodule : subModulePropagatedDependencies) {
+            for (Module submodule : subModulePropagatedDependencies.modules) {
                 checkAndAddDependency(visibleDependencies, submodule, dependencyTree);
             }
             //propagated dependency += if subModule.export then subModule + subModulePropagatedDependencies
             if (moduleImport.isExport()) {
                 checkAndAddDependency(propagatedDependencies, module, dependencyTree);
-                for (Module submodule : subModulePropagatedDependencies) {
+                for (Module submodule : subModulePropagatedDependencies.modules) {
                     checkAndAddDependency(propagatedDependencies, submodule, dependencyTree);
                 }
             }
-            dependencyTree.pollLast();
+            dependencyTree.pop();
+        }
+    }
+
+    /**
+     * The propagated dependencies of a module imported by
+     * the last module of the dependency tree, verified the
+     * first time the module is reached. A module reached
+     * again through a different path has the same propagated
+     * dependencies, and its conflicts have already been
+     * reported, unless its own dependency tree has circular
+     * imports, or imports a module missing from the 
+     * repositories, which is reported with the path that
+     * leads to it.
+     */
+    private Dependencies verifySubModuleDependencyTree(Module module,
+            DependencyTree dependencyTree, boolean forCompiledModule) {
+        Map<Module, Dependencies> verified = forCompiledModule ? 
+                dependencyTree.verifiedForCompiledModule : 
+                dependencyTree.verified;
+        Dependencies propagatedDependencies = verified.get(module);
+        if (propagatedDependencies == null) {
+            boolean pathDependent = dependencyTree.pathDependent;
+            dependencyTree.pathDependent = false;
+            propagatedDependencies = new Dependencies();
+            verifyModuleDependencyTree(module.getImports(), dependencyTree, propagatedDependencies, forCompiledModule);
+            if (!dependencyTree.pathDependent) {
+                verified.put(module, propagatedDependencies);
+            }
+            dependencyTree.pathDependent |= pathDependent;
+        }
+        return propagatedDependencies;
+    }
+
+    private ArtifactLookup lookupArtifact(Module module) {
+        Iterable<String> searchedArtifactExtensions = moduleManager.getSearchedArtifactExtensions();
+        ArtifactResult artifact = null;
+        RepositoryManager repositoryManager = context.getRepositoryManager();
+        Exception exceptionOnGetArtifact = null;
+        ArtifactContext artifactContext = null;
+        for(String extension : searchedArtifactExtensions){
+            artifactContext = new ArtifactContext(module.getNameAsString(), module.getVersion(), "."+extension);
+            try {
+                artifact = repositoryManager.getArtifactResult(artifactContext);
+                if(artifact != null) 
+                    break;
+            } catch (Exception e) {
+                exceptionOnGetArtifact = e;
+            }
+        }
+        return new ArtifactLookup(artifact, artifactContext, exceptionOnGetArtifact);
+    }
+
+    /**
+     * Start looking up the artifacts of the imported modules
+     * which are not available yet, and not being looked up.
+     */
+    private void lookupArtifacts(Collection<ModuleImport> moduleImports) {
+        for (ModuleImport moduleImport : moduleImports) {
+            final Module module = moduleImport.getModule();
+            if (!module.isAvailable() && !artifactLookups.containsKey(module)) {
+                artifactLookups.put(module, executor.submit(new Callable<ArtifactLookup>() {
+                    @Override
+                    public ArtifactLookup call() {
+                        return lookupArtifact(module);
+                    }
+                }));
+            }
+        }
+    }
+
+    private ArtifactLookup getArtifactLookup(Module module) {
+        if (executor == null) {
+            return lookupArtifact(module);
+        }
+        Future<ArtifactLookup> lookup = artifactLookups.get(module);
+        if (lookup == null) {
+            return lookupArtifact(module);
+        }
+        try {
+            return lookup.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException("Error while looking up the artifact of module: " + 
+                    module.getNameAsString(), cause);
         }
     }
 
-    private void checkAndAddDependency(List<Module> dependencies, Module module, LinkedList<Module> dependencyTree) {
-        Module dupe = moduleManager.findModule(module, dependencies, false);
-        if (dupe != null && !isSameVersion(module, dupe)) {
+    private void checkAndAddDependency(Dependencies dependencies, Module module, DependencyTree dependencyTree) {
+        Module dupe = dependencies.find(module);
+        if (dupe == null) {
+            dependencies.add(module);
+        }
+        else if (!isSameVersion(module, dupe)) {
             //TODO improve by giving the dependency string leading to these two conflicting modules
             StringBuilder error = new StringBuilder("Module (transitively) imports conflicting versions of ");
             error.append(module.getNameAsString())
@@ -136,9 +276,6 @@ public class ModuleValidator {
                     .append(" found and visible at the same time.");
             moduleManager.addErrorToModule(dependencyTree.getFirst(), error.toString());
         }
-        else {
-            dependencies.add(module);
-        }
     }
 
     private boolean isSameVersion(Module module, Module dupe) {
@@ -154,20 +291,127 @@ public class ModuleValidator {
     protected void executeExternalModulePhases() {
         //moduleimport phase already done
         //Already called from within verifyModuleDependencyTree
+        List<ModelArchive> modelArchives = moduleManager.getModelArchives();
+        for (ModelArchive archive : modelArchives) {
+            archive.scanDeclarations();
+        }
         for (PhasedUnits units : phasedUnitsOfDependencies) {
             for (PhasedUnit pu : units.getPhasedUnits()) {
                 pu.scanDeclarations();
             }
         }
+        //packages of source dependencies loaded from now on
+        //catch up with the phases of the other units
+        PackageLoader packageLoader = context.getPackageLoader();
+        if (packageLoader!=null) {
+            packageLoader.scanTypeDeclarations();
+        }
+        //the types of the archives may refer to declarations
+        //of source dependencies, and the other way around
+        for (ModelArchive archive : modelArchives) {
+            archive.scanTypeDeclarations();
+        }
         for (PhasedUnits units : phasedUnitsOfDependencies) {
             for (PhasedUnit pu : units.getPhasedUnits()) {
                 pu.scanTypeDeclarations();
             }
         }
+        if (packageLoader!=null) {
+            packageLoader.validateRefinement();
+        }
         for (PhasedUnits units : phasedUnitsOfDependencies) {
             for (PhasedUnit pu : units.getPhasedUnits()) {
                 pu.validateRefinement(); //TODO: only needed for type hierarchy view in IDE!
             }
         }
     }
+
+    /**
+     * The artifact of a module found in the repositories, 
+     * or the last artifact searched and the exception which
+     * occurred while searching, if it was not found.
+     */
+    private static final class ArtifactLookup {
+        final ArtifactResult artifact;
+        final ArtifactContext artifactContext;
+        final Exception exception;
+
+        ArtifactLookup(ArtifactResult artifact, 
+                ArtifactContext artifactContext, Exception exception) {
+            this.artifact = artifact;
+            this.artifactContext = artifactContext;
+            this.exception = exception;
+        }
+    }
+
+    /**
+     * Modules, indexed by name, where only the first module
+     * of each name matters. A module with the same name and
+     * version as one already there is not added again.
+     */
+    private static final class Dependencies {
+        final List<Module> modules = new ArrayList<Module>();
+        private final Map<List<String>, Module> modulesByName = 
+                new HashMap<List<String>, Module>();
+
+        Module find(Module module) {
+            return modulesByName.get(module.getName());
+        }
+
+        void add(Module module) {
+            modules.add(module);
+            if (!modulesByName.containsKey(module.getName())) {
+                modulesByName.put(module.getName(), module);
+            }
+        }
+    }
+
+    /**
+     * The path of imports from the module being verified
+     * to the module whose imports are being verified, with
+     * the propagated dependencies of the modules verified
+     * so far.
+     */
+    private final class DependencyTree {
+        final LinkedList<Module> modules = new LinkedList<Module>();
+        private final Map<List<String>, List<Module>> modulesByName = 
+                new HashMap<List<String>, List<Module>>();
+        final Map<Module, Dependencies> verified = 
+                new HashMap<Module, Dependencies>();
+        final Map<Module, Dependencies> verifiedForCompiledModule = 
+                new HashMap<Module, Dependencies>();
+        //was a circular import, or a missing module, found
+        //since this was last reset?
+        boolean pathDependent;
+
+        void push(Module module) {
+            modules.addLast(module);
+            List<Module> sameName = modulesByName.get(module.getName());
+            if (sameName == null) {
+                sameName = new ArrayList<Module>(1);
+                modulesByName.put(module.getName(), sameName);
+            }
+            sameName.add(module);
+        }
+
+        void pop() {
+            Module module = modules.removeLast();
+            List<Module> sameName = modulesByName.get(module.getName());
+            sameName.remove(sameName.size()-1);
+        }
+
+        boolean contains(Module module) {
+            List<Module> sameName = modulesByName.get(module.getName());
+            return sameName != null && 
+                    moduleManager.findModule(module, sameName, true) != null;
+        }
+
+        Module getFirst() {
+            return modules.getFirst();
+        }
+
+        Module getLast() {
+            return modules.getLast();
+        }
+    }
 }
@@ -0,0 +1,176 @@
+package com.redhat.ceylon.compiler.typechecker.analyzer;
+
+import static com.redhat.ceylon.compiler.typechecker.analyzer.Util.getBaseDeclaration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.redhat.ceylon.compiler.typechecker.model.Declaration;
+import com.redhat.ceylon.compiler.typechecker.model.Setter;
+import com.redhat.ceylon.compiler.typechecker.model.TypeDeclaration;
+import com.redhat.ceylon.compiler.typechecker.model.ValueParameter;
+import com.redhat.ceylon.compiler.typechecker.tree.Node;
+import com.redhat.ceylon.compiler.typechecker.tree.Tree;
+import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
+
+/**
+ * Finds, in one walk of a compilation unit, which
+ * declarations and typed arguments enclose the nodes that
+ * declare, specify, or refer to each declaration, and the
+ * nodes which declare each type declaration.
+ *
+ * A {@link SpecificationVisitor} skips the declarations
+ * and typed arguments which enclose none of the nodes of
+ * its declaration, since they can't affect its results,
+ * and a {@link SelfReferenceVisitor} only needs to walk
+ * the nodes declaring its type declaration. So the flow
+ * of a unit is analysed without walking the whole unit
+ * once for each of its declarations.
+ */
+public class OccurrenceVisitor extends Visitor {
+
+    //the declarations and typed arguments being visited
+    private final List<Node> enclosingNodes = new ArrayList<Node>();
+    private final Map<Declaration, Set<Node>> enclosingNodesByDeclaration =
+            new IdentityHashMap<Declaration, Set<Node>>();
+    private final Map<TypeDeclaration, List<Node>> declaringNodes =
+            new IdentityHashMap<TypeDeclaration, List<Node>>();
+
+    /**
+     * Does the given declaration or typed argument enclose
+     * a node which declares, specifies, or refers to the
+     * given declaration?
+     */
+    public boolean encloses(Node that, Declaration d) {
+        Set<Node> nodes = enclosingNodesByDeclaration.get(d);
+        return nodes!=null && nodes.contains(that);
+    }
+
+    /**
+     * Does any node of the unit declare, specify, or refer
+     * to the given declaration?
+     */
+    public boolean occurs(Declaration d) {
+        return enclosingNodesByDeclaration.containsKey(d);
+    }
+
+    /**
+     * The nodes which declare the given type declaration,
+     * in the order in which they occur in the unit.
+     */
+    public List<Node> getDeclaringNodes(TypeDeclaration td) {
+        List<Node> nodes = declaringNodes.get(td);
+        if (nodes==null) {
+            return Collections.emptyList();
+        }
+        return nodes;
+    }
+
+    private void occurrence(Declaration d) {
+        if (d!=null) {
+            Set<Node> nodes = enclosingNodesByDeclaration.get(d);
+            if (nodes==null) {
+                nodes = Collections.newSetFromMap(new IdentityHashMap<Node,Boolean>());
+                enclosingNodesByDeclaration.put(d, nodes);
+            }
+            nodes.addAll(enclosingNodes);
+        }
+    }
+
+    private void declaration(TypeDeclaration td, Node that) {
+        if (td!=null) {
+            List<Node> nodes = declaringNodes.get(td);
+            if (nodes==null) {
+                nodes = new ArrayList<Node>(1);
+                declaringNodes.put(td, nodes);
+            }
+            nodes.add(that);
+        }
+    }
+
+    private void assignment(Tree.Term term) {
+        while (term instanceof Tree.ParameterizedExpression) {
+            term = ((Tree.ParameterizedExpression) term).getPrimary();
+        }
+        if (term instanceof Tree.BaseMemberExpression) {
+            occurrence(getBaseDeclaration((Tree.BaseMemberExpression) term, null, false));
+        }
+    }
+
+    @Override
+    public void visit(Tree.Declaration that) {
+        enclosingNodes.add(that);
+        occurrence(that.getDeclarationModel());
+        if (that instanceof Tree.TypeDeclaration) {
+            declaration(((Tree.TypeDeclaration) that).getDeclarationModel(), that);
+        }
+        if (that instanceof Tree.ObjectDefinition) {
+            Tree.ObjectDefinition od = (Tree.ObjectDefinition) that;
+            occurrence(od.getAnonymousClass());
+            declaration(od.getAnonymousClass(), that);
+        }
+        if (that instanceof Tree.AttributeSetterDefinition) {
+            Setter setter = ((Tree.AttributeSetterDefinition) that).getDeclarationModel();
+            if (setter!=null) {
+                occurrence(setter.getParameter());
+            }
+        }
+        if (that instanceof Tree.ValueParameterDeclaration) {
+            Tree.ValueParameterDeclaration vpd = (Tree.ValueParameterDeclaration) that;
+            ValueParameter p = vpd.getDeclarationModel();
+            if (vpd.getType() instanceof Tree.LocalModifier && p!=null) {
+                occurrence(vpd.getScope().getDirectMember(p.getName(), null, false));
+            }
+        }
+        super.visit(that);
+        enclosingNodes.remove(enclosingNodes.size()-1);
+    }
+
+    @Override
+    public void visit(Tree.TypedArgument that) {
+        enclosingNodes.add(that);
+        occurrence(that.getDeclarationModel());
+        if (that instanceof Tree.ObjectArgument) {
+            Tree.ObjectArgument oa = (Tree.ObjectArgument) that;
+            occurrence(oa.getAnonymousClass());
+            declaration(oa.getAnonymousClass(), that);
+        }
+        super.visit(that);
+        enclosingNodes.remove(enclosingNodes.size()-1);
+    }
+
+    @Override
+    public void visit(Tree.MemberOrTypeExpression that) {
+        occurrence(that.getDeclaration());
+        super.visit(that);
+    }
+
+    @Override
+    public void visit(Tree.AssignmentOp that) {
+        assignment(that.getLeftTerm());
+        super.visit(that);
+    }
+
+    @Override
+    public void visit(Tree.PostfixOperatorExpression that) {
+        assignment(that.getTerm());
+        super.visit(that);
+    }
+
+    @Override
+    public void visit(Tree.PrefixOperatorExpression that) {
+        assignment(that.getTerm());
+        super.visit(that);
+    }
+
+    @Override
+    public void visit(Tree.SpecifierStatement that) {
+        assignment(that.getBaseMemberExpression());
+        super.visit(that);
+    }
+
+}
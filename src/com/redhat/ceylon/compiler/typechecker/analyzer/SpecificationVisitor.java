@@ -25,6 +25,7 @@ import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
 public class SpecificationVisitor extends Visitor {
     
     private final Declaration declaration;
+    private final OccurrenceVisitor occurrences;
     
     private SpecificationState specified = new SpecificationState(false, false);
     private boolean cannotSpecify = true;
@@ -45,7 +46,23 @@ public class SpecificationVisitor extends Visitor {
     }
     
     public SpecificationVisitor(Declaration declaration) {
+        this(declaration, null);
+    }
+    
+    /**
+     * Validate the given declaration, skipping the other
+     * declarations and typed arguments which don't enclose
+     * any of its occurrences.
+     */
+    public SpecificationVisitor(Declaration declaration, 
+            OccurrenceVisitor occurrences) {
         this.declaration = declaration;
+        this.occurrences = occurrences;
+    }
+    
+    private boolean concernsDeclaration(Node that) {
+        return occurrences==null || 
+                occurrences.encloses(that, declaration);
     }
     
     private void declare() {
@@ -347,6 +364,11 @@ public class SpecificationVisitor extends Visitor {
             declare();
             endDisabledSpecificationScope(false);
         }
+        else if (!concernsDeclaration(that)) {
+            //the state is restored after visiting 
+            //it, so only the statement itself counts
+            checkDeclarationSection(that);
+        }
         else {
             boolean c = beginDisabledSpecificationScope();
             boolean d = beginDeclarationScope();
@@ -366,7 +388,7 @@ public class SpecificationVisitor extends Visitor {
             declare();
             endDisabledSpecificationScope(false);
         }
-        else {
+        else if (concernsDeclaration(that)) {
             boolean c = beginDisabledSpecificationScope();
             boolean d = beginDeclarationScope();
             SpecificationState as = beginSpecificationScope();
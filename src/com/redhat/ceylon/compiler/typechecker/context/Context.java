@@ -3,6 +3,8 @@ package com.redhat.ceylon.compiler.typechecker.context;
 import com.redhat.ceylon.cmr.api.RepositoryManager;
 import com.redhat.ceylon.compiler.typechecker.io.VFS;
 import com.redhat.ceylon.compiler.typechecker.model.Modules;
+import com.redhat.ceylon.compiler.typechecker.model.SharedLanguageModule;
+import com.redhat.ceylon.compiler.typechecker.util.Timings;
 
 /**
  * Keep compiler contextual information like the package stack and the current module
@@ -14,6 +16,11 @@ public class Context {
     private Modules modules;
     private VFS vfs;
     private RepositoryManager repositoryManager;
+    private ParsedUnitCache parsedUnitCache;
+    private PackageLoader packageLoader;
+    private SharedLanguageModule sharedLanguageModule;
+    private Timings timings;
+    private boolean modelArchives;
 
     public Context(RepositoryManager repositoryManager, VFS vfs) {
         this.vfs = vfs;
@@ -35,4 +42,66 @@ public class Context {
     public VFS getVfs() {
         return vfs;
     }
+
+    /**
+     * The cache of parsed source files, or null if source
+     * files are always parsed.
+     */
+    public ParsedUnitCache getParsedUnitCache() {
+        return parsedUnitCache;
+    }
+
+    public void setParsedUnitCache(ParsedUnitCache parsedUnitCache) {
+        this.parsedUnitCache = parsedUnitCache;
+    }
+
+    /**
+     * The loader of the packages of source dependencies, or
+     * null if every unit of a dependency is added at once.
+     */
+    public PackageLoader getPackageLoader() {
+        return packageLoader;
+    }
+
+    public void setPackageLoader(PackageLoader packageLoader) {
+        this.packageLoader = packageLoader;
+    }
+
+    /**
+     * The model of the language module shared with other
+     * type checkers, or null if the language module is read
+     * by this one.
+     */
+    public SharedLanguageModule getSharedLanguageModule() {
+        return sharedLanguageModule;
+    }
+
+    public void setSharedLanguageModule(SharedLanguageModule sharedLanguageModule) {
+        this.sharedLanguageModule = sharedLanguageModule;
+    }
+
+    /**
+     * The measurements of the work done by the type checker,
+     * or null if timings are disabled.
+     */
+    public Timings getTimings() {
+        return timings;
+    }
+
+    public void setTimings(Timings timings) {
+        this.timings = timings;
+    }
+
+    /**
+     * Whether the model archives of dependencies are read,
+     * when the repository has them, instead of their source
+     * archives.
+     */
+    public boolean isModelArchives() {
+        return modelArchives;
+    }
+
+    public void setModelArchives(boolean modelArchives) {
+        this.modelArchives = modelArchives;
+    }
 }
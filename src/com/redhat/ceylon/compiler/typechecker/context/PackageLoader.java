@@ -0,0 +1,156 @@
+package com.redhat.ceylon.compiler.typechecker.context;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.redhat.ceylon.compiler.typechecker.model.Package;
+import com.redhat.ceylon.compiler.typechecker.model.TypeCaches;
+
+/**
+ * Adds the units of the packages of source dependencies
+ * the first time the members of a package are needed,
+ * parsing its source files and bringing its units to the
+ * phase which the units of the dependencies have reached.
+ *
+ * Loading a package may need the declarations of other
+ * packages, which are then loaded too. The declarations of
+ * all the packages loaded meanwhile are scanned before their
+ * types are, and their types before their refinement is
+ * validated, just as when every unit of the dependencies
+ * is processed at once. Packages are loaded one at a time,
+ * whichever thread needs them.
+ */
+public class PackageLoader {
+
+    /**
+     * The source files of a package, which are parsed when
+     * the package is loaded.
+     */
+    static abstract class DeferredPackage implements Runnable {
+
+        private final PackageLoader loader;
+        private final Package pkg;
+        private boolean loaded = false;
+
+        DeferredPackage(PackageLoader loader, Package pkg) {
+            this.loader = loader;
+            this.pkg = pkg;
+        }
+
+        /**
+         * Parse the source files of the package, adding
+         * their units to it.
+         */
+        abstract List<PhasedUnit> parseUnits();
+
+        @Override
+        public void run() {
+            loader.load(this);
+        }
+
+    }
+
+    private boolean typeDeclarationsScanned = false;
+    private boolean refinementValidated = false;
+    //the packages and units of the load in progress, if any
+    private List<DeferredPackage> loadingPackages;
+    private List<PhasedUnit> loadingUnits;
+    private int deferredPackages = 0;
+    private int loadedPackages = 0;
+
+    synchronized void defer(DeferredPackage deferred) {
+        deferredPackages++;
+        deferred.pkg.setLoader(deferred);
+    }
+
+    /**
+     * Scan the type declarations of the packages loaded from
+     * now on, once their declarations are scanned.
+     */
+    public synchronized void scanTypeDeclarations() {
+        typeDeclarationsScanned = true;
+    }
+
+    /**
+     * Validate the member refinement of the packages loaded
+     * from now on, once their type declarations are scanned.
+     */
+    public synchronized void validateRefinement() {
+        refinementValidated = true;
+    }
+
+    private synchronized void load(DeferredPackage deferred) {
+        if (deferred.loaded) {
+            //already loaded, or being loaded by this thread
+            return;
+        }
+        deferred.loaded = true;
+        loadedPackages++;
+        //the hierarchy of the loaded types is incomplete until
+        //every phase is done
+        TypeCaches previous = TypeCaches.suspend();
+        try {
+            List<PhasedUnit> units = deferred.parseUnits();
+            for (PhasedUnit pu: units) {
+                pu.scanDeclarations();
+            }
+            if (loadingPackages!=null) {
+                //the outer load does the remaining phases
+                loadingPackages.add(deferred);
+                loadingUnits.addAll(units);
+                return;
+            }
+            loadingPackages = new ArrayList<DeferredPackage>();
+            loadingPackages.add(deferred);
+            loadingUnits = new ArrayList<PhasedUnit>(units);
+            try {
+                executeRemainingPhases(loadingUnits);
+            }
+            finally {
+                //from now on, the members of the packages are
+                //looked up without locking
+                for (DeferredPackage dp: loadingPackages) {
+                    dp.pkg.setLoader(null);
+                }
+                loadingPackages = null;
+                loadingUnits = null;
+            }
+        }
+        finally {
+            TypeCaches.restore(previous);
+        }
+    }
+
+    private void executeRemainingPhases(List<PhasedUnit> units) {
+        //the list grows when a phase loads another package
+        int typed = 0;
+        int validated = 0;
+        while (true) {
+            if (typeDeclarationsScanned && typed<units.size()) {
+                units.get(typed++).scanTypeDeclarations();
+            }
+            else if (refinementValidated && validated<units.size()) {
+                units.get(validated++).validateRefinement();
+            }
+            else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * The number of packages of source dependencies which
+     * are loaded only when needed.
+     */
+    public synchronized int getDeferredPackages() {
+        return deferredPackages;
+    }
+
+    /**
+     * The number of those packages which were needed.
+     */
+    public synchronized int getLoadedPackages() {
+        return loadedPackages;
+    }
+
+}
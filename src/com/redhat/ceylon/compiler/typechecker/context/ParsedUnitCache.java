@@ -0,0 +1,621 @@
+package com.redhat.ceylon.compiler.typechecker.context;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.antlr.runtime.ANTLRInputStream;
+import org.antlr.runtime.CharStream;
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.Token;
+
+import com.redhat.ceylon.compiler.typechecker.parser.CeylonLexer;
+import com.redhat.ceylon.compiler.typechecker.parser.CeylonParser;
+import com.redhat.ceylon.compiler.typechecker.tree.Node;
+import com.redhat.ceylon.compiler.typechecker.tree.Tree;
+
+/**
+ * Stores the compilation units parsed from source files in a
+ * directory, keyed by a hash of the contents of each file,
+ * so that a file which did not change since a previous run
+ * is read back instead of being lexed and parsed again.
+ *
+ * A unit is stored as its tokens, which refer to the text
+ * of the file by offset, followed by its nodes, which refer
+ * to tokens and to other nodes by index. Only units without
+ * lexer or parser errors are stored. An entry which can't
+ * be read, for example because the tree nodes changed since
+ * it was written, is treated as missing, and replaced. The
+ * key includes a hash of the parser and tree node classes,
+ * so that units parsed by another version of the grammar
+ * are never read back.
+ */
+public class ParsedUnitCache {
+
+    //change when the stored form changes
+    private static final String FORMAT = "1";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    //changes whenever the parser or the tree nodes are
+    //generated again, so that the units they produced
+    //are parsed again
+    private static final String GRAMMAR = fingerprint(CeylonLexer.class,
+            CeylonParser.class, Node.class, Tree.class);
+
+    private static final Map<Class<?>, NodeLayout> layouts =
+            new ConcurrentHashMap<Class<?>, NodeLayout>();
+
+    private final File directory;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    public ParsedUnitCache(File directory) {
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    private File file(byte[] contents, String encoding) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        digest.update((FORMAT + ":" + GRAMMAR + ":" + encoding + ":").getBytes(UTF8));
+        String key = hex(digest.digest(contents));
+        return new File(new File(directory, key.substring(0, 2)),
+                key.substring(2) + ".unit");
+    }
+
+    private static String hex(byte[] hash) {
+        char[] chars = new char[hash.length*2];
+        for (int i=0; i<hash.length; i++) {
+            chars[2*i] = HEX[(hash[i]>>4) & 0xf];
+            chars[2*i+1] = HEX[hash[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * A hash of the bytecode of the given classes and of
+     * their member classes, or of their names when the 
+     * bytecode of a class can't be read.
+     */
+    static String fingerprint(Class<?>... classes) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        List<Class<?>> all = new ArrayList<Class<?>>();
+        for (Class<?> c: classes) {
+            all.add(c);
+            Class<?>[] memberClasses = c.getDeclaredClasses();
+            Arrays.sort(memberClasses, new Comparator<Class<?>>() {
+                @Override
+                public int compare(Class<?> x, Class<?> y) {
+                    return x.getName().compareTo(y.getName());
+                }
+            });
+            all.addAll(Arrays.asList(memberClasses));
+        }
+        byte[] buffer = new byte[8192];
+        for (Class<?> c: all) {
+            digest.update(c.getName().getBytes(UTF8));
+            String name = c.getName();
+            InputStream in = c.getResourceAsStream(
+                    name.substring(name.lastIndexOf('.')+1) + ".class");
+            if (in!=null) {
+                try {
+                    int length;
+                    while ((length = in.read(buffer))>=0) {
+                        digest.update(buffer, 0, length);
+                    }
+                }
+                catch (IOException e) {
+                    //the name alone
+                }
+                finally {
+                    close(in);
+                }
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    /**
+     * Read back the compilation unit stored for a file with
+     * the given contents, adding its tokens to the given list.
+     *
+     * @return the compilation unit, or null if there is no
+     *         readable entry for the contents
+     */
+    Tree.CompilationUnit load(byte[] contents, String encoding,
+            List<CommonToken> tokens) {
+        File file = file(contents, encoding);
+        if (!file.isFile()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        try {
+            Input in = new Input(readFile(file));
+            CharStream input = new ANTLRInputStream(new ByteArrayInputStream(contents), encoding);
+            Tree.CompilationUnit cu = read(in, input, tokens);
+            hits.incrementAndGet();
+            return cu;
+        }
+        catch (Exception e) {
+            //a stale or damaged entry, parse the file again
+            tokens.clear();
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            int length = 0;
+            while (length<bytes.length) {
+                int read = in.read(bytes, length, bytes.length-length);
+                if (read<0) {
+                    throw new EOFException();
+                }
+                length += read;
+            }
+            return bytes;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Store the given freshly parsed compilation unit, along
+     * with its tokens, for a file with the given contents.
+     * Failing to write the entry is not an error, since the
+     * cache is only an optimization.
+     */
+    void store(byte[] contents, String encoding,
+            Tree.CompilationUnit cu, List<CommonToken> tokens) {
+        File file = file(contents, encoding);
+        File temp = null;
+        OutputStream out = null;
+        try {
+            Output output = new Output();
+            write(output, cu, tokens);
+            File dir = file.getParentFile();
+            dir.mkdirs();
+            //write to a temporary file first, so that a
+            //concurrent run never reads a partial entry
+            temp = File.createTempFile(file.getName(), ".tmp", dir);
+            out = new FileOutputStream(temp);
+            output.writeTo(out);
+            out.close();
+            out = null;
+            if (temp.renameTo(file)) {
+                temp = null;
+            }
+        }
+        catch (Exception e) {
+            //leave the unit out of the cache
+        }
+        finally {
+            close(out);
+            if (temp!=null) {
+                temp.delete();
+            }
+        }
+    }
+
+    private static void write(Output out, Tree.CompilationUnit cu,
+            List<CommonToken> tokens) throws Exception {
+        Map<Token, Integer> tokenIds = new IdentityHashMap<Token, Integer>();
+        out.writeInt(tokens.size());
+        for (CommonToken token: tokens) {
+            tokenIds.put(token, tokenIds.size());
+            out.writeInt(token.getType());
+            out.writeInt(token.getChannel());
+            out.writeInt(token.getLine());
+            out.writeInt(token.getCharPositionInLine());
+            out.writeInt(token.getStartIndex());
+            out.writeInt(token.getStopIndex());
+            out.writeInt(token.getTokenIndex());
+            //the lexer replaces the text of some tokens
+            CommonToken original = new CommonToken(token.getInputStream(),
+                    token.getType(), token.getChannel(),
+                    token.getStartIndex(), token.getStopIndex());
+            String text = token.getText();
+            out.writeString(text==null || text.equals(original.getText()) ?
+                    null : text);
+        }
+
+        //every node reachable from the root, including the
+        //nodes only held by a field
+        List<Node> nodes = new ArrayList<Node>();
+        Map<Node, Integer> nodeIds = new IdentityHashMap<Node, Integer>();
+        List<Class<?>> classes = new ArrayList<Class<?>>();
+        Map<Class<?>, Integer> classIds = new IdentityHashMap<Class<?>, Integer>();
+        register(cu, nodes, nodeIds);
+        for (int i=0; i<nodes.size(); i++) {
+            Node node = nodes.get(i);
+            if (!classIds.containsKey(node.getClass())) {
+                classIds.put(node.getClass(), classes.size());
+                classes.add(node.getClass());
+            }
+            for (Node child: node.getChildren()) {
+                register(child, nodes, nodeIds);
+            }
+            for (Field field: layout(node.getClass()).fields) {
+                Object value = field.get(node);
+                if (value instanceof Node) {
+                    register((Node) value, nodes, nodeIds);
+                }
+                else if (value instanceof List) {
+                    for (Object element: (List<?>) value) {
+                        if (element instanceof Node) {
+                            register((Node) element, nodes, nodeIds);
+                        }
+                    }
+                }
+            }
+        }
+
+        out.writeInt(classes.size());
+        for (Class<?> nodeClass: classes) {
+            out.writeString(nodeClass.getName());
+            out.writeInt(layout(nodeClass).signature);
+        }
+        out.writeInt(nodes.size());
+        for (Node node: nodes) {
+            out.writeInt(classIds.get(node.getClass()));
+            out.writeInt(id(tokenIds, node.getMainToken()));
+        }
+        for (Node node: nodes) {
+            if (node.getScope()!=null || node.getUnit()!=null ||
+                    !node.getErrors().isEmpty()) {
+                throw new IOException("not a freshly parsed unit");
+            }
+            out.writeInt(id(tokenIds, node.getMainEndToken()));
+            out.writeString(explicitText(node));
+            out.writeInt(node.getChildren().size());
+            for (Node child: node.getChildren()) {
+                out.writeInt(nodeIds.get(child));
+            }
+            for (Field field: layout(node.getClass()).fields) {
+                Object value = field.get(node);
+                if (field.getType()==boolean.class) {
+                    out.writeBoolean((Boolean) value);
+                }
+                else if (value==null) {
+                    out.writeInt(-1);
+                }
+                else if (value instanceof Node) {
+                    out.writeInt(nodeIds.get(value));
+                }
+                else if (value instanceof List) {
+                    List<?> list = (List<?>) value;
+                    out.writeInt(list.size());
+                    for (Object element: list) {
+                        if (!(element instanceof Node)) {
+                            throw new IOException("not a freshly parsed unit: " + field);
+                        }
+                        out.writeInt(nodeIds.get(element));
+                    }
+                }
+                else {
+                    throw new IOException("not a freshly parsed unit: " + field);
+                }
+            }
+        }
+    }
+
+    /**
+     * The text assigned to the node by the parser, if any.
+     */
+    private static String explicitText(Node node) {
+        Token token = node.getMainToken();
+        Token endToken = node.getMainEndToken();
+        String tokenText;
+        if (token==null) {
+            tokenText = "";
+        }
+        else if (endToken==null) {
+            tokenText = token.getText();
+        }
+        else {
+            tokenText = token.getText() + endToken.getText();
+        }
+        String text = node.getText();
+        return text.equals(tokenText) ? null : text;
+    }
+
+    private static void register(Node node, List<Node> nodes,
+            Map<Node, Integer> nodeIds) {
+        if (!nodeIds.containsKey(node)) {
+            nodeIds.put(node, nodes.size());
+            nodes.add(node);
+        }
+    }
+
+    private static int id(Map<Token, Integer> tokenIds, Token token)
+            throws IOException {
+        if (token==null) {
+            return -1;
+        }
+        Integer id = tokenIds.get(token);
+        if (id==null) {
+            throw new IOException("not a token of the unit: " + token);
+        }
+        return id;
+    }
+
+    private static Tree.CompilationUnit read(Input in, CharStream input,
+            List<CommonToken> tokens) throws Exception {
+        int tokenCount = in.readInt();
+        for (int i=0; i<tokenCount; i++) {
+            int type = in.readInt();
+            int channel = in.readInt();
+            int line = in.readInt();
+            int charPositionInLine = in.readInt();
+            int start = in.readInt();
+            int stop = in.readInt();
+            CommonToken token = new CommonToken(input, type, channel, start, stop);
+            token.setLine(line);
+            token.setCharPositionInLine(charPositionInLine);
+            token.setTokenIndex(in.readInt());
+            String text = in.readString();
+            if (text!=null) {
+                token.setText(text);
+            }
+            tokens.add(token);
+        }
+
+        NodeLayout[] classes = new NodeLayout[in.readInt()];
+        for (int i=0; i<classes.length; i++) {
+            String name = in.readString();
+            Class<?> nodeClass = Class.forName(name, false, Node.class.getClassLoader());
+            if (!Node.class.isAssignableFrom(nodeClass)) {
+                throw new IOException("not a node class: " + name);
+            }
+            classes[i] = layout(nodeClass);
+            if (classes[i].signature!=in.readInt()) {
+                throw new IOException("node class changed: " + name);
+            }
+        }
+        Node[] nodes = new Node[in.readInt()];
+        NodeLayout[] nodeLayouts = new NodeLayout[nodes.length];
+        for (int i=0; i<nodes.length; i++) {
+            nodeLayouts[i] = classes[in.readInt()];
+            nodes[i] = nodeLayouts[i].constructor.newInstance(token(tokens, in.readInt()));
+        }
+        for (int i=0; i<nodes.length; i++) {
+            Node node = nodes[i];
+            node.setEndToken(token(tokens, in.readInt()));
+            String text = in.readString();
+            if (text!=null) {
+                node.setText(text);
+            }
+            int childCount = in.readInt();
+            for (int j=0; j<childCount; j++) {
+                node.connect(nodes[in.readInt()]);
+            }
+            for (Field field: nodeLayouts[i].fields) {
+                if (field.getType()==boolean.class) {
+                    field.setBoolean(node, in.readBoolean());
+                }
+                else if (List.class.isAssignableFrom(field.getType())) {
+                    int size = in.readInt();
+                    if (size>=0) {
+                        @SuppressWarnings("unchecked")
+                        List<Node> list = (List<Node>) field.get(node);
+                        if (list==null) {
+                            list = new ArrayList<Node>(size);
+                            field.set(node, list);
+                        }
+                        for (int j=0; j<size; j++) {
+                            list.add(nodes[in.readInt()]);
+                        }
+                    }
+                }
+                else {
+                    int id = in.readInt();
+                    if (id>=0) {
+                        field.set(node, nodes[id]);
+                    }
+                }
+            }
+        }
+        return (Tree.CompilationUnit) nodes[0];
+    }
+
+    private static CommonToken token(List<CommonToken> tokens, int id) {
+        return id<0 ? null : tokens.get(id);
+    }
+
+    /**
+     * Writes ints, booleans and strings as variable length
+     * sequences of bytes.
+     */
+    private static final class Output extends ByteArrayOutputStream {
+        Output() {
+            super(8192);
+        }
+
+        void writeInt(int value) {
+            //zigzag, so that -1 is short too
+            int bits = (value << 1) ^ (value >> 31);
+            while ((bits & ~0x7f)!=0) {
+                write((bits & 0x7f) | 0x80);
+                bits >>>= 7;
+            }
+            write(bits);
+        }
+
+        void writeBoolean(boolean value) {
+            write(value ? 1 : 0);
+        }
+
+        void writeString(String string) {
+            if (string==null) {
+                writeInt(-1);
+            }
+            else {
+                writeInt(string.length());
+                for (int i=0; i<string.length(); i++) {
+                    writeInt(string.charAt(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads what an {@link Output} wrote.
+     */
+    private static final class Input {
+        private final byte[] bytes;
+        private int position;
+
+        Input(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int readInt() throws IOException {
+            int bits = 0;
+            for (int shift=0; shift<32; shift+=7) {
+                if (position>=bytes.length) {
+                    throw new EOFException();
+                }
+                byte b = bytes[position++];
+                bits |= (b & 0x7f) << shift;
+                if ((b & 0x80)==0) {
+                    return (bits >>> 1) ^ -(bits & 1);
+                }
+            }
+            throw new IOException("malformed int");
+        }
+
+        boolean readBoolean() throws IOException {
+            if (position>=bytes.length) {
+                throw new EOFException();
+            }
+            return bytes[position++]!=0;
+        }
+
+        String readString() throws IOException {
+            int length = readInt();
+            if (length<0) {
+                return null;
+            }
+            char[] chars = new char[length];
+            for (int i=0; i<length; i++) {
+                chars[i] = (char) readInt();
+            }
+            return new String(chars);
+        }
+    }
+
+    private static NodeLayout layout(Class<?> nodeClass) {
+        NodeLayout layout = layouts.get(nodeClass);
+        if (layout==null) {
+            layout = new NodeLayout(nodeClass);
+            layouts.put(nodeClass, layout);
+        }
+        return layout;
+    }
+
+    /**
+     * The constructor of a node class, and its fields, other
+     * than those of {@link Node}, in a stable order.
+     */
+    private static final class NodeLayout {
+        final Constructor<? extends Node> constructor;
+        final Field[] fields;
+        final int signature;
+
+        NodeLayout(Class<?> nodeClass) {
+            try {
+                constructor = nodeClass.asSubclass(Node.class)
+                        .getConstructor(Token.class);
+            }
+            catch (NoSuchMethodException e) {
+                throw new RuntimeException(e);
+            }
+            List<Field> list = new ArrayList<Field>();
+            for (Class<?> c=nodeClass; c!=Node.class; c=c.getSuperclass()) {
+                Field[] declared = c.getDeclaredFields();
+                Arrays.sort(declared, new Comparator<Field>() {
+                    @Override
+                    public int compare(Field x, Field y) {
+                        return x.getName().compareTo(y.getName());
+                    }
+                });
+                List<Field> fieldsOfClass = new ArrayList<Field>();
+                for (Field field: declared) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        field.setAccessible(true);
+                        fieldsOfClass.add(field);
+                    }
+                }
+                list.addAll(0, fieldsOfClass);
+            }
+            fields = list.toArray(new Field[list.size()]);
+            StringBuilder sb = new StringBuilder();
+            for (Field field: fields) {
+                sb.append(field.getDeclaringClass().getName())
+                    .append('.').append(field.getName())
+                    .append(':').append(field.getType().getName())
+                    .append(';');
+            }
+            signature = sb.toString().hashCode();
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable!=null) {
+            try {
+                closeable.close();
+            }
+            catch (IOException e) {
+                //ignore
+            }
+        }
+    }
+
+}
@@ -11,6 +11,7 @@ import com.redhat.ceylon.compiler.typechecker.analyzer.ExpressionVisitor;
 import com.redhat.ceylon.compiler.typechecker.analyzer.LiteralVisitor;
 import com.redhat.ceylon.compiler.typechecker.analyzer.ModuleManager;
 import com.redhat.ceylon.compiler.typechecker.analyzer.ModuleVisitor;
+import com.redhat.ceylon.compiler.typechecker.analyzer.OccurrenceVisitor;
 import com.redhat.ceylon.compiler.typechecker.analyzer.RefinementVisitor;
 import com.redhat.ceylon.compiler.typechecker.analyzer.SelfReferenceVisitor;
 import com.redhat.ceylon.compiler.typechecker.analyzer.SpecificationVisitor;
@@ -20,16 +21,21 @@ import com.redhat.ceylon.compiler.typechecker.analyzer.TypeVisitor;
 import com.redhat.ceylon.compiler.typechecker.io.VirtualFile;
 import com.redhat.ceylon.compiler.typechecker.io.impl.Helper;
 import com.redhat.ceylon.compiler.typechecker.model.Declaration;
+import com.redhat.ceylon.compiler.typechecker.model.Import;
 import com.redhat.ceylon.compiler.typechecker.model.Module;
 import com.redhat.ceylon.compiler.typechecker.model.Package;
 import com.redhat.ceylon.compiler.typechecker.model.TypeDeclaration;
 import com.redhat.ceylon.compiler.typechecker.model.Unit;
+import com.redhat.ceylon.compiler.typechecker.tree.CompositeVisitor;
+import com.redhat.ceylon.compiler.typechecker.tree.Node;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree;
 import com.redhat.ceylon.compiler.typechecker.tree.Validator;
+import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
 import com.redhat.ceylon.compiler.typechecker.util.AssertionVisitor;
 import com.redhat.ceylon.compiler.typechecker.util.PrintVisitor;
 import com.redhat.ceylon.compiler.typechecker.util.ReferenceCounter;
 import com.redhat.ceylon.compiler.typechecker.util.StatisticsVisitor;
+import com.redhat.ceylon.compiler.typechecker.util.Timings;
 import com.redhat.ceylon.compiler.typechecker.util.UnitFactory;
 import com.redhat.ceylon.compiler.typechecker.util.UsageVisitor;
 
@@ -58,6 +64,7 @@ public class PhasedUnit {
     private boolean flowAnalyzed = false;
     private boolean fullyTyped = false;
     private boolean literalsProcessed = false;
+    private final Timings timings;
 
     public VirtualFile getSrcDir() {
         return srcDir;
@@ -73,6 +80,11 @@ public class PhasedUnit {
         this.pathRelativeToSrcDir = Helper.computeRelativePath(unitFile, srcDir);
         this.moduleManager = moduleManager;
         this.tokens = tokenStream;
+        this.timings = context==null ? null : context.getTimings();
+        initUnit();
+    }
+
+    private void initUnit() {
         unit = new Unit();
         unit.setFilename(fileName);
         unit.setFullPath(unitFile.getPath());
@@ -80,7 +92,28 @@ public class PhasedUnit {
         unit.setPackage(pkg);
         pkg.removeUnit(unit);
         pkg.addUnit(unit);
-        cu.setUnit(unit);
+        compilationUnit.setUnit(unit);
+    }
+    
+    /**
+     * Forget the results of every phase, so that the unit 
+     * is checked again, starting from the given tree, which
+     * must have been freshly parsed from the same file. 
+     * The unit is replaced by a new, empty, unit.
+     */
+    public void resetPhases(Tree.CompilationUnit cu, List<CommonToken> tokenStream) {
+        this.compilationUnit = cu;
+        this.tokens = tokenStream;
+        moduleVisitor = null;
+        treeValidated = false;
+        declarationsScanned = false;
+        scanningDeclarations = false;
+        typeDeclarationsScanned = false;
+        refinementValidated = false;
+        fullyTyped = false;
+        flowAnalyzed = false;
+        literalsProcessed = false;
+        initUnit();
     }
 
     public PhasedUnit(PhasedUnit other) {
@@ -102,6 +135,7 @@ public class PhasedUnit {
         this.refinementValidated = other.refinementValidated;
         this.fullyTyped = other.fullyTyped;
         this.flowAnalyzed = other.flowAnalyzed;
+        this.timings = other.timings;
     }
 
     @Deprecated
@@ -115,7 +149,7 @@ public class PhasedUnit {
                 ModuleManager.PACKAGE_FILE.equals(fileName) ) {
             processLiterals();
             moduleVisitor = new ModuleVisitor(moduleManager, pkg);
-            compilationUnit.visit(moduleVisitor);
+            visit(compilationUnit, moduleVisitor);
             return moduleVisitor.getMainModule();
         }
         return null;
@@ -128,7 +162,7 @@ public class PhasedUnit {
     public void visitRemainingModulePhase() {
         if ( moduleVisitor != null ) {
             moduleVisitor.setPhase(ModuleVisitor.Phase.REMAINING);
-            compilationUnit.visit(moduleVisitor);
+            visit(compilationUnit, moduleVisitor);
         }
     }
     
@@ -183,7 +217,15 @@ public class PhasedUnit {
     public void validateTree() {
         //System.out.println("Validating tree for " + fileName);
         if (!treeValidated) {
-            compilationUnit.visit(new Validator());
+            if (literalsProcessed) {
+                visit(compilationUnit, new Validator());
+            }
+            else {
+                //literals are processed along the way
+                visit(compilationUnit, CompositeVisitor.of(new Validator(), 
+                        new LiteralVisitor()));
+                literalsProcessed = true;
+            }
             treeValidated = true;
         }
     }
@@ -201,7 +243,7 @@ public class PhasedUnit {
             };
             DeclarationVisitor dv = new DeclarationVisitor(pkg, fileName,
             		unitFile.getPath(), pathRelativeToSrcDir, unitFactory);
-            compilationUnit.visit(dv);
+            visit(compilationUnit, dv);
             unit = dv.getCompilationUnit();
             declarationsScanned = true;
             scanningDeclarations = false;
@@ -210,7 +252,7 @@ public class PhasedUnit {
 
 	private void processLiterals() {
 		if (!literalsProcessed) {
-			compilationUnit.visit(new LiteralVisitor());
+			visit(compilationUnit, new LiteralVisitor());
 			literalsProcessed = true;
 		}
 	}
@@ -218,7 +260,7 @@ public class PhasedUnit {
     public void scanTypeDeclarations() {
         if (!typeDeclarationsScanned) {
             //System.out.println("Scan type declarations for " + fileName);
-            compilationUnit.visit( new TypeVisitor() );
+            visit(compilationUnit, new TypeVisitor());
             typeDeclarationsScanned = true;
         }
     }
@@ -226,8 +268,8 @@ public class PhasedUnit {
     public synchronized void validateRefinement() {
         if (! refinementValidated) {
             //System.out.println("Validate member refinement for " + fileName);
-        	compilationUnit.visit(new AliasVisitor());
-            compilationUnit.visit(new RefinementVisitor());
+        	visit(compilationUnit, new AliasVisitor());
+            visit(compilationUnit, new RefinementVisitor());
             refinementValidated = true;
         }
     }
@@ -235,9 +277,9 @@ public class PhasedUnit {
     public synchronized void analyseTypes() {
         if (! fullyTyped) {
             //System.out.println("Run analysis phase for " + fileName);
-            compilationUnit.visit(new ExpressionVisitor());
-            compilationUnit.visit(new TypeArgumentVisitor());
-            compilationUnit.visit(new TypeHierarchyVisitor());
+            visit(compilationUnit, new ExpressionVisitor());
+            visit(compilationUnit, CompositeVisitor.of(new TypeArgumentVisitor(), 
+                    new TypeHierarchyVisitor()));
             fullyTyped = true;
         }
     }
@@ -245,16 +287,24 @@ public class PhasedUnit {
     public synchronized void analyseFlow() {
         if (! flowAnalyzed) {
             //System.out.println("Validate control flow for " + fileName);
-            compilationUnit.visit(new ControlFlowVisitor());
             //System.out.println("Validate self references for " + fileName);
             //System.out.println("Validate specification for " + fileName);
+            OccurrenceVisitor occurrences = new OccurrenceVisitor();
+            visit(compilationUnit, CompositeVisitor.of(new ControlFlowVisitor(), 
+                    occurrences));
             for (Declaration d: unit.getDeclarations()) {
-                compilationUnit.visit(new SpecificationVisitor(d));
+                if (occurrences.occurs(d)) {
+                    visit(compilationUnit, new SpecificationVisitor(d, occurrences));
+                }
 //                if (d instanceof TypedDeclaration && !(d instanceof Setter)) {
 //                    compilationUnit.visit(new ValueVisitor((TypedDeclaration) d));
 //                }
                 if (d instanceof TypeDeclaration) {
-                    compilationUnit.visit(new SelfReferenceVisitor((TypeDeclaration) d));
+                    TypeDeclaration td = (TypeDeclaration) d;
+                    SelfReferenceVisitor srv = new SelfReferenceVisitor(td);
+                    for (Node node: occurrences.getDeclaringNodes(td)) {
+                        visit(node, srv);
+                    }
                 }
             }
             flowAnalyzed = true;
@@ -263,17 +313,73 @@ public class PhasedUnit {
 
     public synchronized void analyseUsage() {
         ReferenceCounter rc = new ReferenceCounter();
-		compilationUnit.visit(rc);
-        compilationUnit.visit(new UsageVisitor(rc));
+		visit(compilationUnit, rc);
+        visit(compilationUnit, new UsageVisitor(rc));
+        recordDependencies(rc);
+    }
+    
+    /**
+     * Record this unit as a dependent of every other unit
+     * declaring something it imports or references, so that
+     * it can be checked again when one of them changes.
+     */
+    private void recordDependencies(ReferenceCounter rc) {
+        for (Import i: unit.getImports()) {
+            addDependency(i.getDeclaration());
+        }
+        for (Declaration d: rc.getReferencedDeclarations()) {
+            addDependency(d);
+        }
+    }
+
+    private void addDependency(Declaration d) {
+        Unit declaringUnit = d==null ? null : d.getUnit();
+        if (declaringUnit!=null && declaringUnit!=unit &&
+                !isFrozen(declaringUnit)) {
+            declaringUnit.getDependentsOf().add(pathRelativeToSrcDir);
+        }
+    }
+
+    //the units of a shared module are never checked
+    //again, and are shared by other type checkers
+    private static boolean isFrozen(Unit unit) {
+        Package pkg = unit.getPackage();
+        return pkg!=null && pkg.getModule()!=null && 
+                pkg.getModule().isFrozen();
     }
 
     public void generateStatistics(StatisticsVisitor statsVisitor) {
-        compilationUnit.visit(statsVisitor);
+        visit(compilationUnit, statsVisitor);
+    }
+    
+    /**
+     * Generate statistics and run assertions in a single
+     * walk of the tree.
+     */
+    public void generateStatisticsAndRunAssertions(StatisticsVisitor statsVisitor, 
+            AssertionVisitor av) {
+        visit(compilationUnit, CompositeVisitor.of(statsVisitor, av));
     }
     
     public void runAssertions(AssertionVisitor av) {
         //System.out.println("Running assertions for " + fileName);
-        compilationUnit.visit(av);
+        visit(compilationUnit, av);
+    }
+
+    /**
+     * Visit the given node of the tree of this unit with
+     * the given visitor, measuring the visit if timings
+     * are enabled.
+     */
+    private void visit(Node node, Visitor visitor) {
+        if (timings==null) {
+            node.visit(visitor);
+        }
+        else {
+            Timings.Timer timer = timings.start();
+            node.visit(visitor);
+            timings.recordVisitor(unitFile.getPath(), visitor, timer);
+        }
     }
 
     public void display() {
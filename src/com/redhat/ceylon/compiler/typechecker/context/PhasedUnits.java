@@ -1,10 +1,18 @@
 package com.redhat.ceylon.compiler.typechecker.context;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.antlr.runtime.ANTLRInputStream;
 import org.antlr.runtime.CommonToken;
@@ -33,6 +41,10 @@ public class PhasedUnits {
     private final Context context;
     private final ModuleManager moduleManager;
     private List<String> moduleFilters;
+    //the units added by the thread parsing a file, while
+    //files are parsed concurrently
+    private final ThreadLocal<Map<VirtualFile, PhasedUnit>> parsedUnits = 
+            new ThreadLocal<Map<VirtualFile, PhasedUnit>>();
 
     public PhasedUnits(Context context) {
         this.context = context;
@@ -55,6 +67,12 @@ public class PhasedUnits {
     }
     
     public void addPhasedUnit(VirtualFile unitFile, PhasedUnit phasedUnit) {
+        Map<VirtualFile, PhasedUnit> units = parsedUnits.get();
+        if (units!=null) {
+            //added once every file has been parsed
+            units.put(unitFile, phasedUnit);
+            return;
+        }
         this.phasedUnitPerFile.put(unitFile, phasedUnit);
         this.phasedUnitPerRelativePath.put(phasedUnit.getPathRelativeToSrcDir(), phasedUnit);
     }
@@ -96,22 +114,170 @@ public class PhasedUnits {
         }
     }
 
+    /**
+     * Parses the given source directories, parsing the files
+     * concurrently using the given executor. The directories
+     * are walked first, assigning each file to its package 
+     * and module, then each file is parsed by 
+     * {@link #parseFile(VirtualFile, VirtualFile)}, with its
+     * package as the current package of the thread, and the 
+     * units are added in the same order as 
+     * {@link #parseUnits(List)} adds them.
+     */
+    public void parseUnits(List<VirtualFile> srcDirectories, ExecutorService executor) {
+        final List<ParsedFile> sourceFiles = new ArrayList<ParsedFile>();
+        for (VirtualFile file : srcDirectories) {
+            parseUnit(file, file, sourceFiles);
+        }
+        List<Callable<Map<VirtualFile, PhasedUnit>>> tasks = 
+                new ArrayList<Callable<Map<VirtualFile, PhasedUnit>>>(sourceFiles.size());
+        for (final ParsedFile sourceFile : sourceFiles) {
+            tasks.add(new Callable<Map<VirtualFile, PhasedUnit>>() {
+                @Override
+                public Map<VirtualFile, PhasedUnit> call() throws Exception {
+                    Map<VirtualFile, PhasedUnit> units = 
+                            new LinkedHashMap<VirtualFile, PhasedUnit>();
+                    parsedUnits.set(units);
+                    moduleManager.setParsedPackage(sourceFile.pkg);
+                    try {
+                        parseFile(sourceFile.file, sourceFile.srcDir);
+                    }
+                    finally {
+                        moduleManager.setParsedPackage(null);
+                        parsedUnits.remove();
+                    }
+                    return units;
+                }
+            });
+        }
+        List<Future<Map<VirtualFile, PhasedUnit>>> results;
+        try {
+            results = executor.invokeAll(tasks);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        for (int i=0; i<results.size(); i++) {
+            Map<VirtualFile, PhasedUnit> units;
+            try {
+                units = results.get(i).get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new RuntimeException("Error while parsing the source file: " + 
+                        sourceFiles.get(i).file.toString(), cause);
+            }
+            for (Map.Entry<VirtualFile, PhasedUnit> unit: units.entrySet()) {
+                addPhasedUnit(unit.getKey(), unit.getValue());
+            }
+        }
+    }
+
     public void parseUnit(VirtualFile srcDir) {
         parseUnit(srcDir, srcDir);
     }
 
     public void parseUnit(VirtualFile file, VirtualFile srcDir) {
+        parseUnit(file, srcDir, null);
+    }
+
+    /**
+     * Parses the module and package descriptors of the given
+     * source directory, but only reads the other source files,
+     * which are parsed by the given loader when the members of
+     * their package are first needed.
+     */
+    public void parseUnitLazily(VirtualFile srcDir, final PackageLoader loader) {
+        List<ParsedFile> sourceFiles = new ArrayList<ParsedFile>();
+        parseUnit(srcDir, srcDir, sourceFiles);
+        final String encoding = getEncoding();
+        final ParsedUnitCache cache = context.getParsedUnitCache();
+        Map<Package, List<ParsedFile>> sourceFilesPerPackage = 
+                new LinkedHashMap<Package, List<ParsedFile>>();
+        for (ParsedFile sourceFile : sourceFiles) {
+            try {
+                String name = sourceFile.file.getName();
+                if (!name.endsWith(".ceylon")) {
+                    continue;
+                }
+                if (ModuleManager.MODULE_FILE.equals(name) || 
+                        ModuleManager.PACKAGE_FILE.equals(name)) {
+                    sourceFile.parse(encoding, cache);
+                    addParsedFile(sourceFile);
+                }
+                else {
+                    //the source directory may be closed by 
+                    //the time the package is loaded
+                    sourceFile.read();
+                    List<ParsedFile> files = sourceFilesPerPackage.get(sourceFile.pkg);
+                    if (files==null) {
+                        files = new ArrayList<ParsedFile>();
+                        sourceFilesPerPackage.put(sourceFile.pkg, files);
+                    }
+                    files.add(sourceFile);
+                }
+            }
+            catch (RuntimeException e) {
+                throw e;
+            }
+            catch (Exception e) {
+                throw new RuntimeException("Error while parsing the source file: " + 
+                        sourceFile.file.toString(), e);
+            }
+        }
+        for (Map.Entry<Package, List<ParsedFile>> entry: sourceFilesPerPackage.entrySet()) {
+            final List<ParsedFile> files = entry.getValue();
+            loader.defer(new PackageLoader.DeferredPackage(loader, entry.getKey()) {
+                @Override
+                List<PhasedUnit> parseUnits() {
+                    List<PhasedUnit> units = new ArrayList<PhasedUnit>(files.size());
+                    for (ParsedFile sourceFile : files) {
+                        try {
+                            sourceFile.parse(encoding, cache);
+                        }
+                        catch (RuntimeException e) {
+                            throw e;
+                        }
+                        catch (Exception e) {
+                            throw new RuntimeException("Error while parsing the source file: " + 
+                                    sourceFile.file.toString(), e);
+                        }
+                        units.add(addParsedFile(sourceFile));
+                    }
+                    return units;
+                }
+            });
+        }
+    }
+
+    /**
+     * Walks the given file or directory, parsing the files 
+     * found, or only collecting them into the given list, if
+     * any, to be parsed later.
+     */
+    private void parseUnit(VirtualFile file, VirtualFile srcDir, List<ParsedFile> sourceFiles) {
         try {
             if (file.isFolder()) {
                 //root directory is the src dir => start from here
                 for (VirtualFile subfile : file.getChildren()) {
-                    parseFileOrDirectory(subfile, srcDir);
+                    parseFileOrDirectory(subfile, srcDir, sourceFiles);
                 }
             }
             else {
                 //simple file compilation
                 //TODO is that really valid?
-                parseFileOrDirectory(file, srcDir);
+                parseFileOrDirectory(file, srcDir, sourceFiles);
             }
         }
         catch (RuntimeException e) {
@@ -126,17 +292,133 @@ public class PhasedUnits {
     protected void parseFile(VirtualFile file, VirtualFile srcDir) throws Exception {
         if (file.getName().endsWith(".ceylon")) {
 
+            ParsedFile parsedFile = new ParsedFile(file, srcDir, 
+                    moduleManager.getCurrentPackage());
+            parsedFile.parse(getEncoding(), context.getParsedUnitCache());
+            addParsedFile(parsedFile);
+        }
+    }
+
+    private PhasedUnit addParsedFile(ParsedFile parsedFile) {
+        PhasedUnit phasedUnit = new PhasedUnit(parsedFile.file, parsedFile.srcDir, 
+                parsedFile.compilationUnit, parsedFile.pkg, moduleManager,
+                context, parsedFile.tokens);
+        addPhasedUnit(parsedFile.file, phasedUnit);
+        return phasedUnit;
+    }
+
+    /**
+     * Parses the given source file again, resetting the phases
+     * of its unit, or adds a new unit to the given package if
+     * the file was not parsed before.
+     */
+    public PhasedUnit reparseUnit(VirtualFile file, VirtualFile srcDir, Package pkg) {
+        PhasedUnit phasedUnit = getPhasedUnit(file);
+        ParsedFile parsedFile = new ParsedFile(file, srcDir, 
+                phasedUnit==null ? pkg : phasedUnit.getPackage());
+        try {
+            parsedFile.parse(getEncoding(), context.getParsedUnitCache());
+        }
+        catch (RuntimeException e) {
+            throw e;
+        }
+        catch (Exception e) {
+            throw new RuntimeException("Error while parsing the source file: " + file.toString(), e);
+        }
+        if (phasedUnit==null) {
+            return addParsedFile(parsedFile);
+        }
+        else {
+            phasedUnit.resetPhases(parsedFile.compilationUnit, parsedFile.tokens);
+            return phasedUnit;
+        }
+    }
+
+    /**
+     * A source file, with the package it belongs to, and, once
+     * it has been parsed, its compilation unit and tokens. 
+     * Parsing a file does not depend on any other file, so
+     * files may be parsed concurrently.
+     */
+    private static class ParsedFile {
+        final VirtualFile file;
+        final VirtualFile srcDir;
+        final Package pkg;
+        Tree.CompilationUnit compilationUnit;
+        List<CommonToken> tokens;
+        //the contents of the file, when it is read before it
+        //is parsed
+        private byte[] contents;
+
+        ParsedFile(VirtualFile file, VirtualFile srcDir, Package pkg) {
+            this.file = file;
+            this.srcDir = srcDir;
+            this.pkg = pkg;
+        }
+
+        /**
+         * Parses the file, or reads its compilation unit back
+         * from the given cache, if any, when the file did not
+         * change since it was stored.
+         */
+        void parse(String encoding, ParsedUnitCache cache) throws Exception {
+            if (cache==null) {
+                parse(contents==null ? file.getInputStream() : 
+                        new ByteArrayInputStream(contents), encoding);
+            }
+            else {
+                byte[] contents = readContents();
+                List<CommonToken> cachedTokens = new ArrayList<CommonToken>();
+                Tree.CompilationUnit cu = cache.load(contents, encoding, cachedTokens);
+                if (cu==null) {
+                    parse(new ByteArrayInputStream(contents), encoding);
+                    if (compilationUnit.getErrors().isEmpty()) {
+                        cache.store(contents, encoding, compilationUnit, tokens);
+                    }
+                }
+                else {
+                    compilationUnit = cu;
+                    tokens = cachedTokens;
+                }
+            }
+            contents = null;
+        }
+
+        /**
+         * Reads the contents of the file now, to be parsed 
+         * later.
+         */
+        void read() throws IOException {
+            contents = readContents();
+        }
+
+        private byte[] readContents() throws IOException {
+            if (contents!=null) {
+                return contents;
+            }
+            InputStream in = file.getInputStream();
+            try {
+                ByteArrayOutputStream contents = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer))!=-1) {
+                    contents.write(buffer, 0, read);
+                }
+                return contents.toByteArray();
+            }
+            finally {
+                in.close();
+            }
+        }
+
+        private void parse(InputStream in, String encoding) throws Exception {
             //System.out.println("Parsing " + file.getName());
-            CeylonLexer lexer = new CeylonLexer(new ANTLRInputStream(file.getInputStream(), getEncoding()));
+            CeylonLexer lexer = new CeylonLexer(new ANTLRInputStream(in, encoding));
             CommonTokenStream tokenStream = new CommonTokenStream(lexer);
             CeylonParser parser = new CeylonParser(tokenStream);
             Tree.CompilationUnit cu = parser.compilationUnit();
-            List<CommonToken> tokens = new ArrayList<CommonToken>(tokenStream.getTokens().size()); 
+            tokens = new ArrayList<CommonToken>(tokenStream.getTokens().size()); 
             tokens.addAll(tokenStream.getTokens());
-            PhasedUnit phasedUnit = new PhasedUnit(file, srcDir, cu, 
-                    moduleManager.getCurrentPackage(), moduleManager,
-                    context, tokens);
-            addPhasedUnit(file, phasedUnit);
 
             List<LexError> lexerErrors = lexer.getErrors();
             for (LexError le : lexerErrors) {
@@ -151,7 +433,8 @@ public class PhasedUnits {
                 cu.addParseError(pe);
             }
             parserErrors.clear();
-
+            
+            compilationUnit = cu;
         }
     }
 
@@ -159,16 +442,22 @@ public class PhasedUnits {
 		return System.getProperty("file.encoding");
 	}
 
-    private void parseFileOrDirectory(VirtualFile file, VirtualFile srcDir) throws Exception {
+    private void parseFileOrDirectory(VirtualFile file, VirtualFile srcDir, 
+            List<ParsedFile> sourceFiles) throws Exception {
         if (file.isFolder()) {
-            processDirectory(file, srcDir);
+            processDirectory(file, srcDir, sourceFiles);
         }
-        else {
+        else if (sourceFiles==null) {
             parseFile(file, srcDir);
         }
+        else {
+            sourceFiles.add(new ParsedFile(file, srcDir, 
+                    moduleManager.getCurrentPackage()));
+        }
     }
 
-    private void processDirectory(VirtualFile dir, VirtualFile srcDir) throws Exception {
+    private void processDirectory(VirtualFile dir, VirtualFile srcDir, 
+            List<ParsedFile> sourceFiles) throws Exception {
         moduleManager.push(dir.getName());
         
         // See if we're defining a new module
@@ -185,7 +474,7 @@ public class PhasedUnits {
             if(definesModule)
                 moduleManager.visitModuleFile();
             for (VirtualFile file : files) {
-                parseFileOrDirectory(file, srcDir);
+                parseFileOrDirectory(file, srcDir, sourceFiles);
             }
         }
         moduleManager.pop();
@@ -1,5 +1,8 @@
 package com.redhat.ceylon.compiler.typechecker.model;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public abstract class ClassOrInterface extends TypeDeclaration {
 
@@ -27,6 +30,81 @@ public abstract class ClassOrInterface extends TypeDeclaration {
     	}
     }
 
+    /**
+     * Shortcut refinements are added to the members of a
+     * class while other units, which may be type checked
+     * concurrently, are looking up its members, and the
+     * member lookups remembered meanwhile on the class and
+     * its subtypes are forgotten.
+     */
+    @Override
+    List<Declaration> createMembers() {
+        return new Members();
+    }
+    
+    private final class Members 
+            extends CopyOnWriteArrayList<Declaration> {
+        private static final long serialVersionUID = 1L;
+        @Override
+        public boolean add(Declaration d) {
+            boolean result = super.add(d);
+            membersChanged();
+            return result;
+        }
+        @Override
+        public void add(int index, Declaration d) {
+            super.add(index, d);
+            membersChanged();
+        }
+        @Override
+        public boolean addAll(Collection<? extends Declaration> c) {
+            boolean result = super.addAll(c);
+            membersChanged();
+            return result;
+        }
+        @Override
+        public boolean addAll(int index, Collection<? extends Declaration> c) {
+            boolean result = super.addAll(index, c);
+            membersChanged();
+            return result;
+        }
+        @Override
+        public Declaration set(int index, Declaration d) {
+            Declaration result = super.set(index, d);
+            membersChanged();
+            return result;
+        }
+        @Override
+        public Declaration remove(int index) {
+            Declaration result = super.remove(index);
+            membersChanged();
+            return result;
+        }
+        @Override
+        public boolean remove(Object o) {
+            boolean result = super.remove(o);
+            membersChanged();
+            return result;
+        }
+        @Override
+        public boolean removeAll(Collection<?> c) {
+            boolean result = super.removeAll(c);
+            membersChanged();
+            return result;
+        }
+        @Override
+        public boolean retainAll(Collection<?> c) {
+            boolean result = super.retainAll(c);
+            membersChanged();
+            return result;
+        }
+        @Override
+        public void clear() {
+            super.clear();
+            membersChanged();
+        }
+    }
+
     public abstract boolean isAbstract();
 
     @Override
@@ -14,7 +14,7 @@ public abstract class Element {
 	private Scope container;
 	private Scope scope;
 	protected Unit unit;
-	private List<Declaration> members = new ArrayList<Declaration>();
+	private List<Declaration> members = createMembers();
 
     public Unit getUnit() {
         return unit;
@@ -43,6 +43,10 @@ public abstract class Element {
     public List<Declaration> getMembers() {
         return members;
     }
+    
+    List<Declaration> createMembers() {
+        return new ArrayList<Declaration>();
+    }
 
     public String getQualifiedNameString() {
         return getContainer().getQualifiedNameString();
@@ -0,0 +1,149 @@
+package com.redhat.ceylon.compiler.typechecker.model;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers, on each type declaration, the members found
+ * by looking them up by name, signature and variadicity,
+ * including whether they are ambiguous.
+ *
+ * Like the {@link SubtypeCache}, a cache belongs to a type
+ * checking session, is only used by the threads in which
+ * the {@link TypeCaches} of the session are installed, and
+ * must only be installed once the type hierarchy is
+ * complete. The lookups remembered on a type declaration
+ * are forgotten whenever a member or supertype of one of
+ * the declarations it inherits from changes, or the cache
+ * is invalidated. At most a fixed number of lookups are
+ * remembered per declaration. The lookups of declarations
+ * of a {@link SharedLanguageModule} are remembered by the
+ * cache itself, and not on the declarations, which other
+ * sessions read too.
+ */
+public class MemberLookupCache {
+
+    private final int maxSizePerDeclaration;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final Map<TypeDeclaration, TypeDeclaration.MemberLookups> sharedLookups = 
+            new ConcurrentHashMap<TypeDeclaration, TypeDeclaration.MemberLookups>();
+
+    public MemberLookupCache(int maxSizePerDeclaration) {
+        this.maxSizePerDeclaration = maxSizePerDeclaration;
+    }
+
+    static MemberLookupCache current() {
+        TypeCaches caches = TypeCaches.current();
+        return caches==null ? null : caches.getMemberLookupCache();
+    }
+
+    int getMaxSizePerDeclaration() {
+        return maxSizePerDeclaration;
+    }
+
+    void hit() {
+        hits.incrementAndGet();
+    }
+
+    void miss() {
+        misses.incrementAndGet();
+    }
+
+    /**
+     * Forget every lookup, for example because units are
+     * about to be checked again.
+     */
+    public void invalidate() {
+        invalidations.incrementAndGet();
+        sharedLookups.clear();
+    }
+
+    long getInvalidations() {
+        return invalidations.get();
+    }
+
+    TypeDeclaration.MemberLookups getLookups(TypeDeclaration declaration) {
+        return sharedLookups.get(declaration);
+    }
+
+    void setLookups(TypeDeclaration declaration, 
+            TypeDeclaration.MemberLookups lookups) {
+        sharedLookups.put(declaration, lookups);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "MemberLookupCache[hits=" + getHits() +
+                ", misses=" + getMisses() + "]";
+    }
+
+    /**
+     * A member lookup, with the types of its signature
+     * compared by identity, which is enough for the same
+     * expression, or interned types, to hit the cache.
+     */
+    static final class Key {
+        private final String name;
+        private final ProducedType[] signature;
+        private final boolean variadic;
+        private final int hash;
+
+        Key(String name, List<ProducedType> signature, boolean variadic) {
+            this.name = name;
+            this.signature = signature==null ? null :
+                    signature.toArray(new ProducedType[signature.size()]);
+            this.variadic = variadic;
+            int h = name==null ? 0 : name.hashCode();
+            if (this.signature!=null) {
+                for (ProducedType pt: this.signature) {
+                    h = 31*h + System.identityHashCode(pt);
+                }
+            }
+            hash = variadic ? ~h : h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof Key) {
+                Key that = (Key) obj;
+                if (hash!=that.hash || variadic!=that.variadic ||
+                        (name==null ? that.name!=null : !name.equals(that.name))) {
+                    return false;
+                }
+                if (signature==null || that.signature==null) {
+                    return signature==that.signature;
+                }
+                if (signature.length!=that.signature.length) {
+                    return false;
+                }
+                for (int i=0; i<signature.length; i++) {
+                    if (signature[i]!=that.signature[i]) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            else {
+                return false;
+            }
+        }
+    }
+
+}
@@ -5,6 +5,8 @@ import static com.redhat.ceylon.compiler.typechecker.model.Util.isOverloadedVers
 import static com.redhat.ceylon.compiler.typechecker.model.Util.isResolvable;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -18,13 +20,19 @@ public class Module
     private String version;
     private int major;
     private int minor;
-    private List<Package> packages = new ArrayList<Package>();
+    private PackageList packages = new PackageList();
     private List<ModuleImport> imports = new ArrayList<ModuleImport>();
     private Module languageModule;
     private boolean available;
     private boolean isDefault;
     private List<Annotation> annotations = new ArrayList<Annotation>();
     private Unit unit;
+    //the shared toplevel declarations of the packages, by
+    //name, built once the packages are complete and never
+    //modified, or null until then
+    private volatile Map<String, Declaration> sharedMembers;
+    //set once the module is shared by type checkers
+    private volatile boolean frozen;
 
     /**
      * Whether or not the module is available in the
@@ -47,7 +55,7 @@ public class Module
     }
 
     public List<Package> getPackages() {
-        return packages;
+        return frozen ? Collections.unmodifiableList(packages) : packages;
     }
 
     public List<Package> getSharedPackages() {
@@ -61,7 +69,21 @@ public class Module
     }
 
     public List<ModuleImport> getImports() {
-        return imports;
+        return frozen ? Collections.unmodifiableList(imports) : imports;
+    }
+    
+    /**
+     * Is the model of this module shared by type checkers,
+     * and therefore read-only?
+     * 
+     * @see SharedLanguageModule
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+    
+    void freeze() {
+        frozen = true;
     }
     
     public Module getLanguageModule() {
@@ -134,15 +156,66 @@ public class Module
         return list;
     }
 
-    public Package getDirectPackage(String name) {
+    /**
+     * Search the packages of this module for the named, 
+     * shared, toplevel declaration. Used for the language
+     * module, whose declarations are auto-imported, so the
+     * declarations are looked up in a table once the 
+     * packages are {@link #packagesCompleted() complete}.
+     */
+    public Declaration getSharedMember(String name) {
+        Map<String, Declaration> sharedMembers = this.sharedMembers;
+        if (sharedMembers!=null) {
+            return sharedMembers.get(name);
+        }
         for (Package pkg: packages) {
-            if ( pkg.getQualifiedNameString().equals(name) ) {
-                return pkg;
+            Declaration d = pkg.getMember(name, null, false);
+            if (d != null && d.isShared()) {
+                return d;
             }
         }
         return null;
     }
     
+    /**
+     * Called once the declarations of every unit of the
+     * packages of this module have been scanned, to build 
+     * the table of the shared toplevel declarations of its
+     * packages. The table is dropped as soon as a unit or a
+     * declaration is added to or removed from a package,
+     * and declarations are then searched again until this
+     * method is called again.
+     */
+    public void packagesCompleted() {
+        if (sharedMembers!=null) {
+            return;
+        }
+        Map<String, Declaration> members = new HashMap<String, Declaration>();
+        for (Package pkg: packages) {
+            for (Declaration member: pkg.getMembers()) {
+                String name = member.getName();
+                if (name!=null && !members.containsKey(name)) {
+                    //the same declaration a search finds
+                    Declaration d = pkg.getMember(name, null, false);
+                    if (d != null && d.isShared()) {
+                        members.put(name, d);
+                    }
+                }
+            }
+        }
+        sharedMembers = Collections.unmodifiableMap(members);
+    }
+    
+    void clearSharedMembers() {
+        if (sharedMembers!=null) {
+            sharedMembers = null;
+        }
+    }
+    
+    public Package getDirectPackage(String name) {
+        return packages.getPackage(name);
+    }
+    
     public Package getPackage(String name) {
         Package pkg = getDirectPackage(name);
         if(pkg != null)
@@ -204,6 +277,109 @@ public class Module
 		this.unit = unit;
 	}
 
+    /**
+     * The packages of a module, indexed by qualified name.
+     * add() and remove() keep the index up to date. Other 
+     * modifications, which its modCount reveals, drop it, 
+     * and it is built again on the next lookup. As in the
+     * list, the first package with a given name wins.
+     */
+    private static final class PackageList extends ArrayList<Package> {
+        private static final long serialVersionUID = 1L;
+        
+        private transient volatile PackageIndex index;
+        
+        @Override
+        public Package set(int index, Package pkg) {
+            //not a structural modification, but it
+            //changes the index
+            modCount++;
+            return super.set(index, pkg);
+        }
+        
+        @Override
+        public boolean add(Package pkg) {
+            PackageIndex index = currentIndex();
+            super.add(pkg);
+            if (index!=null) {
+                String name = pkg.getQualifiedNameString();
+                if (!index.packages.containsKey(name)) {
+                    index.packages.put(name, pkg);
+                }
+                index.modCount = modCount;
+            }
+            return true;
+        }
+        
+        @Override
+        public Package remove(int i) {
+            PackageIndex index = currentIndex();
+            Package pkg = super.remove(i);
+            if (index!=null) {
+                removeFromIndex(index, pkg);
+            }
+            return pkg;
+        }
+        
+        @Override
+        public boolean remove(Object o) {
+            PackageIndex index = currentIndex();
+            boolean removed = super.remove(o);
+            if (removed && index!=null) {
+                removeFromIndex(index, (Package) o);
+            }
+            return removed;
+        }
+        
+        private void removeFromIndex(PackageIndex index, Package pkg) {
+            String name = pkg.getQualifiedNameString();
+            if (index.packages.get(name)==pkg) {
+                //another package with the same name, if 
+                //any, takes its place
+                index.packages.remove(name);
+                for (Package p: this) {
+                    if (p.getQualifiedNameString().equals(name)) {
+                        index.packages.put(name, p);
+                        break;
+                    }
+                }
+            }
+            index.modCount = modCount;
+        }
+        
+        /**
+         * The index, if it reflects every modification of
+         * the list, or null.
+         */
+        private PackageIndex currentIndex() {
+            PackageIndex index = this.index;
+            return index!=null && index.modCount==modCount ? 
+                    index : null;
+        }
+        
+        Package getPackage(String name) {
+            PackageIndex index = currentIndex();
+            if (index==null) {
+                index = new PackageIndex();
+                for (Package pkg: this) {
+                    String pkgName = pkg.getQualifiedNameString();
+                    if (!index.packages.containsKey(pkgName)) {
+                        index.packages.put(pkgName, pkg);
+                    }
+                }
+                index.modCount = modCount;
+                this.index = index;
+            }
+            return index.packages.get(name);
+        }
+    }
+    
+    private static final class PackageIndex {
+        private int modCount;
+        private final Map<String, Package> packages = 
+                new HashMap<String, Package>();
+    }
+
     public int getMajor() {
         return major;
     }
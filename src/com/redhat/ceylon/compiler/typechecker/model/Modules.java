@@ -1,6 +1,13 @@
 package com.redhat.ceylon.compiler.typechecker.model;
 
-import java.util.HashSet;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -10,7 +17,7 @@ import java.util.Set;
  */
 public class Modules {
     private Module languageModule;
-    private Set<Module> modules = new HashSet<Module>();
+    private ModuleSet modules = new ModuleSet();
     private Module defaultModule;
 
     public Module getLanguageModule() {
@@ -32,4 +39,102 @@ public class Modules {
     public Set<Module> getListOfModules() {
         return modules;
     }
+
+    /**
+     * The modules with the given name, in every version,
+     * in the order they were added.
+     */
+    public List<Module> getModules(String name) {
+        List<Module> list = modules.byName.get(name);
+        if (list==null) {
+            return Collections.emptyList();
+        }
+        else {
+            return Collections.unmodifiableList(list);
+        }
+    }
+
+    /**
+     * The set of modules, indexed by the name the module
+     * had when it was added.
+     */
+    private static class ModuleSet extends AbstractSet<Module> {
+        private final Set<Module> modules = new LinkedHashSet<Module>();
+        private final Map<String, List<Module>> byName = 
+                new HashMap<String, List<Module>>();
+
+        @Override
+        public boolean add(Module module) {
+            if (!modules.add(module)) {
+                return false;
+            }
+            String name = module.getNameAsString();
+            List<Module> list = byName.get(name);
+            if (list==null) {
+                list = new ArrayList<Module>(1);
+                byName.put(name, list);
+            }
+            list.add(module);
+            return true;
+        }
+
+        @Override
+        public boolean remove(Object object) {
+            if (!modules.remove(object)) {
+                return false;
+            }
+            unindex((Module) object);
+            return true;
+        }
+
+        private void unindex(Module module) {
+            for (Iterator<List<Module>> it = byName.values().iterator(); 
+                    it.hasNext();) {
+                List<Module> list = it.next();
+                if (list.remove(module)) {
+                    if (list.isEmpty()) {
+                        it.remove();
+                    }
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean contains(Object object) {
+            return modules.contains(object);
+        }
+
+        @Override
+        public void clear() {
+            modules.clear();
+            byName.clear();
+        }
+
+        @Override
+        public int size() {
+            return modules.size();
+        }
+
+        @Override
+        public Iterator<Module> iterator() {
+            final Iterator<Module> it = modules.iterator();
+            return new Iterator<Module>() {
+                private Module last;
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+                @Override
+                public Module next() {
+                    return last = it.next();
+                }
+                @Override
+                public void remove() {
+                    it.remove();
+                    unindex(last);
+                }
+            };
+        }
+    }
 }
@@ -10,6 +10,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Package 
         implements ImportableScope, Referenceable, Annotated {
@@ -21,6 +22,13 @@ public class Package
     private List<Annotation> annotations = new ArrayList<Annotation>();
     private Unit unit;
     private String nameAsStringCache;
+    //the toplevel declarations of the units, by name,
+    //in the order in which getMembers() returns them
+    private final Map<String, List<Declaration>> membersByName = 
+            new ConcurrentHashMap<String, List<Declaration>>();
+    //adds the units of a package of a dependency the
+    //first time they are needed, or null once it has
+    private volatile Runnable loader;
     
     public Module getModule() {
         return module;
@@ -38,21 +46,146 @@ public class Package
         this.name = name;
     }
     
+    /**
+     * Defer adding the units of this package until they, or
+     * its members, are first needed, when the given loader 
+     * is run. The loader must call this method again with
+     * null once the units are added.
+     */
+    public void setLoader(Runnable loader) {
+        this.loader = loader;
+    }
+    
+    /**
+     * Were the units of this package added, or are they
+     * still to be added by a {@link #setLoader(Runnable) 
+     * loader}?
+     */
+    public boolean isLoaded() {
+        return loader==null;
+    }
+    
+    private void load() {
+        Runnable loader = this.loader;
+        if (loader!=null) {
+            loader.run();
+        }
+    }
+    
     public Iterable<Unit> getUnits() {
+        load();
         synchronized (units) {
             return new ArrayList<Unit>(units);
         }
     }
     
     public void addUnit(Unit unit) {
+        checkNotFrozen();
         synchronized (units) {
             units.add(unit);
+            for (Declaration d: unit.getDeclarations()) {
+                indexMember(units.size()-1, d);
+            }
         }
+        membersChanged();
     }
     
     public void removeUnit(Unit unit) {
+        checkNotFrozen();
+        synchronized (units) {
+            int index = units.indexOf(unit);
+            if (index>=0) {
+                Unit removed = units.remove(index);
+                for (Declaration d: removed.getDeclarations()) {
+                    unindexMember(d);
+                }
+            }
+        }
+        membersChanged();
+    }
+    
+    private void checkNotFrozen() {
+        if (module!=null && module.isFrozen()) {
+            throw new UnsupportedOperationException("the units of a package of a shared module may not change: " + 
+                    getNameAsString());
+        }
+    }
+    
+    /**
+     * Called by {@link Unit#addDeclaration(Declaration)}
+     * when the given unit gets a new declaration.
+     */
+    void declarationAdded(Unit unit, Declaration d) {
         synchronized (units) {
-            units.remove(unit);
+            //the unit is usually the last one added
+            for (int i=units.size()-1; i>=0; i--) {
+                if (units.get(i)==unit) {
+                    indexMember(i, d);
+                    break;
+                }
+            }
+        }
+        membersChanged();
+    }
+    
+    private void membersChanged() {
+        if (module!=null) {
+            module.clearSharedMembers();
+        }
+    }
+    
+    private void indexMember(int unitIndex, Declaration d) {
+        String name = d.getName();
+        if (name==null || d.getContainer()==null || 
+                !d.getContainer().equals(this)) {
+            return;
+        }
+        List<Declaration> existing = membersByName.get(name);
+        List<Declaration> members;
+        if (existing==null) {
+            members = new ArrayList<Declaration>(1);
+            members.add(d);
+        }
+        else {
+            for (Declaration m: existing) {
+                if (m==d) return;
+            }
+            members = new ArrayList<Declaration>(existing.size()+1);
+            members.addAll(existing);
+            //keep the order of the units, so that
+            //lookups find the same declaration as a 
+            //search of getMembers() would
+            int position = members.size();
+            if (unitIndex<units.size()-1) {
+                for (int i=0; i<members.size(); i++) {
+                    if (units.indexOf(members.get(i).getUnit())>unitIndex) {
+                        position = i;
+                        break;
+                    }
+                }
+            }
+            members.add(position, d);
+        }
+        //lists in the index are never modified once 
+        //published, so lookups don't need to lock
+        membersByName.put(name, members);
+    }
+    
+    private void unindexMember(Declaration d) {
+        String name = d.getName();
+        if (name==null) return;
+        List<Declaration> existing = membersByName.get(name);
+        if (existing!=null) {
+            List<Declaration> members = new ArrayList<Declaration>(existing.size());
+            for (Declaration m: existing) {
+                if (m!=d) members.add(m);
+            }
+            if (members.isEmpty()) {
+                membersByName.remove(name);
+            }
+            else if (members.size()<existing.size()) {
+                membersByName.put(name, members);
+            }
         }
     }
     
@@ -125,7 +258,15 @@ public class Package
 
     @Override
     public Declaration getDirectMember(String name, List<ProducedType> signature, boolean ellipsis) {
-        return lookupMember(getMembers(), name, signature, ellipsis);
+        if (name==null) {
+            return null;
+        }
+        load();
+        List<Declaration> members = membersByName.get(name);
+        if (members==null) {
+            return null;
+        }
+        return lookupMember(members, name, signature, ellipsis);
     }
 
     @Override
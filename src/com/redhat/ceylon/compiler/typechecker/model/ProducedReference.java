@@ -1,6 +1,7 @@
 package com.redhat.ceylon.compiler.typechecker.model;
 
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -13,9 +14,10 @@ public abstract class ProducedReference {
 
     ProducedReference() {}
 
-    private Map<TypeParameter, ProducedType> typeArguments = Collections.emptyMap();
+    private volatile TypeArguments typeArguments = TypeArguments.EMPTY;
     private Declaration declaration;
     private ProducedType qualifyingType;
+    private volatile boolean defaultTypeArgumentsResolved;
 
     public ProducedType getQualifyingType() {
         return qualifyingType;
@@ -31,24 +33,53 @@ public abstract class ProducedReference {
 
     void setDeclaration(Declaration type) {
         this.declaration = type;
+        this.defaultTypeArgumentsResolved = false;
     }
 
+    /**
+     * The type arguments, including the default arguments
+     * of type parameters without an explicit argument.
+     *
+     * The map is unmodifiable, for produced types as for
+     * other references: its mutators, and those of its
+     * views, throw {@link UnsupportedOperationException}.
+     * To produce a reference with other type arguments,
+     * copy them into a new map instead.
+     */
     public Map<TypeParameter, ProducedType> getTypeArguments() {
-    	if (declaration instanceof Generic) {
-    		for (TypeParameter pt: ((Generic)declaration).getTypeParameters()) {
-    			if (!typeArguments.containsKey(pt)) {
-    				ProducedType dta = pt.getDefaultTypeArgument();
-    				if (dta!=null) {
-    					typeArguments.put(pt, dta);
-    				}
-    			}
-    		}
-    	}
+        if (!defaultTypeArgumentsResolved) {
+            return resolveDefaultTypeArguments();
+        }
         return typeArguments;
     }
 
     void setTypeArguments(Map<TypeParameter, ProducedType> typeArguments) {
-        this.typeArguments = typeArguments;
+        this.typeArguments = TypeArguments.of(getTypeParameters(), typeArguments);
+        this.defaultTypeArgumentsResolved = false;
+        if (declaration!=null) {
+            resolveDefaultTypeArguments();
+        }
+    }
+
+    private List<TypeParameter> getTypeParameters() {
+        return declaration instanceof Generic ?
+                ((Generic) declaration).getTypeParameters() :
+                Collections.<TypeParameter>emptyList();
+    }
+
+    private TypeArguments resolveDefaultTypeArguments() {
+        //the default arguments may not be known yet, in
+        //which case we try again the next time. References
+        //are shared between units, which may be type checked
+        //concurrently, but they always resolve the same
+        //arguments, so the race is benign
+        TypeArguments args = TypeArguments.of(getTypeParameters(), 
+                typeArguments).withDefaults();
+        typeArguments = args;
+        if (args.isComplete()) {
+            defaultTypeArgumentsResolved = true;
+        }
+        return args;
     }
 
     public abstract ProducedType getType();
@@ -4,13 +4,16 @@ import static com.redhat.ceylon.compiler.typechecker.model.Util.addToIntersectio
 import static com.redhat.ceylon.compiler.typechecker.model.Util.addToUnion;
 import static com.redhat.ceylon.compiler.typechecker.model.Util.arguments;
 import static com.redhat.ceylon.compiler.typechecker.model.Util.constructPrincipalInstantiation;
+import static com.redhat.ceylon.compiler.typechecker.model.Util.intersectionType;
 import static com.redhat.ceylon.compiler.typechecker.model.Util.principalQualifyingType;
+import static com.redhat.ceylon.compiler.typechecker.model.Util.unionType;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.redhat.ceylon.compiler.typechecker.util.ProducedTypeNamePrinter;
 
@@ -27,8 +30,15 @@ public class ProducedType extends ProducedReference {
     
     private String underlyingType;
     private boolean isRaw;
-    private ProducedType resolvedAliases;
-    private Map<TypeDeclaration, ProducedType> superTypesCache = new HashMap<TypeDeclaration, ProducedType>();
+    private volatile ProducedType resolvedAliases;
+    //set once the type is shared by a TypeInterner or
+    //a TupleTypeCache
+    private volatile boolean canonical;
+    //types are shared between units, which may be type
+    //checked concurrently, so use a concurrent map, with
+    //a marker for declarations which are not supertypes
+    private final Map<TypeDeclaration, ProducedType> superTypesCache = new ConcurrentHashMap<TypeDeclaration, ProducedType>();
+    private static final ProducedType NO_SUPERTYPE = new ProducedType();
 
     ProducedType() {}
 
@@ -42,7 +52,11 @@ public class ProducedType extends ProducedReference {
      * given type? 
      */
     public boolean isExactly(ProducedType type) {
-        return resolveAliases().isExactlyInternal(type.resolveAliases());
+        ProducedType resolved = resolveAliases();
+        ProducedType otherResolved = type.resolveAliases();
+        //interned types are identical
+        return resolved==otherResolved || 
+                resolved.isExactlyInternal(otherResolved);
     }
     
     public boolean isExactlyInternal(ProducedType type) {
@@ -189,8 +203,18 @@ public class ProducedType extends ProducedReference {
      * Is this type a subtype of the given type? 
      */
     public boolean isSubtypeOf(ProducedType type) {
-        return type!=null && resolveAliases()
-        		.isSubtypeOfInternal(type.resolveAliases());
+        if (type==null) {
+            return false;
+        }
+        ProducedType subtype = resolveAliases();
+        ProducedType supertype = type.resolveAliases();
+        SubtypeCache cache = SubtypeCache.current();
+        if (cache==null) {
+            return subtype.isSubtypeOfInternal(supertype);
+        }
+        else {
+            return cache.isSubtype(subtype, supertype);
+        }
     }
     
     /**
@@ -543,8 +567,12 @@ public class ProducedType extends ProducedReference {
     public ProducedType getSupertype(final TypeDeclaration dec) {
         boolean complexType = dec instanceof UnionType 
         		|| dec instanceof IntersectionType;
-        if (!complexType && superTypesCache.containsKey(dec)) {
-            return superTypesCache.get(dec);
+        boolean cacheable = !complexType && dec!=null;
+        if (cacheable) {
+            ProducedType cached = superTypesCache.get(dec);
+            if (cached!=null) {
+                return cached==NO_SUPERTYPE ? null : cached;
+            }
         }
         Criteria c = new Criteria() {
             @Override
@@ -559,7 +587,7 @@ public class ProducedType extends ProducedReference {
             }
         };
         ProducedType superType = getSupertype(c, new ArrayList<ProducedType>());
-        if (!complexType) superTypesCache.put(dec, superType);
+        if (cacheable) superTypesCache.put(dec, superType==null ? NO_SUPERTYPE : superType);
         return superType;
     }
     
@@ -859,9 +887,20 @@ public class ProducedType extends ProducedReference {
      * Get the type arguments as a tuple. 
      */
     public List<ProducedType> getTypeArgumentList() {
-        List<ProducedType> lpt = new ArrayList<ProducedType>();
-        for (TypeParameter tp : getDeclaration().getTypeParameters()) {
-            lpt.add(getTypeArguments().get(tp));
+        List<TypeParameter> tps = getDeclaration().getTypeParameters();
+        Map<TypeParameter, ProducedType> args = getTypeArguments();
+        List<ProducedType> lpt = new ArrayList<ProducedType>(tps.size());
+        if (args instanceof TypeArguments && 
+                ((TypeArguments) args).getTypeParameters()==tps) {
+            //the arguments are stored in the same order
+            for (int i=0; i<tps.size(); i++) {
+                lpt.add(((TypeArguments) args).get(i));
+            }
+        }
+        else {
+            for (TypeParameter tp : tps) {
+                lpt.add(args.get(tp));
+            }
         }
         return lpt;
     }
@@ -1164,7 +1203,7 @@ public class ProducedType extends ProducedReference {
                 type.setQualifyingType(substitute(qt, substitutions));
             }
             type.setTypeArguments(substitutedTypeArguments(pt, substitutions));
-            return type;
+            return TypeInterner.intern(type);
         }
             
     }
@@ -1330,21 +1369,32 @@ public class ProducedType extends ProducedReference {
             //build a union of all the cases
             List<ProducedType> list = new ArrayList<ProducedType>();
             for (ProducedType ct: sdt.getCaseTypes()) {
-                addToUnion(list, ct.substitute(getTypeArguments())
+                list.add(ct.substitute(getTypeArguments())
                         .getUnionOfCases()); //note recursion
             }
-            UnionType ut = new UnionType(unit);
-            ut.setCaseTypes(list);
-            return ut.getType();
+            return unionType(list, unit);
         }
     }
     
+    /**
+     * Set the underlying type of this type.
+     * 
+     * @throws IllegalStateException if this type is
+     *         shared by a {@link TypeInterner} or a
+     *         {@link TupleTypeCache}, in which case the
+     *         underlying type must be set on a copy,
+     *         see {@link #withoutUnderlyingType()}
+     */
     public void setUnderlyingType(String underlyingType) {
+        if (underlyingType==null ? 
+                this.underlyingType==null : 
+                underlyingType.equals(this.underlyingType)) {
+            return;
+        }
+        checkNotCanonical();
         this.underlyingType = underlyingType;
         // if we have a resolvedAliases cache, update it too
-        if (resolvedAliases != null && resolvedAliases != this) {
-            resolvedAliases.setUnderlyingType(underlyingType);
-        }
+        updateResolvedAliases();
     }
     
     public String getUnderlyingType() {
@@ -1453,27 +1503,82 @@ public class ProducedType extends ProducedReference {
         return isRaw;
     }
 
+    /**
+     * Set whether this type is raw.
+     * 
+     * @throws IllegalStateException if this type is
+     *         shared by a {@link TypeInterner} or a
+     *         {@link TupleTypeCache}, in which case it
+     *         must be set on a copy, see 
+     *         {@link #withoutUnderlyingType()}
+     */
     public void setRaw(boolean isRaw) {
+        if (this.isRaw == isRaw) {
+            return;
+        }
+        checkNotCanonical();
         this.isRaw = isRaw;
         // if we have a resolvedAliases cache, update it too
-        if(resolvedAliases != null && resolvedAliases != this)
-            resolvedAliases.setRaw(isRaw);
+        updateResolvedAliases();
+    }
+    
+    private void updateResolvedAliases() {
+        ProducedType resolved = resolvedAliases;
+        if (resolved != null && resolved != this) {
+            if (resolved.canonical) {
+                // a shared type may not be modified, so
+                // resolve again into a copy when needed
+                resolvedAliases = null;
+            }
+            else {
+                resolved.setUnderlyingType(underlyingType);
+                resolved.setRaw(isRaw);
+            }
+        }
+    }
+    
+    private void checkNotCanonical() {
+        if (canonical) {
+            throw new IllegalStateException("type is shared and may not be modified: " + 
+                    this);
+        }
+    }
+    
+    /**
+     * Is this type shared by a {@link TypeInterner} or a
+     * {@link TupleTypeCache}, so that it may not be 
+     * modified?
+     */
+    public boolean isCanonical() {
+        return canonical;
+    }
+    
+    void setCanonical() {
+        canonical = true;
     }
     
     public ProducedType resolveAliases() {
         // cache the resolved version
-        if(resolvedAliases == null){
+        ProducedType resolved = resolvedAliases;
+        if(resolved == null){
             // really compute it
-            resolvedAliases = curriedResolveAliases();
+            resolved = curriedResolveAliases();
             // mark it as resolved so it doesn't get resolved again
-            resolvedAliases.resolvedAliases = resolvedAliases;
-            if(resolvedAliases != this){
-                // inherit whatever underlying type we had
-                resolvedAliases.underlyingType = underlyingType;
-                resolvedAliases.isRaw = isRaw;
+            resolved.resolvedAliases = resolved;
+            if(resolved != this && (underlyingType != null || isRaw)){
+                // inherit whatever underlying type we had,
+                // without touching a type that is shared
+                if (resolved.canonical) {
+                    resolved = resolved.withoutUnderlyingType();
+                    resolved.resolvedAliases = resolved;
+                }
+                resolved.underlyingType = underlyingType;
+                resolved.isRaw = isRaw;
             }
+            // only publish it once it is fully initialized
+            resolvedAliases = resolved;
         }
-        return resolvedAliases;
+        return resolved;
     	//return curriedResolveAliases();
     }
     
@@ -1482,20 +1587,16 @@ public class ProducedType extends ProducedReference {
     	if (d instanceof UnionType) {
     		List<ProducedType> list = new ArrayList<ProducedType>();
     		for (ProducedType pt: d.getCaseTypes()) {
-    			addToUnion(list, pt.resolveAliases());
+    			list.add(pt.resolveAliases());
     		}
-    		UnionType ut = new UnionType(d.getUnit());
-    		ut.setCaseTypes(list);
-    		return ut.getType();
+    		return unionType(list, d.getUnit());
     	}
     	if (d instanceof IntersectionType) {
     		List<ProducedType> list = new ArrayList<ProducedType>();
     		for (ProducedType pt: d.getSatisfiedTypes()) {
-    			addToIntersection(list, pt.resolveAliases(), d.getUnit());
+    			list.add(pt.resolveAliases());
     		}
-    		IntersectionType ut = new IntersectionType(d.getUnit());
-    		ut.setSatisfiedTypes(list);
-    		return ut.canonicalize().getType();
+    		return intersectionType(list, d.getUnit());
     	}
     	List<ProducedType> args = getTypeArgumentList();
     	List<ProducedType> aliasedArgs = new ArrayList<ProducedType>(args.size());
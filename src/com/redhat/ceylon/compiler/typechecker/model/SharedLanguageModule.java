@@ -0,0 +1,75 @@
+package com.redhat.ceylon.compiler.typechecker.model;
+
+/**
+ * The model of the language module, built once by a type
+ * checker, and frozen so that it can be shared by the type
+ * checkers subsequently created in the same process, which
+ * then neither read nor type check the language module
+ * again.
+ *
+ * The frozen model is a copy, which the type checker that
+ * built it goes on modifying independently. Once frozen, no
+ * package may be added to the module, no unit to its
+ * packages, and no member or supertype to its declarations,
+ * so a type checker sharing it may not compile the language
+ * module itself. Type checkers sharing it only read the
+ * model, just as the threads of a parallel type checker do,
+ * and remember their lookups in their own caches.
+ */
+public final class SharedLanguageModule {
+
+    private final Module module;
+
+    private SharedLanguageModule(Module module) {
+        this.module = module;
+    }
+
+    /**
+     * Freeze the given copy of the language module, once
+     * its model is complete, loading any package of it
+     * which was not loaded yet. No type checker may modify
+     * the copy.
+     */
+    public static SharedLanguageModule freeze(Module languageModule) {
+        if (languageModule.getLanguageModule()!=languageModule) {
+            throw new IllegalArgumentException("not the language module: " +
+                    languageModule);
+        }
+        if (!languageModule.isAvailable()) {
+            throw new IllegalStateException("the language module is not available: " +
+                    languageModule);
+        }
+        for (Package pkg: languageModule.getPackages()) {
+            for (Declaration d: pkg.getMembers()) {
+                computeSupertypeDeclarations(d);
+            }
+        }
+        languageModule.freeze();
+        return new SharedLanguageModule(languageModule);
+    }
+
+    private static void computeSupertypeDeclarations(Declaration d) {
+        if (d instanceof TypeDeclaration) {
+            ((TypeDeclaration) d).computeSupertypeDeclarations();
+        }
+        if (d instanceof Generic) {
+            for (TypeParameter tp: ((Generic) d).getTypeParameters()) {
+                tp.computeSupertypeDeclarations();
+            }
+        }
+        for (Declaration member: d.getMembers()) {
+            computeSupertypeDeclarations(member);
+        }
+    }
+
+    public Module getModule() {
+        return module;
+    }
+
+    @Override
+    public String toString() {
+        return "SharedLanguageModule[" + module.getNameAsString() +
+                ", " + module.getVersion() + "]";
+    }
+
+}
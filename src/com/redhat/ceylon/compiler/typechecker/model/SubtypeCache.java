@@ -0,0 +1,108 @@
+package com.redhat.ceylon.compiler.typechecker.model;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the results of {@link ProducedType#isSubtypeOf(ProducedType)}
+ * for pairs of type instances, compared by identity.
+ *
+ * A cache belongs to a type checking session, and is only
+ * used by the threads in which the {@link TypeCaches} of
+ * the session are installed, once the type hierarchy is
+ * complete. It holds at most a fixed number of results,
+ * and must be invalidated whenever a unit is checked
+ * again.
+ */
+public class SubtypeCache {
+
+    private final int maxSize;
+    private final Map<TypePair, Boolean> results;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public SubtypeCache(int maxSize) {
+        this.maxSize = maxSize;
+        results = new ConcurrentHashMap<TypePair, Boolean>();
+    }
+
+    static SubtypeCache current() {
+        TypeCaches caches = TypeCaches.current();
+        return caches==null ? null : caches.getSubtypeCache();
+    }
+
+    boolean isSubtype(ProducedType subtype, ProducedType supertype) {
+        TypePair key = new TypePair(subtype, supertype);
+        Boolean result = results.get(key);
+        if (result!=null) {
+            hits.incrementAndGet();
+            return result;
+        }
+        misses.incrementAndGet();
+        boolean subtypeOf = subtype.isSubtypeOfInternal(supertype);
+        if (results.size()>=maxSize) {
+            results.clear();
+        }
+        results.put(key, subtypeOf);
+        return subtypeOf;
+    }
+
+    /**
+     * Forget every result, for example because units are
+     * about to be checked again.
+     */
+    public void invalidate() {
+        results.clear();
+    }
+
+    public int size() {
+        return results.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "SubtypeCache[size=" + size() +
+                ", hits=" + getHits() +
+                ", misses=" + getMisses() + "]";
+    }
+
+    private static final class TypePair {
+        private final ProducedType subtype;
+        private final ProducedType supertype;
+        private final int hash;
+
+        TypePair(ProducedType subtype, ProducedType supertype) {
+            this.subtype = subtype;
+            this.supertype = supertype;
+            hash = 31*System.identityHashCode(subtype) +
+                    System.identityHashCode(supertype);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof TypePair) {
+                TypePair that = (TypePair) obj;
+                return subtype==that.subtype &&
+                        supertype==that.supertype;
+            }
+            else {
+                return false;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,170 @@
+package com.redhat.ceylon.compiler.typechecker.model;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the tuple types built by
+ * {@link Unit#getTupleType(List, boolean, boolean, int)}
+ * for lists of element types, compared by identity,
+ * including the tuple types of the parameter lists of the
+ * callable types of functions.
+ *
+ * Like the {@link SubtypeCache}, a cache belongs to a type
+ * checking session, is only used by the threads in which
+ * it is installed, once the type hierarchy is complete,
+ * and holds at most a fixed number of tuple types.
+ *
+ * The tuple types it returns are shared, and so, like the
+ * types shared by a {@link TypeInterner}, may not be
+ * modified: their underlying type and rawness must be set
+ * on a copy instead.
+ */
+public class TupleTypeCache {
+
+    private final int maxSize;
+    private final Map<TupleKey, ProducedType> types;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public TupleTypeCache(int maxSize) {
+        this.maxSize = maxSize;
+        types = new ConcurrentHashMap<TupleKey, ProducedType>();
+    }
+
+    static TupleTypeCache current() {
+        TypeCaches caches = TypeCaches.current();
+        return caches==null ? null : caches.getTupleTypeCache();
+    }
+
+    ProducedType get(List<ProducedType> elemTypes, boolean variadic,
+            boolean atLeastOne, int firstDefaulted) {
+        ProducedType type = types.get(new TupleKey(elemTypes,
+                variadic, atLeastOne, firstDefaulted));
+        if (type==null) {
+            misses.incrementAndGet();
+        }
+        else {
+            hits.incrementAndGet();
+        }
+        return type;
+    }
+
+    void put(List<ProducedType> elemTypes, boolean variadic,
+            boolean atLeastOne, int firstDefaulted, ProducedType type) {
+        if (types.size()>=maxSize) {
+            types.clear();
+        }
+        share(type, elemTypes);
+        types.put(new TupleKey(elemTypes, variadic, atLeastOne,
+                firstDefaulted), type);
+    }
+
+    /**
+     * Mark the given tuple type, and the types it is built
+     * of, as shared by every caller, so that they may not
+     * be modified, except for the given element types,
+     * which belong to the callers.
+     */
+    private static void share(ProducedType type, 
+            List<ProducedType> elemTypes) {
+        if (type==null) {
+            return;
+        }
+        for (ProducedType et: elemTypes) {
+            if (et==type) {
+                return;
+            }
+        }
+        type.setCanonical();
+        for (ProducedType arg: type.getTypeArgumentList()) {
+            share(arg, elemTypes);
+        }
+        if (type.getDeclaration() instanceof UnionType) {
+            for (ProducedType ct: type.getDeclaration().getCaseTypes()) {
+                share(ct, elemTypes);
+            }
+        }
+    }
+
+    /**
+     * Forget every tuple type, for example because units
+     * are about to be checked again.
+     */
+    public void invalidate() {
+        types.clear();
+    }
+
+    public int size() {
+        return types.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "TupleTypeCache[size=" + size() +
+                ", hits=" + getHits() +
+                ", misses=" + getMisses() + "]";
+    }
+
+    private static final class TupleKey {
+        private final ProducedType[] elemTypes;
+        private final boolean variadic;
+        private final boolean atLeastOne;
+        private final int firstDefaulted;
+        private final int hash;
+
+        TupleKey(List<ProducedType> elemTypes, boolean variadic,
+                boolean atLeastOne, int firstDefaulted) {
+            this.elemTypes = elemTypes.toArray(new ProducedType[elemTypes.size()]);
+            this.variadic = variadic;
+            this.atLeastOne = atLeastOne;
+            this.firstDefaulted = firstDefaulted;
+            int h = firstDefaulted;
+            h = 2*h + (variadic ? 1 : 0);
+            h = 2*h + (atLeastOne ? 1 : 0);
+            for (ProducedType pt: this.elemTypes) {
+                h = 31*h + System.identityHashCode(pt);
+            }
+            hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof TupleKey) {
+                TupleKey that = (TupleKey) obj;
+                if (hash!=that.hash ||
+                        variadic!=that.variadic ||
+                        atLeastOne!=that.atLeastOne ||
+                        firstDefaulted!=that.firstDefaulted ||
+                        elemTypes.length!=that.elemTypes.length) {
+                    return false;
+                }
+                for (int i=0; i<elemTypes.length; i++) {
+                    if (elemTypes[i]!=that.elemTypes[i]) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            else {
+                return false;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,261 @@
+package com.redhat.ceylon.compiler.typechecker.model;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The type arguments of a produced reference, as an
+ * immutable map from type parameter to argument.
+ *
+ * The arguments to the type parameters of the declaration
+ * are stored by the position of the type parameter,
+ * followed by any arguments to the type parameters of the
+ * declarations which contain it. There are rarely more
+ * than a few, so they are searched linearly instead of
+ * being hashed.
+ */
+final class TypeArguments
+        extends AbstractMap<TypeParameter, ProducedType> {
+
+    //marks a type parameter of the declaration which has
+    //no argument, as opposed to a null argument
+    private static final Object NONE = new Object();
+
+    static final TypeArguments EMPTY =
+            new TypeArguments(Collections.<TypeParameter>emptyList(),
+                    new TypeParameter[0], new Object[0]);
+
+    private final List<TypeParameter> typeParameters;
+    private final TypeParameter[] parameters;
+    private final Object[] arguments;
+    private final int size;
+
+    private TypeArguments(List<TypeParameter> typeParameters,
+            TypeParameter[] parameters, Object[] arguments) {
+        this.typeParameters = typeParameters;
+        this.parameters = parameters;
+        this.arguments = arguments;
+        int size = 0;
+        for (Object arg: arguments) {
+            if (arg!=NONE) {
+                size++;
+            }
+        }
+        this.size = size;
+    }
+
+    private static TypeArguments create(List<TypeParameter> typeParameters,
+            List<TypeParameter> parameters, List<Object> arguments) {
+        if (parameters.isEmpty()) {
+            return EMPTY;
+        }
+        return new TypeArguments(typeParameters,
+                parameters.toArray(new TypeParameter[parameters.size()]),
+                arguments.toArray());
+    }
+
+    /**
+     * The given type arguments, with the arguments to the
+     * given type parameters of a declaration first.
+     */
+    static TypeArguments of(List<TypeParameter> typeParameters,
+            Map<TypeParameter, ProducedType> typeArguments) {
+        if (typeArguments instanceof TypeArguments &&
+                ((TypeArguments) typeArguments).typeParameters==typeParameters) {
+            return (TypeArguments) typeArguments;
+        }
+        int n = typeParameters.size();
+        List<TypeParameter> parameters =
+                new ArrayList<TypeParameter>(n + typeArguments.size());
+        List<Object> arguments =
+                new ArrayList<Object>(n + typeArguments.size());
+        for (TypeParameter tp: typeParameters) {
+            parameters.add(tp);
+            arguments.add(typeArguments.containsKey(tp) ?
+                    typeArguments.get(tp) : NONE);
+        }
+        for (Map.Entry<TypeParameter, ProducedType> e:
+                typeArguments.entrySet()) {
+            if (!typeParameters.contains(e.getKey())) {
+                parameters.add(e.getKey());
+                arguments.add(e.getValue());
+            }
+        }
+        return create(typeParameters, parameters, arguments);
+    }
+
+    /**
+     * The given list of type arguments to the given type
+     * parameters of a declaration, together with the type
+     * arguments of the given receiving type and of its
+     * qualifying types.
+     */
+    static TypeArguments of(List<TypeParameter> typeParameters,
+            List<ProducedType> typeArguments, ProducedType receivingType) {
+        int n = typeParameters.size();
+        List<TypeParameter> parameters = new ArrayList<TypeParameter>(n);
+        List<Object> arguments = new ArrayList<Object>(n);
+        for (TypeParameter tp: typeParameters) {
+            parameters.add(tp);
+            arguments.add(NONE);
+        }
+        //make sure we collect all type arguments
+        //from the whole qualified type!
+        for (ProducedType dt = receivingType; dt!=null;
+                dt = dt.getQualifyingType()) {
+            for (Map.Entry<TypeParameter, ProducedType> e:
+                    dt.getTypeArguments().entrySet()) {
+                int i = parameters.indexOf(e.getKey());
+                if (i<0) {
+                    parameters.add(e.getKey());
+                    arguments.add(e.getValue());
+                }
+                else {
+                    arguments.set(i, e.getValue());
+                }
+            }
+        }
+        for (int i=0; i<n && i<typeArguments.size(); i++) {
+            arguments.set(i, typeArguments.get(i));
+        }
+        return create(typeParameters, parameters, arguments);
+    }
+
+    /**
+     * These type arguments, with the default arguments of
+     * the type parameters of the declaration which have no
+     * argument.
+     */
+    TypeArguments withDefaults() {
+        Object[] args = null;
+        for (int i=0; i<typeParameters.size(); i++) {
+            if (arguments[i]==NONE) {
+                ProducedType dta = parameters[i].getDefaultTypeArgument();
+                if (dta!=null) {
+                    if (args==null) {
+                        args = arguments.clone();
+                    }
+                    args[i] = dta;
+                }
+            }
+        }
+        return args==null ? this :
+                new TypeArguments(typeParameters, parameters, args);
+    }
+
+    /**
+     * Does every type parameter of the declaration have
+     * an argument?
+     */
+    boolean isComplete() {
+        for (int i=0; i<typeParameters.size(); i++) {
+            if (arguments[i]==NONE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The type parameters of the declaration, in the order
+     * of their arguments.
+     */
+    List<TypeParameter> getTypeParameters() {
+        return typeParameters;
+    }
+
+    /**
+     * The argument to the type parameter of the declaration
+     * at the given position.
+     */
+    ProducedType get(int index) {
+        Object arg = arguments[index];
+        return arg==NONE ? null : (ProducedType) arg;
+    }
+
+    private int indexOf(Object key) {
+        for (int i=0; i<parameters.length; i++) {
+            if (parameters[i]==key) {
+                return i;
+            }
+        }
+        if (key!=null) {
+            for (int i=0; i<parameters.length; i++) {
+                if (key.equals(parameters[i])) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public ProducedType get(Object key) {
+        int i = indexOf(key);
+        return i<0 ? null : get(i);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int i = indexOf(key);
+        return i>=0 && arguments[i]!=NONE;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size==0;
+    }
+
+    @Override
+    public Set<Map.Entry<TypeParameter, ProducedType>> entrySet() {
+        return new AbstractSet<Map.Entry<TypeParameter, ProducedType>>() {
+            @Override
+            public int size() {
+                return size;
+            }
+            @Override
+            public Iterator<Map.Entry<TypeParameter, ProducedType>> iterator() {
+                return new Iterator<Map.Entry<TypeParameter, ProducedType>>() {
+                    private int next = skip(0);
+                    private int skip(int i) {
+                        while (i<arguments.length && arguments[i]==NONE) {
+                            i++;
+                        }
+                        return i;
+                    }
+                    @Override
+                    public boolean hasNext() {
+                        return next<arguments.length;
+                    }
+                    @Override
+                    public Map.Entry<TypeParameter, ProducedType> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        int i = next;
+                        next = skip(i+1);
+                        return new SimpleImmutableEntry<TypeParameter, ProducedType>(
+                                parameters[i], (ProducedType) arguments[i]);
+                    }
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+}
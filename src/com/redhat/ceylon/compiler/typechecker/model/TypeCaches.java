@@ -0,0 +1,122 @@
+package com.redhat.ceylon.compiler.typechecker.model;
+
+/**
+ * The caches of a type checking session: its
+ * {@link SubtypeCache}, {@link TypeInterner},
+ * {@link MemberLookupCache} and {@link TupleTypeCache},
+ * any of which may be disabled.
+ *
+ * They are installed together in the threads which check
+ * the units of the session, once the type hierarchy is
+ * complete, and suspended together while it is not, for
+ * example while case types are hidden or packages are
+ * loaded.
+ */
+public class TypeCaches {
+
+    private static final ThreadLocal<TypeCaches> current =
+            new ThreadLocal<TypeCaches>();
+
+    private final SubtypeCache subtypeCache;
+    private final TypeInterner typeInterner;
+    private final MemberLookupCache memberLookupCache;
+    private final TupleTypeCache tupleTypeCache;
+
+    /**
+     * @param subtypeCache the subtype cache, or null
+     * @param typeInterner the type interner, or null
+     * @param memberLookupCache the member lookup cache,
+     *                          or null
+     * @param tupleTypeCache the tuple type cache, or null
+     */
+    public TypeCaches(SubtypeCache subtypeCache,
+            TypeInterner typeInterner,
+            MemberLookupCache memberLookupCache,
+            TupleTypeCache tupleTypeCache) {
+        this.subtypeCache = subtypeCache;
+        this.typeInterner = typeInterner;
+        this.memberLookupCache = memberLookupCache;
+        this.tupleTypeCache = tupleTypeCache;
+    }
+
+    /**
+     * Use these caches for the types checked by the current
+     * thread.
+     *
+     * @return the caches previously used by the thread, to
+     *         be passed to {@link #restore(TypeCaches)}
+     */
+    public TypeCaches install() {
+        TypeCaches previous = current.get();
+        current.set(this);
+        return previous;
+    }
+
+    /**
+     * Stop using any cache for the types checked by the
+     * current thread.
+     *
+     * @return the caches previously used by the thread, to
+     *         be passed to {@link #restore(TypeCaches)}
+     */
+    public static TypeCaches suspend() {
+        TypeCaches previous = current.get();
+        current.remove();
+        return previous;
+    }
+
+    public static void restore(TypeCaches previous) {
+        if (previous==null) {
+            current.remove();
+        }
+        else {
+            current.set(previous);
+        }
+    }
+
+    static TypeCaches current() {
+        return current.get();
+    }
+
+    /**
+     * Forget everything the caches remember, for example
+     * because units are about to be checked again.
+     */
+    public void invalidate() {
+        if (subtypeCache!=null) {
+            subtypeCache.invalidate();
+        }
+        if (typeInterner!=null) {
+            typeInterner.invalidate();
+        }
+        if (memberLookupCache!=null) {
+            memberLookupCache.invalidate();
+        }
+        if (tupleTypeCache!=null) {
+            tupleTypeCache.invalidate();
+        }
+    }
+
+    public SubtypeCache getSubtypeCache() {
+        return subtypeCache;
+    }
+
+    public TypeInterner getTypeInterner() {
+        return typeInterner;
+    }
+
+    public MemberLookupCache getMemberLookupCache() {
+        return memberLookupCache;
+    }
+
+    public TupleTypeCache getTupleTypeCache() {
+        return tupleTypeCache;
+    }
+
+    @Override
+    public String toString() {
+        return "TypeCaches[" + subtypeCache + ", " + typeInterner +
+                ", " + memberLookupCache + ", " + tupleTypeCache + "]";
+    }
+
+}
@@ -8,10 +8,15 @@ import static com.redhat.ceylon.compiler.typechecker.model.Util.isResolvable;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 public abstract class TypeDeclaration extends Declaration 
         implements ImportableScope, Generic, Cloneable {
@@ -19,13 +24,30 @@ public abstract class TypeDeclaration extends Declaration
     private ProducedType extendedType;
     private List<ProducedType> satisfiedTypes = new ArrayList<ProducedType>();
     private List<ProducedType> caseTypes = null;
+    private Thread caseTypesHiddenFrom;
+    private TypeCaches typeCachesWhileHidden;
     private List<TypeParameter> typeParameters = Collections.emptyList();
     private ProducedType selfType;
+    private volatile MemberLookups memberLookups;
+    private volatile SupertypeDeclarations supertypeDeclarations;
+    //count the changes to the supertypes and members of
+    //this declaration, which invalidate what is remembered
+    //on it and on its subtypes
+    private volatile long supertypeChanges;
+    private volatile long memberChanges;
+    
+    private static final AtomicLongFieldUpdater<TypeDeclaration> SUPERTYPE_CHANGES = 
+            AtomicLongFieldUpdater.newUpdater(TypeDeclaration.class, "supertypeChanges");
+    private static final AtomicLongFieldUpdater<TypeDeclaration> MEMBER_CHANGES = 
+            AtomicLongFieldUpdater.newUpdater(TypeDeclaration.class, "memberChanges");
     
     @Override
     protected TypeDeclaration clone() {
         try {
-            return (TypeDeclaration) super.clone();
+            TypeDeclaration clone = (TypeDeclaration) super.clone();
+            clone.memberLookups = null;
+            clone.supertypeDeclarations = null;
+            return clone;
         } 
         catch (CloneNotSupportedException e) {
             throw new RuntimeException(e);
@@ -70,6 +92,7 @@ public abstract class TypeDeclaration extends Declaration
 
     public void setExtendedType(ProducedType extendedType) {
         this.extendedType = extendedType;
+        supertypesChanged();
     }
 
     public List<TypeDeclaration> getSatisfiedTypeDeclarations() {
@@ -86,6 +109,7 @@ public abstract class TypeDeclaration extends Declaration
 
     public void setSatisfiedTypes(List<ProducedType> satisfiedTypes) {
         this.satisfiedTypes = satisfiedTypes;
+        supertypesChanged();
     }
 
     public List<TypeDeclaration> getCaseTypeDeclarations() {
@@ -103,11 +127,77 @@ public abstract class TypeDeclaration extends Declaration
     }
 
     public List<ProducedType> getCaseTypes() {
+        if (caseTypesHiddenFrom!=null && 
+                caseTypesHiddenFrom==Thread.currentThread()) {
+            return null;
+        }
         return caseTypes;
     }
+    
+    /**
+     * Temporarily hide the case types of this type from
+     * the current thread only, so that other units which
+     * are being type checked concurrently still see them.
+     */
+    public void hideCaseTypes() {
+        caseTypesHiddenFrom = Thread.currentThread();
+        //subtype checks made meanwhile don't hold for
+        //the real type hierarchy, so don't remember them,
+        //nor share the types they are cached on
+        typeCachesWhileHidden = TypeCaches.suspend();
+    }
+    
+    public void unhideCaseTypes() {
+        caseTypesHiddenFrom = null;
+        TypeCaches.restore(typeCachesWhileHidden);
+        typeCachesWhileHidden = null;
+    }
 
     public void setCaseTypes(List<ProducedType> caseTypes) {
         this.caseTypes = caseTypes;
+        supertypesChanged();
+    }
+    
+    //called after the change, so that whatever is computed
+    //from the model as it was before is dropped
+    private void supertypesChanged() {
+        checkNotFrozen();
+        SUPERTYPE_CHANGES.incrementAndGet(this);
+    }
+    
+    void membersChanged() {
+        checkNotFrozen();
+        MEMBER_CHANGES.incrementAndGet(this);
+    }
+    
+    private void checkNotFrozen() {
+        if (isFrozen()) {
+            throw new UnsupportedOperationException("a declaration of a shared module may not change: " + 
+                    getName());
+        }
+    }
+    
+    /**
+     * Is this a declaration of a module shared by type
+     * checkers, which only read it, and don't remember
+     * anything on it?
+     * 
+     * @see SharedLanguageModule
+     */
+    private boolean isFrozen() {
+        if (this instanceof UnionType || 
+                this instanceof IntersectionType ||
+                this instanceof UnknownType) {
+            //these declarations are created per type, in
+            //the unit of any of the types they are formed
+            //from, and belong to the type checker creating
+            //them
+            return false;
+        }
+        Unit unit = getUnit();
+        Package pkg = unit==null ? null : unit.getPackage();
+        Module module = pkg==null ? null : pkg.getModule();
+        return module!=null && module.isFrozen();
     }
     
     @Override
@@ -139,7 +229,7 @@ public abstract class TypeDeclaration extends Declaration
         pt.setDeclaration(this);
         pt.setQualifyingType(qualifyingType);
         pt.setTypeArguments(arguments(this, qualifyingType, typeArguments));
-        return pt;
+        return TypeInterner.intern(pt);
     }
     
     /**
@@ -160,23 +250,23 @@ public abstract class TypeDeclaration extends Declaration
         }
         pt.setDeclaration(this);
         //each type parameter is its own argument
-        Map<TypeParameter, ProducedType> map = new HashMap<TypeParameter, ProducedType>();
-        for (TypeParameter p: getTypeParameters()) {
+        List<TypeParameter> tps = getTypeParameters();
+        List<ProducedType> args = new ArrayList<ProducedType>(tps.size());
+        for (TypeParameter p: tps) {
             ProducedType pta = new ProducedType();
             pta.setDeclaration(p);
-            map.put(p, pta);
+            args.add(TypeInterner.intern(pta));
         }
-        pt.setTypeArguments(map);
-        return pt;
+        pt.setTypeArguments(TypeArguments.of(tps, args, null));
+        return TypeInterner.intern(pt);
     }
 
     private List<Declaration> getMembers(String name, 
-            List<TypeDeclaration> visited) {
-        if (visited.contains(this)) {
+            Set<TypeDeclaration> visited) {
+        if (!visited.add(this)) {
             return Collections.emptyList();
         }
         else {
-            visited.add(this);
             List<Declaration> members = new ArrayList<Declaration>();
             for (Declaration d: getMembers()) {
                 if (d.getName()!=null && d.getName().equals(name)) {
@@ -197,11 +287,11 @@ public abstract class TypeDeclaration extends Declaration
      * refined by a supertype.
      */
     public List<Declaration> getInheritedMembers(String name) {
-        return getInheritedMembers(name, new ArrayList<TypeDeclaration>());
+        return getInheritedMembers(name, new HashSet<TypeDeclaration>());
     }
     
     private List<Declaration> getInheritedMembers(String name, 
-            List<TypeDeclaration> visited) {
+            Set<TypeDeclaration> visited) {
         List<Declaration> members = new ArrayList<Declaration>();
         for (TypeDeclaration t: getSatisfiedTypeDeclarations()) {
             //if ( !(t instanceof TypeParameter) ) { //don't look for members in a type parameter with a self-referential lower bound
@@ -232,29 +322,11 @@ public abstract class TypeDeclaration extends Declaration
      * member of this type?
      */
     public boolean isMember(Declaration dec) {
-        return isMember(dec, new ArrayList<TypeDeclaration>());
-    }
-    
-    private boolean isMember(Declaration dec, 
-            List<TypeDeclaration> visited) {
-        if (visited.contains(this)) {
-            return false;
-        }
-        visited.add(this);
-        for (Declaration member: getMembers()) {
-            if (dec.equals(member)) {
-                return true;
-            }
-        }
-        for (TypeDeclaration t: getSatisfiedTypeDeclarations()) {
-            if (t.isMember(dec, visited)) {
-                return true;
-            }
-        }
-        TypeDeclaration et = getExtendedTypeDeclaration();
-        if (et!=null) {
-            if (et.isMember(dec, visited)) {
-                return true;
+        for (TypeDeclaration t: getSupertypeDeclarations()) {
+            for (Declaration member: t.getMembers()) {
+                if (dec.equals(member)) {
+                    return true;
+                }
             }
         }
         return false;
@@ -264,31 +336,113 @@ public abstract class TypeDeclaration extends Declaration
      * Does the given declaration inherit the given type?
      */
     public boolean inherits(TypeDeclaration dec) {
-        return inherits(dec, new ArrayList<TypeDeclaration>());
+        //only a class or interface equals a class or
+        //interface
+        return dec instanceof ClassOrInterface &&
+                getSupertypeDeclarations().contains(dec);
     }
     
-    private boolean inherits(TypeDeclaration dec, List<TypeDeclaration> visited) {
-        if (visited.contains(this)) {
-            return false;
+    /**
+     * This declaration, followed by the declarations of 
+     * its satisfied and extended types, and of theirs, in
+     * the order they are searched for members. Computed
+     * once for as long as no supertype of any of these
+     * declarations changes, or, for the declarations of a 
+     * shared module, once before the module is frozen.
+     */
+    private Set<TypeDeclaration> getSupertypeDeclarations() {
+        return getSupertypes().declarations;
+    }
+    
+    private SupertypeDeclarations getSupertypes() {
+        SupertypeDeclarations sds = supertypeDeclarations;
+        if (sds==null || sds.supertypesChanged()) {
+            Set<TypeDeclaration> declarations = 
+                    new LinkedHashSet<TypeDeclaration>();
+            Map<TypeDeclaration, Long> dependencies = 
+                    new LinkedHashMap<TypeDeclaration, Long>();
+            addSupertypeDeclarations(declarations, dependencies);
+            sds = new SupertypeDeclarations(
+                    Collections.unmodifiableSet(declarations), 
+                    dependencies);
+            if (!isFrozen()) {
+                supertypeDeclarations = sds;
+            }
+        }
+        return sds;
+    }
+    
+    /**
+     * Compute the supertype declarations of this declaration
+     * of a module about to be frozen, so that the type 
+     * checkers sharing it never write them.
+     */
+    void computeSupertypeDeclarations() {
+        getSupertypes();
+    }
+    
+    /**
+     * Add this declaration and its supertype declarations, 
+     * or, if the given set is null, only the declarations 
+     * that the supertypes of a union depend on, along with 
+     * the number of changes to their supertypes, counted 
+     * before the supertypes are read.
+     */
+    private void addSupertypeDeclarations(Set<TypeDeclaration> declarations,
+            Map<TypeDeclaration, Long> dependencies) {
+        boolean inherited = declarations!=null && declarations.add(this);
+        if (!dependencies.containsKey(this)) {
+            dependencies.put(this, supertypeChanges);
         }
-        visited.add(this);
-        if (this instanceof ClassOrInterface && 
-        	dec instanceof ClassOrInterface && 
-        		equals(dec)) {
-        	return true;
+        else if (!inherited) {
+            return;
         }
         for (TypeDeclaration t: getSatisfiedTypeDeclarations()) {
-            if (t.inherits(dec, visited)) {
-                return true;
-            }
+            t.addSupertypeDeclarations(inherited ? declarations : null, 
+                    dependencies);
         }
         TypeDeclaration et = getExtendedTypeDeclaration();
         if (et!=null) {
-            if (et.inherits(dec, visited)) {
-                return true;
+            et.addSupertypeDeclarations(inherited ? declarations : null, 
+                    dependencies);
+        }
+        if (this instanceof UnionType) {
+            List<TypeDeclaration> cases = getCaseTypeDeclarations();
+            if (cases!=null) {
+                for (TypeDeclaration t: cases) {
+                    t.addSupertypeDeclarations(null, dependencies);
+                }
             }
         }
-        return false;
+    }
+    
+    private static final class SupertypeDeclarations {
+        private final Set<TypeDeclaration> declarations;
+        //the declarations whose supertypes and members
+        //the supertypes and members of this declaration
+        //depend on
+        private final TypeDeclaration[] dependencies;
+        private final long[] supertypeChanges;
+        private SupertypeDeclarations(Set<TypeDeclaration> declarations, 
+                Map<TypeDeclaration, Long> dependencies) {
+            this.declarations = declarations;
+            this.dependencies = new TypeDeclaration[dependencies.size()];
+            this.supertypeChanges = new long[dependencies.size()];
+            int i=0;
+            for (Map.Entry<TypeDeclaration, Long> e: dependencies.entrySet()) {
+                this.dependencies[i] = e.getKey();
+                this.supertypeChanges[i] = e.getValue();
+                i++;
+            }
+        }
+        private boolean supertypesChanged() {
+            for (int i=0; i<dependencies.length; i++) {
+                if (dependencies[i].supertypeChanges!=supertypeChanges[i]) {
+                    return true;
+                }
+            }
+            return false;
+        }
     }
     
     /**
@@ -299,16 +453,15 @@ public abstract class TypeDeclaration extends Declaration
     public Declaration getRefinedMember(String name, 
             List<ProducedType> signature, boolean ellipsis) {
         return getRefinedMember(name, signature, ellipsis,
-                new ArrayList<TypeDeclaration>());
+                new HashSet<TypeDeclaration>());
     }
 
     private Declaration getRefinedMember(String name, 
-            List<ProducedType> signature, boolean ellipsis, List<TypeDeclaration> visited) {
-        if (visited.contains(this)) {
+            List<ProducedType> signature, boolean ellipsis, Set<TypeDeclaration> visited) {
+        if (!visited.add(this)) {
             return null;
         }
         else {
-            visited.add(this);
             TypeDeclaration et = getExtendedTypeDeclaration();
             if (et!=null) {
                 Declaration ed = et.getRefinedMember(name, signature, ellipsis, visited);
@@ -378,6 +531,26 @@ public abstract class TypeDeclaration extends Declaration
 
     private SupertypeDeclaration getMemberInternal(String name,
             List<ProducedType> signature, boolean variadic) {
+        MemberLookups lookups = getMemberLookups();
+        if (lookups==null) {
+            return findMember(name, signature, variadic);
+        }
+        MemberLookupCache.Key key = 
+                new MemberLookupCache.Key(name, signature, variadic);
+        SupertypeDeclaration sd = lookups.members.get(key);
+        if (sd==null) {
+            lookups.cache.miss();
+            sd = findMember(name, signature, variadic);
+            lookups.remember(lookups.members, key, sd);
+        }
+        else {
+            lookups.cache.hit();
+        }
+        return sd;
+    }
+    
+    private SupertypeDeclaration findMember(String name,
+            List<ProducedType> signature, boolean variadic) {
         //first search for the member in the local
         //scope, including non-shared declarations
         Declaration d = getDirectMember(name, signature, variadic);
@@ -499,6 +672,84 @@ public abstract class TypeDeclaration extends Declaration
         return getType().getSupertype(new Criteria())!=null;
     }
     
+    /**
+     * The member lookups remembered on this declaration
+     * for the cache installed in the current thread, if
+     * any, as long as the cache was not invalidated, and
+     * no member or supertype of the declarations they 
+     * depend on changed since they were looked up. Those
+     * of a declaration of a shared module are remembered
+     * by the cache instead, since each type checker sharing
+     * the module has a cache of its own.
+     */
+    private MemberLookups getMemberLookups() {
+        MemberLookupCache cache = MemberLookupCache.current();
+        if (cache==null || 
+                //these declarations are created per type
+                this instanceof UnionType || 
+                this instanceof IntersectionType ||
+                this instanceof UnknownType) {
+            return null;
+        }
+        long invalidations = cache.getInvalidations();
+        SupertypeDeclarations supertypes = getSupertypes();
+        boolean frozen = isFrozen();
+        MemberLookups lookups = frozen ? 
+                cache.getLookups(this) : memberLookups;
+        if (lookups==null || lookups.cache!=cache || 
+                lookups.invalidations!=invalidations ||
+                lookups.supertypes!=supertypes ||
+                lookups.membersChanged()) {
+            lookups = new MemberLookups(cache, invalidations, supertypes);
+            if (frozen) {
+                cache.setLookups(this, lookups);
+            }
+            else {
+                memberLookups = lookups;
+            }
+        }
+        return lookups;
+    }
+    
+    static final class MemberLookups {
+        private final MemberLookupCache cache;
+        private final long invalidations;
+        private final SupertypeDeclarations supertypes;
+        private final long[] memberChanges;
+        private final Map<MemberLookupCache.Key, SupertypeDeclaration> members = 
+                new ConcurrentHashMap<MemberLookupCache.Key, SupertypeDeclaration>();
+        private final Map<MemberLookupCache.Key, SupertypeDeclaration> supertypeMembers = 
+                new ConcurrentHashMap<MemberLookupCache.Key, SupertypeDeclaration>();
+        private MemberLookups(MemberLookupCache cache, long invalidations,
+                SupertypeDeclarations supertypes) {
+            this.cache = cache;
+            this.invalidations = invalidations;
+            this.supertypes = supertypes;
+            //counted before looking up any member, so that 
+            //a lookup made while a member is added is dropped
+            TypeDeclaration[] dependencies = supertypes.dependencies;
+            memberChanges = new long[dependencies.length];
+            for (int i=0; i<dependencies.length; i++) {
+                memberChanges[i] = dependencies[i].memberChanges;
+            }
+        }
+        private boolean membersChanged() {
+            TypeDeclaration[] dependencies = supertypes.dependencies;
+            for (int i=0; i<dependencies.length; i++) {
+                if (dependencies[i].memberChanges!=memberChanges[i]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        private void remember(Map<MemberLookupCache.Key, SupertypeDeclaration> lookups,
+                MemberLookupCache.Key key, SupertypeDeclaration sd) {
+            if (lookups.size()<cache.getMaxSizePerDeclaration()) {
+                lookups.put(key, sd);
+            }
+        }
+    }
+    
     private static class SupertypeDeclaration {
         private Declaration member;
         private boolean ambiguous;
@@ -519,7 +770,26 @@ public abstract class TypeDeclaration extends Declaration
      * member with the given name.
      * @param signature 
      */
-    private SupertypeDeclaration getSupertypeDeclaration(final String name, final List<ProducedType> signature, final boolean variadic) {
+    private SupertypeDeclaration getSupertypeDeclaration(String name, List<ProducedType> signature, boolean variadic) {
+        MemberLookups lookups = getMemberLookups();
+        if (lookups==null) {
+            return findSupertypeDeclaration(name, signature, variadic);
+        }
+        MemberLookupCache.Key key = 
+                new MemberLookupCache.Key(name, signature, variadic);
+        SupertypeDeclaration sd = lookups.supertypeMembers.get(key);
+        if (sd==null) {
+            lookups.cache.miss();
+            sd = findSupertypeDeclaration(name, signature, variadic);
+            lookups.remember(lookups.supertypeMembers, key, sd);
+        }
+        else {
+            lookups.cache.hit();
+        }
+        return sd;
+    }
+    
+    private SupertypeDeclaration findSupertypeDeclaration(final String name, final List<ProducedType> signature, final boolean variadic) {
         class Criteria implements ProducedType.Criteria {
             @Override
             public boolean satisfies(TypeDeclaration type) {
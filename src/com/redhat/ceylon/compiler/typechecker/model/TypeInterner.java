@@ -0,0 +1,161 @@
+package com.redhat.ceylon.compiler.typechecker.model;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Canonicalizes the produced types created while it is
+ * installed, so that types with the same declaration,
+ * qualifying type and type arguments share one instance,
+ * along with its supertype and alias caches.
+ *
+ * Types are compared by the identity of their parts, so
+ * that nested types are shared too, as long as they were
+ * created while the interner was installed. Like the
+ * {@link SubtypeCache}, an interner belongs to a type
+ * checking session and must only be installed once the
+ * type hierarchy is complete. It holds at most a fixed
+ * number of types.
+ *
+ * The types it shares may not be modified: their
+ * {@link ProducedType#setUnderlyingType(String) underlying
+ * type} and {@link ProducedType#setRaw(boolean) rawness}
+ * must be set on a copy instead.
+ */
+public class TypeInterner {
+
+    private final int maxSize;
+    private final ConcurrentMap<TypeKey, ProducedType> types;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public TypeInterner(int maxSize) {
+        this.maxSize = maxSize;
+        types = new ConcurrentHashMap<TypeKey, ProducedType>();
+    }
+
+    /**
+     * Return the canonical instance of the given, fully
+     * initialized, type, if an interner is installed in
+     * the current thread, or the type itself otherwise.
+     */
+    static ProducedType intern(ProducedType type) {
+        TypeCaches caches = TypeCaches.current();
+        TypeInterner interner = caches==null ? null : caches.getTypeInterner();
+        return interner==null ? type : interner.canonical(type);
+    }
+
+    private ProducedType canonical(ProducedType type) {
+        TypeDeclaration dec = type.getDeclaration();
+        if (dec==null ||
+                //these declarations are created per
+                //type, so such types are never shared
+                dec instanceof UnionType ||
+                dec instanceof IntersectionType ||
+                dec instanceof NothingType ||
+                dec instanceof UnknownType ||
+                //an alias may resolve to a fresh unknown 
+                //type, which must not become shared
+                dec.isAlias() ||
+                //the backend may set these per instance
+                type.getUnderlyingType()!=null ||
+                type.isRaw()) {
+            return type;
+        }
+        TypeKey key = new TypeKey(type);
+        ProducedType existing = types.get(key);
+        if (existing!=null) {
+            hits.incrementAndGet();
+            return existing;
+        }
+        misses.incrementAndGet();
+        if (types.size()>=maxSize) {
+            types.clear();
+        }
+        //from now on, the type may not be modified,
+        //since every holder of it would see the change
+        type.setCanonical();
+        existing = types.putIfAbsent(key, type);
+        return existing==null ? type : existing;
+    }
+
+    /**
+     * Forget every type, for example because units are
+     * about to be checked again.
+     */
+    public void invalidate() {
+        types.clear();
+    }
+
+    public int size() {
+        return types.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "TypeInterner[size=" + size() +
+                ", hits=" + getHits() +
+                ", misses=" + getMisses() + "]";
+    }
+
+    private static final class TypeKey {
+        private final TypeDeclaration declaration;
+        private final ProducedType qualifyingType;
+        private final Map<TypeParameter, ProducedType> typeArguments;
+        private final int hash;
+
+        TypeKey(ProducedType type) {
+            declaration = type.getDeclaration();
+            qualifyingType = type.getQualifyingType();
+            typeArguments = type.getTypeArguments();
+            int h = System.identityHashCode(declaration);
+            h = 31*h + System.identityHashCode(qualifyingType);
+            for (Map.Entry<TypeParameter, ProducedType> e:
+                    typeArguments.entrySet()) {
+                h += e.getKey().hashCode() ^
+                        System.identityHashCode(e.getValue());
+            }
+            hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof TypeKey) {
+                TypeKey that = (TypeKey) obj;
+                if (declaration!=that.declaration ||
+                        qualifyingType!=that.qualifyingType ||
+                        typeArguments.size()!=that.typeArguments.size()) {
+                    return false;
+                }
+                for (Map.Entry<TypeParameter, ProducedType> e:
+                        typeArguments.entrySet()) {
+                    ProducedType arg = e.getValue();
+                    if (arg!=that.typeArguments.get(e.getKey()) ||
+                            arg==null && !that.typeArguments.containsKey(e.getKey())) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            else {
+                return false;
+            }
+        }
+    }
+
+}
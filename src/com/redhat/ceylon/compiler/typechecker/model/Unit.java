@@ -7,11 +7,13 @@ import static com.redhat.ceylon.compiler.typechecker.model.Util.producedType;
 import static com.redhat.ceylon.compiler.typechecker.model.Util.unionType;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.redhat.ceylon.compiler.typechecker.tree.Tree.Identifier;
 
@@ -24,7 +26,10 @@ public class Unit {
 	private List<ImportList> importLists = new ArrayList<ImportList>();
 	private Set<Identifier> unresolvedReferences = new HashSet<Identifier>();
 	private Set<Declaration> duplicateDeclarations = new HashSet<Declaration>();
-    private final Set<String> dependentsOf = new HashSet<String>();
+    //dependents checked concurrently record themselves
+    //at the same time
+    private final Set<String> dependentsOf = 
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
     private String fullPath;
     private String relativePath;
     
@@ -37,7 +42,8 @@ public class Unit {
     }
 
     /**
-     * @return the dependentsOf
+     * @return the relative paths of the units which import
+     *         or reference declarations of this unit
      */
     public Set<String> getDependentsOf() {
         return dependentsOf;
@@ -69,6 +75,9 @@ public class Unit {
         synchronized (declarations) {
             declarations.add(declaration);
         }
+        if (pkg!=null) {
+            pkg.declarationAdded(this, declaration);
+        }
     }
 
     public String getFilename() {
@@ -196,12 +205,7 @@ public class Unit {
             if ("Nothing".equals(name)) {
                 return getNothingDeclaration();
             }
-            for (Package languageScope : languageModule.getPackages() ) {
-                Declaration d = languageScope.getMember(name, null, false);
-                if (d != null && d.isShared()) {
-                    return d;
-                }
-            }
+            return languageModule.getSharedMember(name);
         }
         return null;
     }
@@ -413,6 +417,20 @@ public class Unit {
     
     public ProducedType getTupleType(List<ProducedType> elemTypes, 
     		boolean variadic, boolean atLeastOne, int firstDefaulted) {
+    	TupleTypeCache cache = TupleTypeCache.current();
+    	if (cache==null) {
+    		return buildTupleType(elemTypes, variadic, atLeastOne, firstDefaulted);
+    	}
+    	ProducedType result = cache.get(elemTypes, variadic, atLeastOne, firstDefaulted);
+    	if (result==null) {
+    		result = buildTupleType(elemTypes, variadic, atLeastOne, firstDefaulted);
+    		cache.put(elemTypes, variadic, atLeastOne, firstDefaulted, result);
+    	}
+    	return result;
+    }
+    
+    private ProducedType buildTupleType(List<ProducedType> elemTypes, 
+    		boolean variadic, boolean atLeastOne, int firstDefaulted) {
     	ProducedType result = getEmptyDeclaration().getType();
     	ProducedType union = getNothingDeclaration().getType();
     	int last = elemTypes.size()-1;
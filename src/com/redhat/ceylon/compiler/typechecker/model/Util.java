@@ -4,6 +4,7 @@ import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -311,18 +312,13 @@ public class Util {
      */
     static Map<TypeParameter,ProducedType> arguments(Declaration declaration, 
             ProducedType receivingType, List<ProducedType> typeArguments) {
-        Map<TypeParameter, ProducedType> map = getArgumentsOfOuterType(receivingType);
-        //now turn the type argument tuple into a
-        //map from type parameter to argument
-        if (declaration instanceof Generic) {
-            Generic g = (Generic) declaration;
-            for (int i=0; i<g.getTypeParameters().size(); i++) {
-                if (typeArguments.size()>i) {
-                    map.put(g.getTypeParameters().get(i), typeArguments.get(i));
-                }
-            }
-        }
-        return map;
+        //turn the type argument tuple into a map from
+        //type parameter to argument, along with the
+        //arguments of the receiving type
+        List<TypeParameter> typeParameters = declaration instanceof Generic ?
+                ((Generic) declaration).getTypeParameters() :
+                Collections.<TypeParameter>emptyList();
+        return TypeArguments.of(typeParameters, typeArguments, receivingType);
     }
 
     public static Map<TypeParameter, ProducedType> getArgumentsOfOuterType(
@@ -364,6 +360,9 @@ public class Util {
             boolean add=true;
             for (Iterator<ProducedType> iter = list.iterator(); iter.hasNext();) {
                 ProducedType t = iter.next();
+                if (!related(pt, t)) {
+                    continue;
+                }
                 if (pt.isSubtypeOf(t)) {
                     add=false;
                     break;
@@ -430,11 +429,12 @@ public class Util {
             if (add) {
                 for (Iterator<ProducedType> iter = list.iterator(); iter.hasNext();) {
                     ProducedType t = iter.next();
-                    if (pt.isSupertypeOf(t)) {
+                    boolean related = related(pt, t);
+                    if (related && pt.isSupertypeOf(t)) {
                         add = false;
                         break;
                     }
-                    else if (pt.isSubtypeOf(t)) {
+                    else if (related && pt.isSubtypeOf(t)) {
                         iter.remove();
                     }
                     else if (haveUninhabitableIntersection(pt,t, unit)) {
@@ -470,6 +470,22 @@ public class Util {
         }
     }
 
+    /**
+     * Could one of the given types be a subtype of the 
+     * other? Types of classes and interfaces can't be, 
+     * unless one of them inherits the other, which is 
+     * much cheaper to determine than subtyping.
+     */
+    private static boolean related(ProducedType p, ProducedType q) {
+        TypeDeclaration pd = p.getDeclaration();
+        TypeDeclaration qd = q.getDeclaration();
+        if (pd instanceof ClassOrInterface && !pd.isAlias() &&
+                qd instanceof ClassOrInterface && !qd.isAlias()) {
+            return pd.inherits(qd) || qd.inherits(pd);
+        }
+        return true;
+    }
+
     /**
      * The meet of two classes unrelated by inheritance,
      * or of Null with an interface type is empty. The meet
@@ -659,6 +675,39 @@ public class Util {
         return it.canonicalize().getType();
     }
 
+    /**
+     * Form the union of all the given types at once,
+     * eliminating duplicates as if they were added one at
+     * a time by {@link #addToUnion(List, ProducedType)}.
+     */
+    public static ProducedType unionType(List<ProducedType> types, 
+            Unit unit) {
+        List<ProducedType> list = new ArrayList<ProducedType>(types.size());
+        for (ProducedType pt: types) {
+            addToUnion(list, pt);
+        }
+        UnionType ut = new UnionType(unit);
+        ut.setCaseTypes(list);
+        return ut.getType();
+    }
+
+    /**
+     * Form the canonical intersection of all the given 
+     * types at once, eliminating duplicates as if they 
+     * were added one at a time by 
+     * {@link #addToIntersection(List, ProducedType, Unit)}.
+     */
+    public static ProducedType intersectionType(List<ProducedType> types, 
+            Unit unit) {
+        List<ProducedType> list = new ArrayList<ProducedType>(types.size());
+        for (ProducedType pt: types) {
+            addToIntersection(list, pt, unit);
+        }
+        IntersectionType it = new IntersectionType(unit);
+        it.setSatisfiedTypes(list);
+        return it.canonicalize().getType();
+    }
+
     public static boolean isElementOfUnion(UnionType ut, ClassOrInterface ci) {
         for (TypeDeclaration ct: ut.getCaseTypeDeclarations()) {
             if (ct instanceof ClassOrInterface && ct.equals(ci)) {
@@ -670,7 +719,7 @@ public class Util {
     
     public static Declaration lookupMember(List<Declaration> members, String name,
             List<ProducedType> signature, boolean ellipsis) {
-        List<Declaration> results = new ArrayList<Declaration>();
+        List<Declaration> results = null;
         Declaration inexactMatch = null;
         for (Declaration d: members) {
             if (isResolvable(d) && isNamed(name, d)) {
@@ -700,12 +749,15 @@ public class Util {
                     if (hasMatchingSignature(signature, ellipsis, d)) {
                         //we have found an exactly matching 
                         //overloaded declaration
+                        if (results==null) {
+                            results = new ArrayList<Declaration>(1);
+                        }
                         addIfBetterMatch(results, d);
                     }
                 }
             }
         }
-        switch (results.size()) {
+        switch (results==null ? 0 : results.size()) {
         case 0:
             //no exact match, so return the non-overloaded
             //declaration or the "abstraction" of the 
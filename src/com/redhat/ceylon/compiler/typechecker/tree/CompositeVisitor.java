@@ -0,0 +1,192 @@
+package com.redhat.ceylon.compiler.typechecker.tree;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Visits a tree with several visitors in a single walk.
+ *
+ * Each node is visited by every visitor, in order, and its
+ * children are then visited by those of the visitors which
+ * went on to visit them, once each of these is done with
+ * the node itself, and before they finish visiting it. So
+ * each visitor still visits exactly the nodes it would
+ * visit on its own, in the same order, whether it visits
+ * them before or after their children, or skips them.
+ *
+ * The visitors must not depend on one another, since the
+ * first one no longer visits the whole tree before the
+ * next one starts. They finish visiting a node in the
+ * reverse order, so they must not both do something to the
+ * same node, such as adding errors, once they have visited
+ * its children. And they must either all, or none, be
+ * {@link NaturalVisitor}s.
+ */
+public class CompositeVisitor extends Visitor {
+
+    //the number of walks in progress, on all threads, so that
+    //visitors which are not walking together need not look
+    //for a step waiting for them
+    private static final AtomicInteger walks = new AtomicInteger();
+    //the step of the walk on each thread which waits for a
+    //visitor to visit the children of a node, if any
+    private static final ThreadLocal<Step> waiting = new ThreadLocal<Step>();
+
+    private final List<Visitor> delegates;
+    //the visitors of the node being visited
+    private Visitor[] visitors;
+    //the depth of the node being visited
+    private int depth;
+
+    private CompositeVisitor(Visitor[] visitors) {
+        this.delegates = Collections.unmodifiableList(Arrays.asList(visitors));
+        this.visitors = visitors;
+    }
+
+    /**
+     * A visitor which visits a tree with each of the given
+     * visitors, in a single walk.
+     */
+    public static Visitor of(Visitor... visitors) {
+        if (visitors.length==1) {
+            return visitors[0];
+        }
+        boolean natural = visitors[0] instanceof NaturalVisitor;
+        for (Visitor visitor: visitors) {
+            if (visitor instanceof NaturalVisitor != natural) {
+                throw new IllegalArgumentException("visitors walk the tree in different orders");
+            }
+        }
+        Visitor[] copy = visitors.clone();
+        return natural ? new Natural(copy) : new CompositeVisitor(copy);
+    }
+
+    private static class Natural extends CompositeVisitor
+            implements NaturalVisitor {
+        Natural(Visitor[] visitors) {
+            super(visitors);
+        }
+    }
+
+    /**
+     * The visitors walking the tree together.
+     */
+    public List<Visitor> getVisitors() {
+        return delegates;
+    }
+
+    @Override
+    public void visitAny(Node that) {
+        if (depth++==0) {
+            walks.incrementAndGet();
+        }
+        try {
+            visit(that, visitors, 0, new Visitor[visitors.length], 0);
+        }
+        finally {
+            if (--depth==0) {
+                walks.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Continue the walk waiting for the given visitor to
+     * visit the children of the given node, if any.
+     *
+     * @return true if the walk continued, and the children
+     *         were visited
+     */
+    static boolean proceed(Visitor visitor, Node that) {
+        if (walks.get()==0) {
+            return false;
+        }
+        Step step = waiting.get();
+        if (step==null || step.visitor!=visitor || step.node!=that) {
+            return false;
+        }
+        waiting.set(null);
+        step.proceed();
+        return true;
+    }
+
+    /**
+     * Visit the given node with the visitors from the given
+     * index on, and then its children with the visitors
+     * which visit them.
+     */
+    private void visit(Node that, Visitor[] visitors, int index,
+            Visitor[] descending, int descendingCount) {
+        for (int i=index; i<visitors.length; i++) {
+            Visitor visitor = visitors[i];
+            Step step = new Step(this, that, visitors, i+1,
+                    descending, descendingCount, visitor);
+            Step previous = waiting.get();
+            waiting.set(step);
+            try {
+                that.dispatch(visitor);
+            }
+            finally {
+                waiting.set(previous);
+            }
+            if (step.proceeded) {
+                //the rest of the walk happened while the
+                //visitor was visiting the node
+                return;
+            }
+        }
+        if (descendingCount>0) {
+            Visitor[] children;
+            if (descendingCount==descending.length) {
+                children = descending;
+            }
+            else {
+                children = new Visitor[descendingCount];
+                System.arraycopy(descending, 0, children, 0, descendingCount);
+            }
+            Visitor[] parent = this.visitors;
+            this.visitors = children;
+            try {
+                that.visitChildren(this);
+            }
+            finally {
+                this.visitors = parent;
+            }
+        }
+    }
+
+    /**
+     * The rest of the walk of a node, which continues once
+     * a visitor goes on to visit its children.
+     */
+    private static final class Step {
+        private final CompositeVisitor walk;
+        private final Node node;
+        private final Visitor[] visitors;
+        private final int index;
+        private final Visitor[] descending;
+        private final int descendingCount;
+        private final Visitor visitor;
+        private boolean proceeded;
+
+        Step(CompositeVisitor walk, Node node, Visitor[] visitors, int index,
+                Visitor[] descending, int descendingCount, Visitor visitor) {
+            this.walk = walk;
+            this.node = node;
+            this.visitors = visitors;
+            this.index = index;
+            this.descending = descending;
+            this.descendingCount = descendingCount;
+            this.visitor = visitor;
+        }
+
+        void proceed() {
+            proceeded = true;
+            descending[descendingCount] = visitor;
+            walk.visit(node, visitors, index, descending, descendingCount+1);
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.redhat.ceylon.compiler.typechecker.tree;
+
+import static com.redhat.ceylon.compiler.typechecker.tree.Visitor.NODE_CLASSES;
+import static com.redhat.ceylon.compiler.typechecker.tree.Visitor.SUPER_KINDS;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The handlers of each class of visitor: for each kind of
+ * node, the kind of its closest supertype, or of the node
+ * itself, whose visit() method the visitor overrides, so
+ * that a node is visited by the method that would be
+ * reached by climbing the node type hierarchy through each
+ * of the default visit() methods, in a single call.
+ *
+ * @see Node#getNodeKind()
+ */
+final class DispatchTable {
+
+    /**
+     * The handler of a node which is visited by visitAny(),
+     * and the supertype of a node with no supertype.
+     */
+    static final int NONE = -1;
+
+    private static final int UNKNOWN = -2;
+
+    private static final ConcurrentMap<Class<?>,int[]> handlers =
+            new ConcurrentHashMap<Class<?>,int[]>();
+
+    private DispatchTable() {}
+
+    static int[] handlers(Class<? extends Visitor> visitorClass) {
+        int[] result = handlers.get(visitorClass);
+        if (result==null) {
+            result = computeHandlers(visitorClass);
+            handlers.putIfAbsent(visitorClass, result);
+        }
+        return result;
+    }
+
+    private static int[] computeHandlers(Class<? extends Visitor> visitorClass) {
+        int[] result = new int[NODE_CLASSES.length];
+        for (int kind=0; kind<result.length; kind++) {
+            result[kind] = UNKNOWN;
+        }
+        for (int kind=0; kind<result.length; kind++) {
+            handler(visitorClass, kind, result);
+        }
+        return result;
+    }
+
+    private static int handler(Class<? extends Visitor> visitorClass,
+            int kind, int[] result) {
+        if (kind==NONE) {
+            return NONE;
+        }
+        if (result[kind]==UNKNOWN) {
+            result[kind] = overrides(visitorClass, kind) ?
+                    kind : handler(visitorClass, SUPER_KINDS[kind], result);
+        }
+        return result[kind];
+    }
+
+    private static boolean overrides(Class<? extends Visitor> visitorClass,
+            int kind) {
+        try {
+            return visitorClass.getMethod("visit", NODE_CLASSES[kind])
+                    .getDeclaringClass()!=Visitor.class;
+        }
+        catch (NoSuchMethodException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
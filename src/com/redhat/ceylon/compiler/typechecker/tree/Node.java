@@ -225,6 +225,13 @@ public abstract class Node {
     
     public abstract void visit(Visitor visitor);
     
+    /**
+     * Visit this node with the given visitor, without first
+     * visiting any of its children, as {@link #visit(Visitor)}
+     * does for some nodes.
+     */
+    public abstract void dispatch(Visitor visitor);
+    
     public abstract void visitChildren(Visitor visitor);
     
     @Override
@@ -240,6 +247,13 @@ public abstract class Node {
         return getClass().getSimpleName();
     }
     
+    /**
+     * The kind of this node, a small integer identifying
+     * its class in {@link Tree}, less than
+     * {@link Tree#NODE_KINDS}.
+     */
+    public abstract int getNodeKind();
+    
     public void handleException(Exception e, Visitor visitor) {
 	    addError(getMessage(e, visitor));
     }
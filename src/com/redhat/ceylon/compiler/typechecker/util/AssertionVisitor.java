@@ -266,5 +266,15 @@ public class AssertionVisitor extends Visitor implements NaturalVisitor {
 	public int getWarnings() {
 		return warnings;
 	}
+	
+	/**
+	 * Starts counting again from the given numbers of 
+	 * errors and warnings, for example those of the units
+	 * which are not checked again.
+	 */
+	public void setCounts(int errors, int warnings) {
+		this.errors = errors;
+		this.warnings = warnings;
+	}
     
 }
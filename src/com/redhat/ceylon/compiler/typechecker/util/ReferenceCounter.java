@@ -30,6 +30,10 @@ public class ReferenceCounter extends Visitor {
 		return referencedDeclarations.contains(d);
 	}
 	
+	public Set<Declaration> getReferencedDeclarations() {
+		return referencedDeclarations;
+	}
+	
     @Override
     public void visit(Tree.MemberOrTypeExpression that) {
         super.visit(that);
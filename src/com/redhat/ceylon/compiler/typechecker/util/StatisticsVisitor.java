@@ -1,5 +1,6 @@
 package com.redhat.ceylon.compiler.typechecker.util;
 
+import com.redhat.ceylon.compiler.typechecker.tree.NaturalVisitor;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree.AnyAttribute;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree.AnyMethod;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree.ClassDefinition;
@@ -7,7 +8,7 @@ import com.redhat.ceylon.compiler.typechecker.tree.Tree.Declaration;
 import com.redhat.ceylon.compiler.typechecker.tree.Tree.ExecutableStatement;
 import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
 
-public class StatisticsVisitor extends Visitor {
+public class StatisticsVisitor extends Visitor implements NaturalVisitor {
     
     private int statements = 0;
     private int declarations = 0;
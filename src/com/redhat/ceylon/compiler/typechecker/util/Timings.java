@@ -0,0 +1,368 @@
+package com.redhat.ceylon.compiler.typechecker.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.redhat.ceylon.compiler.typechecker.tree.CompositeVisitor;
+import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
+
+/**
+ * The time spent, and the memory allocated, by a type
+ * checker in each phase, on each unit, and by each class
+ * of visitor, recorded when timings are enabled using
+ * {@link com.redhat.ceylon.compiler.typechecker.TypeCheckerBuilder#timings(boolean)}.
+ *
+ * Phases may nest: verifying the dependencies includes
+ * parsing their source archives. The time of a unit, or
+ * of a visitor, is the time spent visiting the trees of
+ * units. The CPU time and allocation of a phase are those
+ * of the thread running it and, for the phases which type
+ * check units concurrently, of the threads of the pool. 
+ * They are zero when the JVM can't measure them.
+ */
+public final class Timings {
+
+    /**
+     * The accumulated time and allocation of some work.
+     */
+    public static final class Measurement {
+
+        private final String name;
+        private int count;
+        private long wallTime;
+        private long cpuTime;
+        private long allocatedBytes;
+
+        Measurement(String name) {
+            this.name = name;
+        }
+
+        synchronized void add(long wallTime, long cpuTime,
+                long allocatedBytes) {
+            count++;
+            this.wallTime += wallTime;
+            this.cpuTime += cpuTime;
+            this.allocatedBytes += allocatedBytes;
+        }
+
+        synchronized void addWork(long cpuTime, long allocatedBytes) {
+            this.cpuTime += cpuTime;
+            this.allocatedBytes += allocatedBytes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * The number of times the work was done.
+         */
+        public synchronized int getCount() {
+            return count;
+        }
+
+        /**
+         * The elapsed time, in nanoseconds.
+         */
+        public synchronized long getWallTime() {
+            return wallTime;
+        }
+
+        /**
+         * The CPU time, in nanoseconds.
+         */
+        public synchronized long getCpuTime() {
+            return cpuTime;
+        }
+
+        public synchronized long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return name + "[count=" + count + ", wall=" + wallTime/1000000 +
+                    "ms, cpu=" + cpuTime/1000000 + "ms, allocated=" +
+                    allocatedBytes/1024 + "KB]";
+        }
+
+    }
+
+    /**
+     * Started on a thread, to measure the work it does
+     * until it is recorded.
+     */
+    public final class Timer {
+
+        private final long wallTime = System.nanoTime();
+        private final long cpuTime = cpuTime();
+        private final long allocatedBytes = allocatedBytes();
+
+    }
+
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    //com.sun.management.ThreadMXBean is not available on 
+    //every JVM, so it is only ever used reflectively
+    private static final Method THREAD_ALLOCATED_BYTES = 
+            threadAllocatedBytesMethod("com.sun.management.ThreadMXBean");
+
+    private final boolean cpuTimeSupported;
+    private final Method threadAllocatedBytes;
+    private final boolean allocationSupported;
+
+    private final Map<String,Measurement> phases =
+            new LinkedHashMap<String,Measurement>();
+    private final Map<String,Measurement> units =
+            new HashMap<String,Measurement>();
+    private final Map<String,Measurement> visitors =
+            new HashMap<String,Measurement>();
+
+    public Timings() {
+        this(THREAD_ALLOCATED_BYTES);
+    }
+
+    /**
+     * @param threadAllocatedBytes the method which returns
+     *        the bytes allocated by a thread, or null if the
+     *        JVM can't measure them
+     */
+    Timings(Method threadAllocatedBytes) {
+        cpuTimeSupported = threads.isCurrentThreadCpuTimeSupported() &&
+                threads.isThreadCpuTimeEnabled();
+        this.threadAllocatedBytes = threadAllocatedBytes;
+        allocationSupported = threadAllocatedBytes!=null;
+    }
+
+    /**
+     * The getThreadAllocatedBytes(long) method of the given
+     * extension of ThreadMXBean, if the JVM has it, and 
+     * measures allocation, or null otherwise.
+     */
+    static Method threadAllocatedBytesMethod(String className) {
+        try {
+            Class<?> type = Class.forName(className);
+            if (type.isInstance(threads) &&
+                    (Boolean) type.getMethod("isThreadAllocatedMemorySupported")
+                            .invoke(threads) &&
+                    (Boolean) type.getMethod("isThreadAllocatedMemoryEnabled")
+                            .invoke(threads)) {
+                return type.getMethod("getThreadAllocatedBytes", long.class);
+            }
+        }
+        catch (Exception e) {}
+        catch (LinkageError e) {}
+        return null;
+    }
+
+    private long cpuTime() {
+        return cpuTimeSupported ? threads.getCurrentThreadCpuTime() : 0;
+    }
+
+    private long allocatedBytes() {
+        if (allocationSupported) {
+            try {
+                return (Long) threadAllocatedBytes.invoke(threads, 
+                        Thread.currentThread().getId());
+            }
+            catch (Exception e) {}
+        }
+        return 0;
+    }
+
+    /**
+     * Start measuring the work done by the current thread.
+     */
+    public Timer start() {
+        return new Timer();
+    }
+
+    /**
+     * Record the work done by the current thread since the
+     * given timer was started, as a run of the given phase.
+     */
+    public void recordPhase(String phase, Timer timer) {
+        long wallTime = System.nanoTime()-timer.wallTime;
+        long cpuTime = cpuTime()-timer.cpuTime;
+        long allocatedBytes = allocatedBytes()-timer.allocatedBytes;
+        measurement(phases, phase).add(wallTime, cpuTime, allocatedBytes);
+    }
+
+    /**
+     * Record the work done by the current thread since the
+     * given timer was started, on behalf of a run of the
+     * given phase recorded by another thread.
+     */
+    public void recordPhaseWork(String phase, Timer timer) {
+        long cpuTime = cpuTime()-timer.cpuTime;
+        long allocatedBytes = allocatedBytes()-timer.allocatedBytes;
+        measurement(phases, phase).addWork(cpuTime, allocatedBytes);
+    }
+
+    /**
+     * Record the work done by the current thread since the
+     * given timer was started, as a visit of the tree of
+     * the given unit with the given visitor.
+     */
+    public void recordVisitor(String unit, Visitor visitor, Timer timer) {
+        long wallTime = System.nanoTime()-timer.wallTime;
+        long cpuTime = cpuTime()-timer.cpuTime;
+        long allocatedBytes = allocatedBytes()-timer.allocatedBytes;
+        measurement(units, unit).add(wallTime, cpuTime, allocatedBytes);
+        measurement(visitors, visitorName(visitor))
+                .add(wallTime, cpuTime, allocatedBytes);
+    }
+
+    private static String visitorName(Visitor visitor) {
+        if (visitor instanceof CompositeVisitor) {
+            StringBuilder name = new StringBuilder();
+            for (Visitor v: ((CompositeVisitor) visitor).getVisitors()) {
+                if (name.length()>0) {
+                    name.append('+');
+                }
+                name.append(visitorName(v));
+            }
+            return name.toString();
+        }
+        else {
+            return visitor.getClass().getName();
+        }
+    }
+
+    private synchronized Measurement measurement(Map<String,Measurement> measurements,
+            String name) {
+        Measurement measurement = measurements.get(name);
+        if (measurement==null) {
+            measurement = new Measurement(name);
+            measurements.put(name, measurement);
+        }
+        return measurement;
+    }
+
+    /**
+     * The measurements of the phases, in the order they
+     * were first run.
+     */
+    public synchronized List<Measurement> getPhases() {
+        return new ArrayList<Measurement>(phases.values());
+    }
+
+    /**
+     * The measurements of the units, named by the paths of
+     * their source files, slowest first.
+     */
+    public List<Measurement> getUnits() {
+        return slowestFirst(units);
+    }
+
+    /**
+     * The measurements of the visitors, named by their
+     * classes, slowest first. Visitors walking a tree
+     * together are measured together.
+     */
+    public List<Measurement> getVisitors() {
+        return slowestFirst(visitors);
+    }
+
+    private synchronized List<Measurement> slowestFirst(Map<String,Measurement> measurements) {
+        List<Measurement> result = new ArrayList<Measurement>(measurements.values());
+        Collections.sort(result, new Comparator<Measurement>() {
+            @Override
+            public int compare(Measurement x, Measurement y) {
+                long xt = x.getWallTime();
+                long yt = y.getWallTime();
+                return xt<yt ? 1 : xt>yt ? -1 : x.getName().compareTo(y.getName());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Write the measurements of the phases and visitors, and
+     * of the given number of slowest units, as JSON.
+     */
+    public void writeReport(Writer writer, int slowestUnits) throws IOException {
+        List<Measurement> units = getUnits();
+        writer.write("{\n");
+        writer.write("  \"cpuTimeSupported\": " + cpuTimeSupported + ",\n");
+        writer.write("  \"allocationSupported\": " + allocationSupported + ",\n");
+        writeMeasurements(writer, "phases", getPhases());
+        writer.write(",\n");
+        writeMeasurements(writer, "visitors", getVisitors());
+        writer.write(",\n");
+        writer.write("  \"units\": " + units.size() + ",\n");
+        writeMeasurements(writer, "slowestUnits",
+                units.subList(0, Math.min(slowestUnits, units.size())));
+        writer.write("\n}\n");
+    }
+
+    /**
+     * Write the report to the given file.
+     *
+     * @see #writeReport(Writer, int)
+     */
+    public void writeReport(File file, int slowestUnits) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writeReport(writer, slowestUnits);
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    private static void writeMeasurements(Writer writer, String name,
+            List<Measurement> measurements) throws IOException {
+        writer.write("  \"" + name + "\": [");
+        boolean first = true;
+        for (Measurement m: measurements) {
+            writer.write(first ? "\n" : ",\n");
+            first = false;
+            synchronized (m) {
+                writer.write("    {\"name\": " + quote(m.name) +
+                        ", \"count\": " + m.count +
+                        ", \"wallTimeNanos\": " + m.wallTime +
+                        ", \"cpuTimeNanos\": " + m.cpuTime +
+                        ", \"allocatedBytes\": " + m.allocatedBytes + "}");
+            }
+        }
+        writer.write(first ? "]" : "\n  ]");
+    }
+
+    private static String quote(String string) {
+        StringBuilder result = new StringBuilder(string.length()+2);
+        result.append('"');
+        for (int i=0; i<string.length(); i++) {
+            char c = string.charAt(i);
+            switch (c) {
+            case '"': result.append("\\\""); break;
+            case '\\': result.append("\\\\"); break;
+            case '\n': result.append("\\n"); break;
+            case '\r': result.append("\\r"); break;
+            case '\t': result.append("\\t"); break;
+            default:
+                if (c<0x20) {
+                    result.append(String.format("\\u%04x", (int) c));
+                }
+                else {
+                    result.append(c);
+                }
+            }
+        }
+        result.append('"');
+        return result.toString();
+    }
+
+}
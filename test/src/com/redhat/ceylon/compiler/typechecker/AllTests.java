@@ -0,0 +1,59 @@
+package com.redhat.ceylon.compiler.typechecker;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Runs the tests of the type checker, each of which is a
+ * class with a main method which throws an exception when
+ * the test fails, from the root of the project.
+ */
+public class AllTests {
+
+    private static final String[] TESTS = {
+        "com.redhat.ceylon.compiler.typechecker.ParallelTest",
+        "com.redhat.ceylon.compiler.typechecker.context.ParseTest",
+        "com.redhat.ceylon.compiler.typechecker.model.PackageTest",
+        "com.redhat.ceylon.compiler.typechecker.model.ModuleTest",
+        "com.redhat.ceylon.compiler.typechecker.model.SubtypeCacheTest",
+        "com.redhat.ceylon.compiler.typechecker.model.TypeInternerTest",
+        "com.redhat.ceylon.compiler.typechecker.RecheckTest",
+        "com.redhat.ceylon.compiler.typechecker.context.ParsedUnitCacheTest",
+        "com.redhat.ceylon.compiler.typechecker.analyzer.ModelArchiveTest",
+        "com.redhat.ceylon.compiler.typechecker.context.PackageLoaderTest",
+        "com.redhat.ceylon.compiler.typechecker.analyzer.OccurrenceVisitorTest",
+        "com.redhat.ceylon.compiler.typechecker.model.MemberLookupCacheTest",
+        "com.redhat.ceylon.compiler.typechecker.model.TypeDeclarationTest",
+        "com.redhat.ceylon.compiler.typechecker.model.UtilTest",
+        "com.redhat.ceylon.compiler.typechecker.model.TupleTypeCacheTest",
+        "com.redhat.ceylon.compiler.typechecker.analyzer.ModuleValidatorTest",
+        "com.redhat.ceylon.compiler.typechecker.model.SharedLanguageModuleTest",
+        "com.redhat.ceylon.compiler.typechecker.tree.CompositeVisitorTest",
+        "com.redhat.ceylon.compiler.typechecker.tree.DispatchTableTest",
+        "com.redhat.ceylon.compiler.typechecker.util.TimingsTest",
+    };
+
+    public static void main(String[] args) throws Exception {
+        int failures = 0;
+        for (String test: TESTS) {
+            long start = System.nanoTime();
+            Method main = Class.forName(test).getMethod("main", String[].class);
+            try {
+                main.invoke(null, (Object) new String[0]);
+                System.out.println("Passed " + test + " in " + 
+                        (System.nanoTime()-start)/1000000 + " ms");
+            }
+            catch (InvocationTargetException e) {
+                failures++;
+                System.out.println("Failed " + test);
+                e.getCause().printStackTrace(System.out);
+            }
+        }
+        System.out.println((TESTS.length-failures) + " of " + 
+                TESTS.length + " tests passed");
+        if (failures>0) {
+            System.exit(1);
+        }
+    }
+
+}
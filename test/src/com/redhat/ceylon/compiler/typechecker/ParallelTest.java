@@ -0,0 +1,40 @@
+package com.redhat.ceylon.compiler.typechecker;
+
+import static com.redhat.ceylon.compiler.typechecker.Tests.builder;
+import static com.redhat.ceylon.compiler.typechecker.Tests.checkEquals;
+import static com.redhat.ceylon.compiler.typechecker.Tests.messages;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
+
+/**
+ * Checks that type checking the units concurrently reports
+ * the same errors, in the same units, as a serial check.
+ */
+public class ParallelTest {
+
+    public static void main(String[] args) throws Exception {
+        File sources = new File("test/main");
+        TypeChecker serial = builder(sources).getTypeChecker();
+        serial.process();
+        TypeChecker parallel = builder(sources)
+                .parallelism(4)
+                .getTypeChecker();
+        parallel.process();
+        checkEquals(paths(serial), paths(parallel), "units");
+        checkEquals(messages(serial), messages(parallel), "messages");
+        checkEquals(serial.getErrors(), parallel.getErrors(), "errors");
+    }
+
+    static List<String> paths(TypeChecker typeChecker) {
+        List<String> paths = new ArrayList<String>();
+        for (PhasedUnit pu: typeChecker.getPhasedUnits().getPhasedUnits()) {
+            paths.add(pu.getPathRelativeToSrcDir());
+        }
+        return paths;
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.redhat.ceylon.compiler.typechecker;
+
+import static com.redhat.ceylon.compiler.typechecker.Tests.builder;
+import static com.redhat.ceylon.compiler.typechecker.Tests.check;
+import static com.redhat.ceylon.compiler.typechecker.Tests.checkEquals;
+import static com.redhat.ceylon.compiler.typechecker.Tests.createDirectory;
+import static com.redhat.ceylon.compiler.typechecker.Tests.delete;
+import static com.redhat.ceylon.compiler.typechecker.Tests.messages;
+import static com.redhat.ceylon.compiler.typechecker.Tests.write;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
+import com.redhat.ceylon.compiler.typechecker.io.VirtualFile;
+
+/**
+ * Checks that checking changed source files again reports
+ * the same errors, and counts the same number of errors,
+ * as checking every source file again, including when a
+ * new toplevel declaration shadows a declaration used by
+ * the other units of its package.
+ */
+public class RecheckTest {
+
+    private static final String A = "shared Integer a = 1;\n";
+    private static final String B = "shared Integer b = a + 1;\n";
+    private static final String C = "shared void c(Integer i) {}\n";
+    private static final String D = "shared void d() {}\n";
+
+    public static void main(String[] args) throws Exception {
+        File directory = createDirectory("recheck");
+        try {
+            checkShadowing(directory, "shared class Integer() {}\n");
+            checkShadowing(directory, "shared Integer a = 2;\n");
+            checkFixedError(directory);
+        }
+        finally {
+            delete(directory);
+        }
+    }
+
+    /**
+     * Adds a toplevel declaration to D.ceylon, which every
+     * other unit of the package resolves to or conflicts
+     * with, and removes it again.
+     */
+    private static void checkShadowing(File directory, String declaration)
+            throws Exception {
+        writePackage(directory);
+        TypeChecker typeChecker = builder(directory).getTypeChecker();
+        typeChecker.process();
+        checkEquals(0, typeChecker.getErrors(), "errors");
+
+        write(directory, "p/D.ceylon", D + declaration);
+        List<PhasedUnit> rechecked = recheck(typeChecker, "p/D.ceylon");
+        check(rechecked.size()>1, "only D.ceylon checked again");
+        checkEqualsFullCheck(directory, typeChecker);
+        check(typeChecker.getErrors()>0, "no error");
+
+        write(directory, "p/D.ceylon", D);
+        recheck(typeChecker, "p/D.ceylon");
+        checkEqualsFullCheck(directory, typeChecker);
+        checkEquals(0, typeChecker.getErrors(), "errors");
+    }
+
+    /**
+     * Fixes an error, which must no longer be counted.
+     */
+    private static void checkFixedError(File directory) throws Exception {
+        writePackage(directory);
+        write(directory, "p/A.ceylon", "shared Integer a = \"\";\n");
+        TypeChecker typeChecker = builder(directory).getTypeChecker();
+        typeChecker.process();
+        checkEquals(1, typeChecker.getErrors(), "errors");
+
+        write(directory, "p/A.ceylon", A);
+        recheck(typeChecker, "p/A.ceylon");
+        checkEqualsFullCheck(directory, typeChecker);
+        checkEquals(0, typeChecker.getErrors(), "errors");
+    }
+
+    private static void writePackage(File directory) throws Exception {
+        write(directory, "p/A.ceylon", A);
+        write(directory, "p/B.ceylon", B);
+        write(directory, "p/C.ceylon", C);
+        write(directory, "p/D.ceylon", D);
+    }
+
+    private static List<PhasedUnit> recheck(TypeChecker typeChecker, String path) {
+        VirtualFile file = typeChecker.getPhasedUnitFromRelativePath(path)
+                .getUnitFile();
+        return typeChecker.recheck(Collections.singletonList(file),
+                Collections.<VirtualFile>emptyList());
+    }
+
+    private static void checkEqualsFullCheck(File directory,
+            TypeChecker typeChecker) {
+        TypeChecker full = builder(directory).getTypeChecker();
+        full.process();
+        checkEquals(sorted(messages(full)), sorted(messages(typeChecker)),
+                "messages");
+        checkEquals(full.getErrors(), typeChecker.getErrors(), "errors");
+        checkEquals(full.getWarnings(), typeChecker.getWarnings(), "warnings");
+    }
+
+    private static List<String> sorted(List<String> messages) {
+        List<String> sorted = new ArrayList<String>(messages);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+}
@@ -0,0 +1,120 @@
+package com.redhat.ceylon.compiler.typechecker;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
+import com.redhat.ceylon.compiler.typechecker.tree.Message;
+import com.redhat.ceylon.compiler.typechecker.tree.Node;
+import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
+
+/**
+ * Helpers shared by the tests, which fail by throwing a
+ * RuntimeException, like MainForTest.
+ */
+public final class Tests {
+
+    private Tests() {}
+
+    public static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new RuntimeException(message);
+        }
+    }
+
+    public static void checkEquals(Object expected, Object actual, String message) {
+        if (expected==null ? actual!=null : !expected.equals(actual)) {
+            throw new RuntimeException(message + ": expected " + expected +
+                    " but was " + actual);
+        }
+    }
+
+    /**
+     * A new empty directory, to write the source files of
+     * a test in.
+     */
+    public static File createDirectory(String prefix) throws IOException {
+        File directory = File.createTempFile(prefix, "");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("could not create " + directory);
+        }
+        return directory;
+    }
+
+    /**
+     * Writes the given source file, at the given path of
+     * the given directory.
+     */
+    public static File write(File directory, String path, String contents)
+            throws IOException {
+        File file = new File(directory, path);
+        file.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(contents);
+        }
+        finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    public static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children!=null) {
+            for (File child: children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * A builder of a quiet type checker of the given source
+     * directories.
+     */
+    public static TypeCheckerBuilder builder(File... srcDirectories) {
+        TypeCheckerBuilder builder = new TypeCheckerBuilder()
+                .verbose(false);
+        for (File srcDirectory: srcDirectories) {
+            builder.addSrcDirectory(srcDirectory);
+        }
+        return builder;
+    }
+
+    /**
+     * The errors and warnings of every unit checked by the
+     * given type checker, with the paths of the units and
+     * the locations of the nodes they were reported on, in
+     * the order of the units.
+     */
+    public static List<String> messages(TypeChecker typeChecker) {
+        List<String> messages = new ArrayList<String>();
+        for (PhasedUnit pu: typeChecker.getPhasedUnits().getPhasedUnits()) {
+            messages.addAll(messages(pu));
+        }
+        return messages;
+    }
+
+    public static List<String> messages(PhasedUnit pu) {
+        final String path = pu.getPathRelativeToSrcDir();
+        final List<String> messages = new ArrayList<String>();
+        pu.getCompilationUnit().visit(new Visitor() {
+            @Override
+            public void visitAny(Node that) {
+                for (Message message: that.getErrors()) {
+                    messages.add(path + ":" + that.getLocation() + ": " +
+                            message.getMessage());
+                }
+                super.visitAny(that);
+            }
+        });
+        return messages;
+    }
+
+}
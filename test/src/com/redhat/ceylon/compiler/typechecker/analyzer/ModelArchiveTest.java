@@ -0,0 +1,229 @@
+package com.redhat.ceylon.compiler.typechecker.analyzer;
+
+import static com.redhat.ceylon.compiler.typechecker.Tests.builder;
+import static com.redhat.ceylon.compiler.typechecker.Tests.check;
+import static com.redhat.ceylon.compiler.typechecker.Tests.checkEquals;
+import static com.redhat.ceylon.compiler.typechecker.Tests.createDirectory;
+import static com.redhat.ceylon.compiler.typechecker.Tests.delete;
+import static com.redhat.ceylon.compiler.typechecker.Tests.write;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.redhat.ceylon.compiler.typechecker.TypeChecker;
+import com.redhat.ceylon.compiler.typechecker.model.Declaration;
+import com.redhat.ceylon.compiler.typechecker.model.Module;
+import com.redhat.ceylon.compiler.typechecker.model.Package;
+import com.redhat.ceylon.compiler.typechecker.model.ProducedType;
+import com.redhat.ceylon.compiler.typechecker.model.TypeDeclaration;
+import com.redhat.ceylon.compiler.typechecker.model.TypeParameter;
+import com.redhat.ceylon.compiler.typechecker.model.TypedDeclaration;
+
+/**
+ * Checks that the model read back from the archive written
+ * for a module has the same declarations, with the same
+ * types and refinements, as the model of its source, and
+ * that a damaged archive is rejected before it touches the
+ * model.
+ */
+public class ModelArchiveTest {
+
+    public static void main(String[] args) throws Exception {
+        File directory = createDirectory("archive");
+        try {
+            File sources = new File(directory, "source");
+            write(sources, "a/module.ceylon", "module a '1.0' {}\n");
+            write(sources, "a/package.ceylon", "shared package a;\n");
+            write(sources, "a/Types.ceylon",
+                    "shared interface Container<out Element> {\n" +
+                    "    shared formal Element first;\n" +
+                    "    shared formal Integer size(Boolean all);\n" +
+                    "}\n" +
+                    "shared abstract class Base<Element>(Element element)\n" +
+                    "        satisfies Container<Element> {\n" +
+                    "    shared actual default Element first { return element; }\n" +
+                    "    shared actual Integer size(Boolean all) { return 1; }\n" +
+                    "    shared variable String name = \"base\";\n" +
+                    "}\n" +
+                    "shared class Leaf(String s) extends Base<String>(s) {\n" +
+                    "    shared actual String first { return s; }\n" +
+                    "}\n" +
+                    "shared String|Integer choose(Boolean b, Container<String>* containers) {\n" +
+                    "    if (b) { return \"\"; } else { return 1; }\n" +
+                    "}\n");
+            TypeChecker typeChecker = builder(sources).getTypeChecker();
+            File repository = new File(directory, "repository");
+            try {
+                typeChecker.writeModelArchives(repository);
+                throw new RuntimeException("archive written before processing");
+            }
+            catch (IllegalStateException e) {}
+            typeChecker.process();
+            checkEquals(0, typeChecker.getErrors(), "errors of the source");
+            List<File> archives = typeChecker.writeModelArchives(repository);
+            File archive = new File(repository, "a/1.0/a-1.0" + ModelArchive.SUFFIX);
+            checkEquals(1, archives.size(), "archives");
+            checkEquals(archive, archives.get(0), "archive");
+
+            //read it back into another type checker
+            File other = new File(directory, "other");
+            write(other, "run.ceylon", "void run() {}\n");
+            TypeChecker reader = builder(other).getTypeChecker();
+            reader.process();
+            ModuleManager moduleManager = reader.getPhasedUnits().getModuleManager();
+            Module module = moduleManager.getOrCreateModule(
+                    ModuleManager.splitModuleName("a"), "1.0");
+            if (module.getVersion()==null) {
+                module.setVersion("1.0");
+            }
+            ModelArchive modelArchive = ModelArchive.read(archive, module, moduleManager);
+            check(modelArchive!=null, "archive not read");
+            modelArchive.scanDeclarations();
+            modelArchive.scanTypeDeclarations();
+
+            Module original = null;
+            for (Module m: typeChecker.getContext().getModules().getListOfModules()) {
+                if (m.getNameAsString().equals("a")) {
+                    original = m;
+                }
+            }
+            List<String> expected = describe(original);
+            check(expected.size()>10, "declarations not described: " + expected);
+            checkEquals(expected, describe(module), "declarations");
+
+            //a truncated archive, and an archive whose body
+            //is cut short before it is compressed
+            byte[] compressed = readBytes(archive);
+            File truncated = new File(directory, "truncated" + ModelArchive.SUFFIX);
+            writeBytes(truncated, Arrays.copyOf(compressed, compressed.length/2));
+            checkDamaged(other, truncated);
+            byte[] body = uncompress(compressed);
+            File shortened = new File(directory, "shortened" + ModelArchive.SUFFIX);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            GZIPOutputStream zip = new GZIPOutputStream(bytes);
+            zip.write(body, 0, body.length-8);
+            zip.finish();
+            writeBytes(shortened, bytes.toByteArray());
+            checkDamaged(other, shortened);
+        }
+        finally {
+            delete(directory);
+        }
+    }
+
+    private static void checkDamaged(File sources, File archive)
+            throws Exception {
+        TypeChecker reader = builder(sources).getTypeChecker();
+        reader.process();
+        ModuleManager moduleManager = reader.getPhasedUnits().getModuleManager();
+        Module module = moduleManager.getOrCreateModule(
+                ModuleManager.splitModuleName("a"), "1.0");
+        if (module.getVersion()==null) {
+            module.setVersion("1.0");
+        }
+        try {
+            ModelArchive.read(archive, module, moduleManager);
+            throw new RuntimeException("damaged archive read: " + archive.getName());
+        }
+        catch (IOException e) {}
+        check(module.getPackages().isEmpty() && !module.isAvailable(),
+                "module modified by a damaged archive: " + archive.getName());
+    }
+
+    private static byte[] readBytes(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return copy(in);
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    private static byte[] uncompress(byte[] bytes) throws IOException {
+        return copy(new GZIPInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    private static byte[] copy(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer))>=0) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeBytes(File file, byte[] bytes) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    private static List<String> describe(Module module) {
+        List<String> description = new ArrayList<String>();
+        for (Package pkg: module.getPackages()) {
+            description.add("package " + pkg.getNameAsString() +
+                    (pkg.isShared() ? " shared" : ""));
+            for (Declaration d: pkg.getMembers()) {
+                describe(d, description);
+            }
+        }
+        return description;
+    }
+
+    private static void describe(Declaration d, List<String> description) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(d.getClass().getSimpleName()).append(' ')
+                .append(d.getQualifiedNameString());
+        if (d.isShared()) sb.append(" shared");
+        if (d.isFormal()) sb.append(" formal");
+        if (d.isActual()) sb.append(" actual");
+        if (d.isDefault()) sb.append(" default");
+        if (d.getRefinedDeclaration()!=null && d.getRefinedDeclaration()!=d) {
+            sb.append(" refines ").append(d.getRefinedDeclaration()
+                    .getQualifiedNameString());
+        }
+        if (d instanceof TypedDeclaration) {
+            TypedDeclaration td = (TypedDeclaration) d;
+            sb.append(" : ").append(name(td.getType()));
+            if (td.isVariable()) sb.append(" variable");
+        }
+        if (d instanceof TypeDeclaration) {
+            TypeDeclaration td = (TypeDeclaration) d;
+            for (TypeParameter tp: td.getTypeParameters()) {
+                sb.append(" <").append(tp.getName())
+                        .append(tp.isCovariant() ? " out" : "")
+                        .append(">");
+            }
+            sb.append(" extends ").append(name(td.getExtendedType()));
+            for (ProducedType st: td.getSatisfiedTypes()) {
+                sb.append(" satisfies ").append(name(st));
+            }
+        }
+        description.add(sb.toString());
+        for (Declaration member: d.getMembers()) {
+            describe(member, description);
+        }
+    }
+
+    private static String name(ProducedType type) {
+        return type==null ? "null" : type.getProducedTypeName(false);
+    }
+
+}
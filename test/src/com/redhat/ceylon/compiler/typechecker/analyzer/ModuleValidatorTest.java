@@ -0,0 +1,113 @@
+package com.redhat.ceylon.compiler.typechecker.analyzer;
+
+import static com.redhat.ceylon.compiler.typechecker.Tests.builder;
+import static com.redhat.ceylon.compiler.typechecker.Tests.check;
+import static com.redhat.ceylon.compiler.typechecker.Tests.checkEquals;
+import static com.redhat.ceylon.compiler.typechecker.Tests.createDirectory;
+import static com.redhat.ceylon.compiler.typechecker.Tests.delete;
+import static com.redhat.ceylon.compiler.typechecker.Tests.messages;
+import static com.redhat.ceylon.compiler.typechecker.Tests.write;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.redhat.ceylon.compiler.typechecker.TypeChecker;
+
+/**
+ * Checks that a module missing from the repositories is
+ * reported for each path of imports which leads to it,
+ * even though the propagated dependencies of a module
+ * reached by several paths are only verified once, unless
+ * they miss a module, and that looking up the artifacts of
+ * the modules concurrently reports the same errors.
+ */
+public class ModuleValidatorTest {
+
+    public static void main(String[] args) throws Exception {
+        checkMissingModule();
+        checkConcurrentLookups();
+    }
+
+    private static void checkMissingModule() throws Exception {
+        File directory = createDirectory("modules");
+        try {
+            write(directory, "top/module.ceylon",
+                    "module top '1' {\n" +
+                    "    import a '1';\n" +
+                    "    import b '1';\n" +
+                    "}\n");
+            write(directory, "a/module.ceylon", "module a '1' { import m '1'; }\n");
+            write(directory, "b/module.ceylon", "module b '1' { import m '1'; }\n");
+            write(directory, "m/module.ceylon", "module m '1' { import x '1'; }\n");
+            //a module reached by several paths without any
+            //missing module
+            write(directory, "c/module.ceylon",
+                    "module c '1' {\n" +
+                    "    import d '1';\n" +
+                    "    import e '1';\n" +
+                    "}\n");
+            write(directory, "d/module.ceylon", "module d '1' { import f '1'; }\n");
+            write(directory, "e/module.ceylon", "module e '1' { import f '1'; }\n");
+            write(directory, "f/module.ceylon", "module f '1' {}\n");
+            for (String module: new String[] {"top", "a", "b", "m", "c", "d", "e", "f"}) {
+                write(directory, module + "/run.ceylon", "void run() {}\n");
+            }
+            checkMissingModule(builder(directory).getTypeChecker());
+            //looking up the artifacts concurrently
+            checkMissingModule(builder(directory).parallelism(4).getTypeChecker());
+        }
+        finally {
+            delete(directory);
+        }
+    }
+
+    /**
+     * Looking up the artifacts of the modules concurrently
+     * reports the same errors, on the same nodes, in the 
+     * same order, as looking them up one at a time.
+     */
+    private static void checkConcurrentLookups() {
+        File[] sources = { new File("test/moduledep1"), 
+                new File("test/moduledep2"), new File("test/moduletest") };
+        TypeChecker serial = builder(sources).getTypeChecker();
+        serial.process();
+        TypeChecker concurrent = builder(sources)
+                .parallelism(4)
+                .getTypeChecker();
+        concurrent.process();
+        List<String> messages = messages(serial);
+        check(!messages.isEmpty(), "no error in the module tests");
+        checkEquals(messages, messages(concurrent), "messages");
+        checkEquals(serial.getErrors(), concurrent.getErrors(), "errors");
+    }
+
+    private static void checkMissingModule(TypeChecker typeChecker) {
+        typeChecker.process();
+        //reported on the import of the missing module, 
+        //once for each path from a compiled module
+        List<String> paths = new ArrayList<String>();
+        for (String message: messages(typeChecker)) {
+            if (message.contains("cannot find module")) {
+                check(message.startsWith("m/module.ceylon:1:"),
+                        "missing module reported on: " + message);
+                paths.add(message.substring(message.indexOf("dependency tree: ") + 17));
+            }
+        }
+        Collections.sort(paths);
+        checkEquals(Arrays.asList("a/1 -> m/1 -> x/1", 
+                "b/1 -> m/1 -> x/1", 
+                "m/1 -> x/1",
+                "top/1 -> a/1 -> m/1 -> x/1", 
+                "top/1 -> b/1 -> m/1 -> x/1"), 
+                paths, "dependency trees of the missing module");
+        for (String message: messages(typeChecker)) {
+            check(!message.startsWith("c/") && !message.startsWith("d/") &&
+                    !message.startsWith("e/") && !message.startsWith("f/"),
+                    "error of a complete module: " + message);
+        }
+    }
+
+}
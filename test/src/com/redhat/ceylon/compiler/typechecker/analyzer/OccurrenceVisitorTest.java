@@ -0,0 +1,55 @@
+package com.redhat.ceylon.compiler.typechecker.analyzer;
+
+import static com.redhat.ceylon.compiler.typechecker.Tests.builder;
+import static com.redhat.ceylon.compiler.typechecker.Tests.check;
+import static com.redhat.ceylon.compiler.typechecker.Tests.messages;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.redhat.ceylon.compiler.typechecker.TypeChecker;
+import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
+import com.redhat.ceylon.compiler.typechecker.model.Declaration;
+import com.redhat.ceylon.compiler.typechecker.model.TypeDeclaration;
+
+/**
+ * Checks that the flow analysis guided by the index of the
+ * occurrences of the declarations reports every error that
+ * walking the whole unit for each declaration reports.
+ */
+public class OccurrenceVisitorTest {
+
+    public static void main(String[] args) throws Exception {
+        TypeChecker typeChecker = builder(new File("test/main")).getTypeChecker();
+        typeChecker.process();
+        int flowErrors = 0;
+        for (PhasedUnit pu: typeChecker.getPhasedUnits().getPhasedUnits()) {
+            List<String> indexed = messages(pu);
+            //the errors are added to the nodes again
+            for (Declaration d: pu.getUnit().getDeclarations()) {
+                pu.getCompilationUnit().visit(new SpecificationVisitor(d));
+                if (d instanceof TypeDeclaration) {
+                    pu.getCompilationUnit().visit(
+                            new SelfReferenceVisitor((TypeDeclaration) d));
+                }
+            }
+            List<String> walked = new ArrayList<String>(messages(pu));
+            for (String message: indexed) {
+                walked.remove(message);
+            }
+            flowErrors += walked.size();
+            List<String> remaining = new ArrayList<String>(indexed);
+            List<String> missing = new ArrayList<String>();
+            for (String message: walked) {
+                if (!remaining.remove(message)) {
+                    missing.add(message);
+                }
+            }
+            check(missing.isEmpty(), "errors missed by the indexed flow analysis: " +
+                    missing);
+        }
+        check(flowErrors>0, "no flow error in the corpus");
+    }
+
+}
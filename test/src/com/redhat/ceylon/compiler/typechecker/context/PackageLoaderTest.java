@@ -0,0 +1,96 @@
+package com.redhat.ceylon.compiler.typechecker.context;
+
+import static com.redhat.ceylon.compiler.typechecker.Tests.builder;
+import static com.redhat.ceylon.compiler.typechecker.Tests.check;
+import static com.redhat.ceylon.compiler.typechecker.Tests.checkEquals;
+import static com.redhat.ceylon.compiler.typechecker.Tests.createDirectory;
+import static com.redhat.ceylon.compiler.typechecker.Tests.delete;
+import static com.redhat.ceylon.compiler.typechecker.Tests.messages;
+import static com.redhat.ceylon.compiler.typechecker.Tests.write;
+
+import java.io.File;
+
+import com.redhat.ceylon.compiler.typechecker.TypeChecker;
+import com.redhat.ceylon.compiler.typechecker.model.Module;
+import com.redhat.ceylon.compiler.typechecker.model.Package;
+import com.redhat.ceylon.compiler.typechecker.model.TypeDeclaration;
+
+/**
+ * Checks that loading the packages of the source
+ * dependencies, including the language module, only when
+ * they are needed reports the same errors as loading them
+ * up front, and that a package left out is loaded as soon
+ * as its members are needed, along with the packages it
+ * needs.
+ */
+public class PackageLoaderTest {
+
+    public static void main(String[] args) throws Exception {
+        File sources = new File("test/main");
+        TypeChecker eager = builder(sources).getTypeChecker();
+        eager.process();
+        check(eager.getContext().getPackageLoader()==null, "loader without lazy dependencies");
+
+        TypeChecker lazy = builder(sources)
+                .lazyDependencies(true)
+                .getTypeChecker();
+        lazy.process();
+        checkEquals(messages(eager), messages(lazy), "messages");
+        checkEquals(eager.getErrors(), lazy.getErrors(), "errors");
+
+        PackageLoader loader = lazy.getContext().getPackageLoader();
+        check(loader.getDeferredPackages()>0, "no package deferred");
+        check(loader.getLoadedPackages()>0, "no package loaded");
+        check(loader.getLoadedPackages()<=loader.getDeferredPackages(),
+                "more packages loaded than deferred");
+
+        checkDependency(lazy.getContext(), loader);
+    }
+
+    /**
+     * Adds a dependency with a package extending a class of
+     * another package, and a package which is never needed.
+     */
+    private static void checkDependency(Context context, PackageLoader loader)
+            throws Exception {
+        File directory = createDirectory("dependency");
+        try {
+            write(directory, "dep/module.ceylon", "module dep '1.0' {}\n");
+            write(directory, "dep/p1/A.ceylon", "shared class A() {}\n");
+            write(directory, "dep/p2/B.ceylon",
+                    "import dep.p1 { A }\n" +
+                    "shared class B() extends A() {}\n");
+            write(directory, "dep/p3/C.ceylon", "shared class C() {}\n");
+            int deferred = loader.getDeferredPackages();
+            int loaded = loader.getLoadedPackages();
+            PhasedUnits dependency = new PhasedUnits(context);
+            dependency.parseUnitLazily(context.getVfs().getFromFile(directory), loader);
+            dependency.visitModules();
+            checkEquals(deferred+3, loader.getDeferredPackages(), "deferred packages");
+            checkEquals(loaded, loader.getLoadedPackages(), "loaded packages");
+            checkEquals(1, dependency.getPhasedUnits().size(), "units parsed up front");
+
+            Package p1 = null, p2 = null, p3 = null;
+            for (Module module: context.getModules().getListOfModules()) {
+                for (Package pkg: module.getPackages()) {
+                    String name = pkg.getNameAsString();
+                    if (name.equals("dep.p1")) p1 = pkg;
+                    if (name.equals("dep.p2")) p2 = pkg;
+                    if (name.equals("dep.p3")) p3 = pkg;
+                }
+            }
+            check(!p1.isLoaded() && !p2.isLoaded() && !p3.isLoaded(), "package loaded up front");
+            TypeDeclaration b = (TypeDeclaration) p2.getDirectMember("B", null, false);
+            check(p1.isLoaded() && p2.isLoaded(), "packages not loaded");
+            check(!p3.isLoaded(), "unused package loaded");
+            checkEquals(loaded+2, loader.getLoadedPackages(), "loaded packages");
+            checkEquals(p1.getDirectMember("A", null, false),
+                    b.getExtendedTypeDeclaration(), "extended class");
+            checkEquals(3, dependency.getPhasedUnits().size(), "units parsed");
+        }
+        finally {
+            delete(directory);
+        }
+    }
+
+}
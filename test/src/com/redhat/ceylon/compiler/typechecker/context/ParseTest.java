@@ -0,0 +1,80 @@
+package com.redhat.ceylon.compiler.typechecker.context;
+
+import static com.redhat.ceylon.compiler.typechecker.Tests.check;
+import static com.redhat.ceylon.compiler.typechecker.Tests.checkEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.redhat.ceylon.compiler.typechecker.io.VFS;
+import com.redhat.ceylon.compiler.typechecker.io.VirtualFile;
+
+/**
+ * Checks that parsing the source files concurrently parses
+ * every file through {@link PhasedUnits#parseFile}, as
+ * subclasses customizing parsing expect, with the same
+ * package as a serial parse, and adds the units in the
+ * same order.
+ */
+public class ParseTest {
+
+    public static void main(String[] args) throws Exception {
+        VFS vfs = new VFS();
+        List<VirtualFile> srcDirectories = Collections.singletonList(
+                vfs.getFromFile(new File("test/main")));
+        RecordingPhasedUnits serial = new RecordingPhasedUnits(vfs);
+        serial.parseUnits(srcDirectories);
+        RecordingPhasedUnits parallel = new RecordingPhasedUnits(vfs);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            parallel.parseUnits(srcDirectories, executor);
+        }
+        finally {
+            executor.shutdown();
+        }
+        check(!serial.parsed.isEmpty(), "no file parsed");
+        List<String> serialParsed = new ArrayList<String>(serial.parsed);
+        List<String> parallelParsed = new ArrayList<String>(parallel.parsed);
+        //the order of the calls depends on the threads
+        Collections.sort(serialParsed);
+        Collections.sort(parallelParsed);
+        checkEquals(serialParsed, parallelParsed, "files parsed by parseFile()");
+        checkEquals(units(serial), units(parallel), "units");
+    }
+
+    private static List<String> units(PhasedUnits phasedUnits) {
+        List<String> units = new ArrayList<String>();
+        for (PhasedUnit pu: phasedUnits.getPhasedUnits()) {
+            units.add(pu.getPathRelativeToSrcDir() + " in " +
+                    pu.getPackage().getNameAsString());
+        }
+        return units;
+    }
+
+    /**
+     * Records the files it parses, with their packages.
+     */
+    private static class RecordingPhasedUnits extends PhasedUnits {
+
+        final List<String> parsed =
+                Collections.synchronizedList(new ArrayList<String>());
+
+        RecordingPhasedUnits(VFS vfs) {
+            super(new Context(null, vfs));
+        }
+
+        @Override
+        protected void parseFile(VirtualFile file, VirtualFile srcDir)
+                throws Exception {
+            parsed.add(file.getPath() + " in " +
+                    getModuleManager().getCurrentPackage().getNameAsString());
+            super.parseFile(file, srcDir);
+        }
+
+    }
+
+}
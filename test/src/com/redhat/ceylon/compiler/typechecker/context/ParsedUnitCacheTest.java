@@ -0,0 +1,61 @@
+package com.redhat.ceylon.compiler.typechecker.context;
+
+import static com.redhat.ceylon.compiler.typechecker.Tests.builder;
+import static com.redhat.ceylon.compiler.typechecker.Tests.check;
+import static com.redhat.ceylon.compiler.typechecker.Tests.checkEquals;
+import static com.redhat.ceylon.compiler.typechecker.Tests.createDirectory;
+import static com.redhat.ceylon.compiler.typechecker.Tests.delete;
+import static com.redhat.ceylon.compiler.typechecker.Tests.messages;
+
+import java.io.File;
+
+import com.redhat.ceylon.compiler.typechecker.TypeChecker;
+import com.redhat.ceylon.compiler.typechecker.parser.CeylonParser;
+import com.redhat.ceylon.compiler.typechecker.tree.Node;
+import com.redhat.ceylon.compiler.typechecker.tree.Tree;
+
+/**
+ * Checks that the units read back from the cache of parsed
+ * units report the same errors as the units parsed again,
+ * and that the entries are keyed by the classes of the
+ * parser and of the tree nodes.
+ */
+public class ParsedUnitCacheTest {
+
+    public static void main(String[] args) throws Exception {
+        String fingerprint = ParsedUnitCache.fingerprint(CeylonParser.class,
+                Node.class, Tree.class);
+        checkEquals(fingerprint, ParsedUnitCache.fingerprint(CeylonParser.class,
+                Node.class, Tree.class), "fingerprint");
+        check(!fingerprint.equals(ParsedUnitCache.fingerprint(CeylonParser.class,
+                Node.class)), "member classes of Tree not fingerprinted");
+
+        File sources = new File("test/main");
+        File directory = createDirectory("units");
+        try {
+            TypeChecker uncached = builder(sources).getTypeChecker();
+            uncached.process();
+
+            TypeChecker first = builder(sources)
+                    .parsedUnitCacheDirectory(directory)
+                    .getTypeChecker();
+            first.process();
+            ParsedUnitCache cache = first.getContext().getParsedUnitCache();
+            checkEquals(0, cache.getHits(), "hits of an empty cache");
+            check(cache.getMisses()>0, "no unit parsed");
+
+            TypeChecker second = builder(sources)
+                    .parsedUnitCacheDirectory(directory)
+                    .getTypeChecker();
+            second.process();
+            check(second.getContext().getParsedUnitCache().getHits()>0,
+                    "no unit read back");
+            checkEquals(messages(uncached), messages(second), "messages");
+            checkEquals(uncached.getErrors(), second.getErrors(), "errors");
+        }
+        finally {
+            delete(directory);
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+package com.redhat.ceylon.compiler.typechecker.model;
+
+import static com.redhat.ceylon.compiler.typechecker.Tests.builder;
+import static com.redhat.ceylon.compiler.typechecker.Tests.check;
+import static com.redhat.ceylon.compiler.typechecker.Tests.checkEquals;
+import static com.redhat.ceylon.compiler.typechecker.Tests.createDirectory;
+import static com.redhat.ceylon.compiler.typechecker.Tests.delete;
+import static com.redhat.ceylon.compiler.typechecker.Tests.messages;
+import static com.redhat.ceylon.compiler.typechecker.Tests.write;
+
+import java.io.File;
+import java.util.Collections;
+
+import com.redhat.ceylon.compiler.typechecker.TypeChecker;
+import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
+
+/**
+ * Checks that remembering the member lookups does not
+ * change the errors reported, and that the lookups
+ * remembered on a declaration are only forgotten when a
+ * member or supertype of a declaration it inherits from
+ * changes, or when the cache of their session is
+ * invalidated.
+ */
+public class MemberLookupCacheTest {
+
+    public static void main(String[] args) throws Exception {
+        File sources = new File("test/main");
+        TypeChecker uncached = builder(sources).getTypeChecker();
+        uncached.process();
+        check(uncached.getMemberLookupCache()==null, "cache enabled by default");
+
+        TypeChecker cached = builder(sources)
+                .memberLookupCacheSize(1000)
+                .getTypeChecker();
+        cached.process();
+        MemberLookupCache cache = cached.getMemberLookupCache();
+        check(cache.getHits()>0, "no hit: " + cache);
+        checkEquals(messages(uncached), messages(cached), "messages");
+        checkEquals(uncached.getErrors(), cached.getErrors(), "errors");
+
+        checkInvalidation();
+    }
+
+    private static void checkInvalidation() throws Exception {
+        File directory = createDirectory("lookups");
+        try {
+            write(directory, "types.ceylon",
+                    "shared interface I { shared formal String name; }\n" +
+                    "shared class A() satisfies I { shared actual String name = \"a\"; }\n" +
+                    "shared class B() extends A() {}\n" +
+                    "shared interface J {}\n" +
+                    "shared class U() {}\n");
+            TypeChecker typeChecker = builder(directory)
+                    .memberLookupCacheSize(1000)
+                    .getTypeChecker();
+            typeChecker.process();
+            checkEquals(0, typeChecker.getErrors(), "errors");
+            TypeDeclaration i = declaration(typeChecker, "I");
+            TypeDeclaration a = declaration(typeChecker, "A");
+            TypeDeclaration b = declaration(typeChecker, "B");
+            TypeDeclaration j = declaration(typeChecker, "J");
+            TypeDeclaration u = declaration(typeChecker, "U");
+
+            MemberLookupCache cache = new MemberLookupCache(16);
+            MemberLookupCache other = new MemberLookupCache(16);
+            TypeCaches previous = new TypeCaches(null, null, cache, null).install();
+            try {
+                Declaration name = b.getMember("name", null, false);
+                checkEquals(a.getDirectMember("name", null, false), name, "member");
+                check(b.getMember("extra", null, false)==null, "extra member");
+                checkHit(cache, b, "name", true);
+
+                //changes to unrelated declarations, and other
+                //sessions, keep the lookups
+                u.getMembers().add(value(u, "extra"));
+                u.setSatisfiedTypes(Collections.singletonList(j.getType()));
+                other.invalidate();
+                checkHit(cache, b, "name", true);
+                check(u.inherits(j), "satisfied type ignored");
+
+                //changes to inherited declarations forget them
+                a.getMembers().add(value(a, "extra"));
+                checkHit(cache, b, "name", false);
+                checkEquals(a.getDirectMember("extra", null, false),
+                        b.getMember("extra", null, false), "added member");
+                checkHit(cache, b, "name", true);
+                i.setSatisfiedTypes(Collections.singletonList(j.getType()));
+                checkHit(cache, b, "name", false);
+                check(b.inherits(j), "satisfied type of a supertype ignored");
+                checkHit(cache, b, "name", true);
+
+                cache.invalidate();
+                checkHit(cache, b, "name", false);
+            }
+            finally {
+                TypeCaches.restore(previous);
+            }
+        }
+        finally {
+            delete(directory);
+        }
+    }
+
+    private static void checkHit(MemberLookupCache cache,
+            TypeDeclaration type, String name, boolean hit) {
+        long misses = cache.getMisses();
+        type.getMember(name, null, false);
+        checkEquals(hit, cache.getMisses()==misses,
+                "lookup of " + name + " remembered");
+    }
+
+    private static Value value(TypeDeclaration container, String name) {
+        Value value = new Value();
+        value.setName(name);
+        value.setShared(true);
+        value.setContainer(container);
+        value.setUnit(container.getUnit());
+        value.setType(container.getUnit().getStringDeclaration().getType());
+        return value;
+    }
+
+    private static TypeDeclaration declaration(TypeChecker typeChecker,
+            String name) {
+        for (PhasedUnit pu: typeChecker.getPhasedUnits().getPhasedUnits()) {
+            for (Declaration d: pu.getUnit().getDeclarations()) {
+                if (name.equals(d.getName())) {
+                    return (TypeDeclaration) d;
+                }
+            }
+        }
+        throw new RuntimeException("no declaration " + name);
+    }
+
+}
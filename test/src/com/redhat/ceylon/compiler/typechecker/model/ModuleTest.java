@@ -0,0 +1,118 @@
+package com.redhat.ceylon.compiler.typechecker.model;
+
+import static com.redhat.ceylon.compiler.typechecker.Tests.builder;
+import static com.redhat.ceylon.compiler.typechecker.Tests.check;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import com.redhat.ceylon.compiler.typechecker.TypeChecker;
+
+/**
+ * Checks that the table of the shared declarations of the
+ * language module finds the same declarations as a search
+ * of its packages, and is dropped when a package changes,
+ * and that the packages of a module are found by name
+ * however the list of packages is modified.
+ */
+public class ModuleTest {
+
+    public static void main(String[] args) throws Exception {
+        TypeChecker typeChecker = builder(new File("test/main/capture")).getTypeChecker();
+        typeChecker.process();
+        Module languageModule = typeChecker.getContext().getModules().getLanguageModule();
+        int members = 0;
+        for (Package pkg: languageModule.getPackages()) {
+            for (Declaration d: pkg.getMembers()) {
+                String name = d.getName();
+                check(languageModule.getSharedMember(name)==search(languageModule, name), 
+                        "wrong shared member " + name);
+                members++;
+            }
+        }
+        check(members>0, "no member of the language module");
+        check(languageModule.getSharedMember("notAMember")==null, 
+                "missing member found");
+        
+        //a declaration added to a package is found
+        Package pkg = languageModule.getDirectPackage("ceylon.language");
+        Unit unit = new Unit();
+        unit.setPackage(pkg);
+        unit.setFilename("added.ceylon");
+        pkg.addUnit(unit);
+        Class added = new Class();
+        added.setName("AddedClass");
+        added.setShared(true);
+        added.setContainer(pkg);
+        added.setUnit(unit);
+        unit.addDeclaration(added);
+        check(languageModule.getSharedMember("AddedClass")==added, 
+                "added member not found");
+        languageModule.packagesCompleted();
+        check(languageModule.getSharedMember("AddedClass")==added, 
+                "added member not in the table");
+        pkg.removeUnit(unit);
+        check(languageModule.getSharedMember("AddedClass")==null, 
+                "removed member found");
+        
+        checkPackages();
+    }
+    
+    private static void checkPackages() {
+        Module module = new Module();
+        List<Package> packages = module.getPackages();
+        Package a = newPackage("a");
+        Package ab = newPackage("a.b");
+        Package other = newPackage("a");
+        check(module.getDirectPackage("a")==null, "package of an empty module");
+        packages.add(a);
+        check(module.getDirectPackage("a")==a, "added package not found");
+        packages.add(ab);
+        packages.add(other);
+        check(module.getDirectPackage("a.b")==ab, "added package not found");
+        check(module.getDirectPackage("a")==a, "first package does not win");
+        packages.remove(a);
+        check(module.getDirectPackage("a")==other, "other package not found");
+        packages.remove(packages.indexOf(other));
+        check(module.getDirectPackage("a")==null, "removed package found");
+        check(module.getDirectPackage("a.b")==ab, "remaining package not found");
+        
+        //modifications which drop the index
+        packages.add(0, a);
+        check(module.getDirectPackage("a")==a, "inserted package not found");
+        packages.set(0, other);
+        check(module.getDirectPackage("a")==other, "replacing package not found");
+        for (Iterator<Package> iter = packages.iterator(); iter.hasNext();) {
+            if (iter.next()==ab) {
+                iter.remove();
+            }
+        }
+        check(module.getDirectPackage("a.b")==null, "removed package found");
+        packages.addAll(Arrays.asList(ab, a));
+        check(module.getDirectPackage("a.b")==ab, "added package not found");
+        check(module.getDirectPackage("a")==other, "first package does not win");
+        packages.subList(0, 1).clear();
+        check(module.getDirectPackage("a")==a, "remaining package not found");
+        packages.clear();
+        check(module.getDirectPackage("a")==null, "removed package found");
+    }
+    
+    private static Package newPackage(String name) {
+        Package pkg = new Package();
+        pkg.setName(Arrays.asList(name.split("\\.")));
+        return pkg;
+    }
+
+    private static Declaration search(Module module, String name) {
+        for (Package pkg: module.getPackages()) {
+            Declaration d = pkg.getMember(name, null, false);
+            if (d!=null && d.isShared()) {
+                return d;
+            }
+        }
+        return null;
+    }
+
+}
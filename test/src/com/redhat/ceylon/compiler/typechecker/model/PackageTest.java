@@ -0,0 +1,63 @@
+package com.redhat.ceylon.compiler.typechecker.model;
+
+import static com.redhat.ceylon.compiler.typechecker.Tests.builder;
+import static com.redhat.ceylon.compiler.typechecker.Tests.check;
+import static com.redhat.ceylon.compiler.typechecker.model.Util.lookupMember;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.redhat.ceylon.compiler.typechecker.TypeChecker;
+
+/**
+ * Checks that the index of the toplevel declarations of a
+ * package finds the same declarations as a search of all 
+ * its members, as units are removed and added again.
+ */
+public class PackageTest {
+
+    public static void main(String[] args) throws Exception {
+        TypeChecker typeChecker = builder(new File("test/main")).getTypeChecker();
+        typeChecker.process();
+        int packages = 0;
+        for (Module module: typeChecker.getContext().getModules().getListOfModules()) {
+            for (Package pkg: module.getPackages()) {
+                checkIndex(pkg);
+                List<Unit> units = new ArrayList<Unit>();
+                for (Unit unit: pkg.getUnits()) {
+                    units.add(unit);
+                }
+                if (units.size()>1) {
+                    //remove the first unit, then add it again last
+                    Unit unit = units.get(0);
+                    pkg.removeUnit(unit);
+                    checkIndex(pkg);
+                    for (Declaration d: unit.getDeclarations()) {
+                        check(pkg.getDirectMember(d.getName(), null, false)!=d, 
+                                "removed declaration found: " + d);
+                    }
+                    pkg.addUnit(unit);
+                    checkIndex(pkg);
+                    packages++;
+                }
+            }
+        }
+        check(packages>0, "no package with several units");
+    }
+
+    private static void checkIndex(Package pkg) {
+        List<Declaration> members = pkg.getMembers();
+        for (Declaration d: members) {
+            String name = d.getName();
+            if (name!=null) {
+                Declaration expected = lookupMember(members, name, null, false);
+                check(pkg.getDirectMember(name, null, false)==expected, 
+                        "wrong declaration found for " + name + " in " + pkg);
+            }
+        }
+        check(pkg.getDirectMember("notAMember", null, false)==null, 
+                "missing member found in " + pkg);
+    }
+
+}
@@ -0,0 +1,129 @@
+package com.redhat.ceylon.compiler.typechecker.model;
+
+import static com.redhat.ceylon.compiler.typechecker.Tests.builder;
+import static com.redhat.ceylon.compiler.typechecker.Tests.check;
+import static com.redhat.ceylon.compiler.typechecker.Tests.checkEquals;
+import static com.redhat.ceylon.compiler.typechecker.Tests.createDirectory;
+import static com.redhat.ceylon.compiler.typechecker.Tests.delete;
+import static com.redhat.ceylon.compiler.typechecker.Tests.messages;
+import static com.redhat.ceylon.compiler.typechecker.Tests.write;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.Collections;
+
+import com.redhat.ceylon.compiler.typechecker.TypeChecker;
+import com.redhat.ceylon.compiler.typechecker.io.VirtualFile;
+
+/**
+ * Checks that a type checker sharing the language module
+ * of another reports the same errors, that the shared model
+ * is a frozen copy, which the type checker that built it
+ * can go on checking units without touching, and that the
+ * type checkers sharing it remember nothing on its
+ * declarations.
+ */
+public class SharedLanguageModuleTest {
+
+    private static final String A = "shared Integer a = \"hello\".size + \"world\".size;\n";
+
+    public static void main(String[] args) throws Exception {
+        File directory = createDirectory("shared");
+        try {
+            write(directory, "p/A.ceylon", A);
+            checkSharing(directory);
+        }
+        finally {
+            delete(directory);
+        }
+    }
+
+    private static void checkSharing(File directory) throws Exception {
+        TypeChecker owner = builder(directory).getTypeChecker();
+        try {
+            owner.getSharedLanguageModule();
+            throw new RuntimeException("language module shared before processing");
+        }
+        catch (IllegalStateException e) {}
+        owner.process();
+        SharedLanguageModule shared = owner.getSharedLanguageModule();
+        check(shared==owner.getSharedLanguageModule(), "language module copied twice");
+        Module ownLanguageModule = owner.getContext().getModules().getLanguageModule();
+        Module sharedLanguageModule = shared.getModule();
+        check(sharedLanguageModule!=ownLanguageModule, "language module not copied");
+        check(sharedLanguageModule.isFrozen(), "copy not frozen");
+        check(!ownLanguageModule.isFrozen(), "language module of the owner frozen");
+
+        TypeDeclaration string = (TypeDeclaration) sharedLanguageModule
+                .getSharedMember("String");
+        Object supertypes = get(string, "supertypeDeclarations");
+        check(supertypes!=null, "supertypes not computed before freezing");
+
+        TypeChecker sharing = builder(directory)
+                .sharedLanguageModule(shared)
+                .typeCaches(true)
+                .getTypeChecker();
+        sharing.process();
+        check(sharing.getContext().getModules().getLanguageModule()==sharedLanguageModule,
+                "language module not shared");
+        check(sharing.getSharedLanguageModule()==shared, "shared language module copied");
+        checkEquals(messages(owner), messages(sharing), "messages");
+        checkEquals(owner.getErrors(), sharing.getErrors(), "errors");
+        check(sharing.getMemberLookupCache().getHits()>0, "no member lookup remembered");
+        check(get(string, "memberLookups")==null, "member lookups remembered on a shared declaration");
+        check(get(string, "supertypeDeclarations")==supertypes, "supertypes of a shared declaration changed");
+
+        //the shared copy is read-only
+        Package sharedPackage = sharedLanguageModule.getPackages().get(0);
+        try {
+            sharedPackage.addUnit(new Unit());
+            throw new RuntimeException("unit added to a shared package");
+        }
+        catch (UnsupportedOperationException e) {}
+        try {
+            sharedLanguageModule.getPackages().add(new Package());
+            throw new RuntimeException("package added to a shared module");
+        }
+        catch (UnsupportedOperationException e) {}
+
+        //while the language module of the owner is not
+        Package ownPackage = ownLanguageModule.getPackages().get(0);
+        int units = count(sharedPackage.getUnits());
+        Unit unit = new Unit();
+        unit.setPackage(ownPackage);
+        unit.setFilename("Added.ceylon");
+        ownPackage.addUnit(unit);
+        ownPackage.removeUnit(unit);
+        checkEquals(units, count(sharedPackage.getUnits()), "units of the shared package");
+
+        //and both go on checking units
+        write(directory, "p/A.ceylon", "shared Integer a = \"hello\";\n");
+        recheck(owner);
+        recheck(sharing);
+        checkEquals(1, owner.getErrors(), "errors");
+        checkEquals(messages(owner), messages(sharing), "messages");
+    }
+
+    private static void recheck(TypeChecker typeChecker) {
+        VirtualFile file = typeChecker.getPhasedUnitFromRelativePath("p/A.ceylon")
+                .getUnitFile();
+        typeChecker.recheck(Collections.singletonList(file),
+                Collections.<VirtualFile>emptyList());
+    }
+
+    private static int count(Iterable<Unit> units) {
+        int count = 0;
+        for (@SuppressWarnings("unused") Unit unit: units) {
+            count++;
+        }
+        return count;
+    }
+
+    private static Object get(TypeDeclaration declaration, String name)
+            throws Exception {
+        Field field = TypeDeclaration.class.getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(declaration);
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.redhat.ceylon.compiler.typechecker.model;
+
+import static com.redhat.ceylon.compiler.typechecker.Tests.builder;
+import static com.redhat.ceylon.compiler.typechecker.Tests.check;
+import static com.redhat.ceylon.compiler.typechecker.Tests.checkEquals;
+import static com.redhat.ceylon.compiler.typechecker.Tests.messages;
+
+import java.io.File;
+
+import com.redhat.ceylon.compiler.typechecker.TypeChecker;
+
+/**
+ * Checks that remembering the subtype checks does not
+ * change the errors reported, even when the cache is too
+ * small to hold every result, and that the cache is only
+ * used by the threads in which it is installed with the
+ * other caches of its session.
+ */
+public class SubtypeCacheTest {
+
+    public static void main(String[] args) throws Exception {
+        File sources = new File("test/main");
+        TypeChecker uncached = builder(sources).getTypeChecker();
+        uncached.process();
+        check(uncached.getSubtypeCache()==null, "cache enabled by default");
+
+        TypeChecker cached = builder(sources)
+                .subtypeCacheSize(100000)
+                .getTypeChecker();
+        cached.process();
+        SubtypeCache cache = cached.getSubtypeCache();
+        check(cache!=null, "cache disabled");
+        check(cache.getHits()>0, "no hit: " + cache);
+        checkEquals(messages(uncached), messages(cached), "messages");
+        checkEquals(uncached.getErrors(), cached.getErrors(), "errors");
+
+        TypeChecker small = builder(sources)
+                .subtypeCacheSize(16)
+                .getTypeChecker();
+        small.process();
+        check(small.getSubtypeCache().size()<=16,
+                "cache too large: " + small.getSubtypeCache());
+        checkEquals(messages(uncached), messages(small), "messages");
+
+        checkInstall();
+    }
+
+    private static void checkInstall() {
+        check(SubtypeCache.current()==null, "cache left installed");
+        SubtypeCache cache = new SubtypeCache(16);
+        TypeCaches outer = new TypeCaches(cache, null, null, null);
+        TypeCaches inner = new TypeCaches(null, null, null, null);
+        TypeCaches previous = outer.install();
+        check(previous==null, "previous caches");
+        check(SubtypeCache.current()==cache, "cache not installed");
+        TypeCaches suspended = inner.install();
+        check(SubtypeCache.current()==null, "disabled cache installed");
+        TypeCaches.restore(suspended);
+        check(SubtypeCache.current()==cache, "outer cache not restored");
+        suspended = TypeCaches.suspend();
+        check(SubtypeCache.current()==null, "cache not suspended");
+        TypeCaches.restore(suspended);
+        check(SubtypeCache.current()==cache, "outer cache not restored");
+        TypeCaches.restore(previous);
+        check(SubtypeCache.current()==null, "cache not removed");
+    }
+
+}
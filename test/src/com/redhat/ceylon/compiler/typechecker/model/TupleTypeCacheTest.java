@@ -0,0 +1,84 @@
+package com.redhat.ceylon.compiler.typechecker.model;
+
+import static com.redhat.ceylon.compiler.typechecker.Tests.builder;
+import static com.redhat.ceylon.compiler.typechecker.Tests.check;
+import static com.redhat.ceylon.compiler.typechecker.Tests.checkEquals;
+import static com.redhat.ceylon.compiler.typechecker.Tests.messages;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import com.redhat.ceylon.compiler.typechecker.TypeChecker;
+
+/**
+ * Checks that remembering the tuple types does not change
+ * the errors reported, and that the tuple types shared by
+ * the cache may not be modified, unlike the element types
+ * they were built from.
+ */
+public class TupleTypeCacheTest {
+
+    public static void main(String[] args) throws Exception {
+        File sources = new File("test/main");
+        TypeChecker uncached = builder(sources).getTypeChecker();
+        uncached.process();
+        check(uncached.getTupleTypeCache()==null, "cache enabled by default");
+
+        TypeChecker cached = builder(sources)
+                .tupleTypeCacheSize(10000)
+                .getTypeChecker();
+        cached.process();
+        TupleTypeCache cache = cached.getTupleTypeCache();
+        check(cache.getHits()>0, "no hit: " + cache);
+        checkEquals(messages(uncached), messages(cached), "messages");
+        checkEquals(uncached.getErrors(), cached.getErrors(), "errors");
+
+        Module languageModule = cached.getContext().getModules()
+                .getLanguageModule();
+        checkImmutable(((TypeDeclaration) languageModule.getSharedMember("String"))
+                .getUnit());
+    }
+
+    private static void checkImmutable(Unit unit) {
+        ProducedType string = unit.getStringDeclaration().getType();
+        ProducedType integer = unit.getIntegerDeclaration().getType();
+        List<ProducedType> elemTypes = Arrays.asList(string, integer);
+        TypeCaches previous = new TypeCaches(null, null, null,
+                new TupleTypeCache(16)).install();
+        try {
+            ProducedType tuple = unit.getTupleType(elemTypes, false, false, 1);
+            check(tuple==unit.getTupleType(elemTypes, false, false, 1),
+                    "tuple type not shared");
+            check(tuple.isCanonical(), "shared tuple type not canonical");
+            try {
+                tuple.setUnderlyingType("java.lang.Object");
+                throw new RuntimeException("underlying type of a shared tuple type modified");
+            }
+            catch (IllegalStateException e) {}
+            //[Integer]|[]
+            ProducedType rest = tuple.getTypeArgumentList().get(2);
+            check(rest.getDeclaration() instanceof UnionType, "rest type " + rest);
+            check(rest.isCanonical(), "rest type of a shared tuple type not canonical");
+            for (ProducedType ct: rest.getDeclaration().getCaseTypes()) {
+                check(ct.isCanonical(), "case " + ct + 
+                        " of a shared rest type not canonical");
+            }
+            try {
+                rest.setRaw(true);
+                throw new RuntimeException("shared rest type made raw");
+            }
+            catch (IllegalStateException e) {}
+            check(!string.isCanonical() && !integer.isCanonical(),
+                    "element types made canonical");
+
+            ProducedType copy = tuple.withoutUnderlyingType();
+            copy.setUnderlyingType("java.lang.Object");
+            check(tuple.getUnderlyingType()==null, "shared tuple type modified");
+        }
+        finally {
+            TypeCaches.restore(previous);
+        }
+    }
+
+}
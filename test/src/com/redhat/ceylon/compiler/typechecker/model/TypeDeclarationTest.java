@@ -0,0 +1,74 @@
+package com.redhat.ceylon.compiler.typechecker.model;
+
+import static com.redhat.ceylon.compiler.typechecker.Tests.builder;
+import static com.redhat.ceylon.compiler.typechecker.Tests.check;
+import static com.redhat.ceylon.compiler.typechecker.Tests.checkEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.redhat.ceylon.compiler.typechecker.TypeChecker;
+
+/**
+ * Checks that the supertype declarations computed once
+ * per type declaration agree with walking its extended
+ * and satisfied types.
+ */
+public class TypeDeclarationTest {
+
+    public static void main(String[] args) throws Exception {
+        TypeChecker typeChecker = builder(new File("test/main/capture"))
+                .getTypeChecker();
+        typeChecker.process();
+        List<ClassOrInterface> types = new ArrayList<ClassOrInterface>();
+        for (Package pkg: typeChecker.getContext().getModules()
+                .getLanguageModule().getPackages()) {
+            for (Declaration d: pkg.getMembers()) {
+                addTypes(d, types);
+            }
+        }
+        check(types.size()>50, "language module types: " + types);
+        int inherited = 0;
+        for (ClassOrInterface type: types) {
+            for (ClassOrInterface supertype: types) {
+                boolean inherits = inherits(type, supertype,
+                        new HashSet<TypeDeclaration>());
+                checkEquals(inherits, type.inherits(supertype),
+                        type.getName() + " inherits " + supertype.getName());
+                if (inherits && type!=supertype) {
+                    inherited++;
+                }
+            }
+        }
+        check(inherited>50, "inherited types: " + inherited);
+    }
+
+    private static void addTypes(Declaration d, List<ClassOrInterface> types) {
+        if (d instanceof ClassOrInterface && !((ClassOrInterface) d).isAlias()) {
+            types.add((ClassOrInterface) d);
+            for (Declaration member: d.getMembers()) {
+                addTypes(member, types);
+            }
+        }
+    }
+
+    private static boolean inherits(TypeDeclaration type,
+            TypeDeclaration supertype, Set<TypeDeclaration> visited) {
+        if (type==null || !visited.add(type)) {
+            return false;
+        }
+        if (type.equals(supertype)) {
+            return true;
+        }
+        for (TypeDeclaration st: type.getSatisfiedTypeDeclarations()) {
+            if (inherits(st, supertype, visited)) {
+                return true;
+            }
+        }
+        return inherits(type.getExtendedTypeDeclaration(), supertype, visited);
+    }
+
+}
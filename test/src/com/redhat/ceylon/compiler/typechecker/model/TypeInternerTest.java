@@ -0,0 +1,105 @@
+package com.redhat.ceylon.compiler.typechecker.model;
+
+import static com.redhat.ceylon.compiler.typechecker.Tests.builder;
+import static com.redhat.ceylon.compiler.typechecker.Tests.check;
+import static com.redhat.ceylon.compiler.typechecker.Tests.checkEquals;
+import static com.redhat.ceylon.compiler.typechecker.Tests.messages;
+
+import java.io.File;
+import java.util.Collections;
+
+import com.redhat.ceylon.compiler.typechecker.TypeChecker;
+
+/**
+ * Checks that interning the types does not change the
+ * errors reported, that the types shared by the interner
+ * may not be modified, through them or through the types
+ * whose aliases resolve to them, and that the types are
+ * not shared unless interning is enabled.
+ */
+public class TypeInternerTest {
+
+    public static void main(String[] args) throws Exception {
+        File sources = new File("test/main");
+        TypeChecker uninterned = builder(sources).getTypeChecker();
+        uninterned.process();
+        check(uninterned.getTypeInterner()==null, "interner enabled by default");
+        Module uninternedLanguageModule = uninterned.getContext().getModules()
+                .getLanguageModule();
+        checkMutable((TypeDeclaration) uninternedLanguageModule.getSharedMember("Sequence"),
+                (TypeDeclaration) uninternedLanguageModule.getSharedMember("String"));
+
+        TypeChecker interned = builder(sources)
+                .typeInterning(true)
+                .getTypeChecker();
+        interned.process();
+        check(interned.getTypeInterner().getHits()>0,
+                "no hit: " + interned.getTypeInterner());
+        checkEquals(messages(uninterned), messages(interned), "messages");
+        checkEquals(uninterned.getErrors(), interned.getErrors(), "errors");
+
+        Module languageModule = interned.getContext().getModules()
+                .getLanguageModule();
+        checkImmutable((TypeDeclaration) languageModule.getSharedMember("Sequence"),
+                (TypeDeclaration) languageModule.getSharedMember("String"));
+    }
+
+    private static void checkMutable(TypeDeclaration sequence,
+            TypeDeclaration string) {
+        ProducedType type = sequence.getProducedType(null,
+                Collections.singletonList(string.getType()));
+        check(!type.isCanonical(), "type canonical without an interner");
+        type.setUnderlyingType("java.lang.Object");
+        type.setRaw(true);
+        checkEquals("java.lang.Object", type.getUnderlyingType(),
+                "underlying type");
+        check(type.isRaw(), "type not raw");
+    }
+
+    private static void checkImmutable(TypeDeclaration sequence,
+            TypeDeclaration string) {
+        TypeInterner interner = new TypeInterner(16);
+        TypeCaches previous = new TypeCaches(null, interner, null, null)
+                .install();
+        try {
+            ProducedType type = sequence.getProducedType(null,
+                    Collections.singletonList(string.getType()));
+            ProducedType same = sequence.getProducedType(null,
+                    Collections.singletonList(string.getType()));
+            check(type==same, "type not shared");
+            check(type.isCanonical(), "shared type not canonical");
+            //setting the same value is not a modification
+            type.setUnderlyingType(null);
+            type.setRaw(false);
+            try {
+                type.setUnderlyingType("java.lang.Object");
+                throw new RuntimeException("underlying type of a shared type modified");
+            }
+            catch (IllegalStateException e) {}
+            try {
+                type.setRaw(true);
+                throw new RuntimeException("shared type made raw");
+            }
+            catch (IllegalStateException e) {}
+
+            ProducedType copy = type.withoutUnderlyingType();
+            check(!copy.isCanonical(), "copy canonical");
+            copy.setUnderlyingType("java.lang.Object");
+            copy.setRaw(true);
+            ProducedType resolved = copy.resolveAliases();
+            check(resolved!=type, "shared type used for a raw type");
+            checkEquals("java.lang.Object", resolved.getUnderlyingType(),
+                    "underlying type of the resolved type");
+            check(resolved.isRaw(), "resolved type not raw");
+            copy.setUnderlyingType("java.util.List");
+            checkEquals("java.util.List", copy.resolveAliases().getUnderlyingType(),
+                    "underlying type of the resolved type");
+            check(type.getUnderlyingType()==null && !type.isRaw(),
+                    "shared type modified");
+        }
+        finally {
+            TypeCaches.restore(previous);
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.redhat.ceylon.compiler.typechecker.model;
+
+import static com.redhat.ceylon.compiler.typechecker.Tests.builder;
+import static com.redhat.ceylon.compiler.typechecker.Tests.check;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.redhat.ceylon.compiler.typechecker.TypeChecker;
+
+/**
+ * Checks that the union and intersection of many types
+ * formed at once are the same as those formed two types
+ * at a time, and that the types of classes and interfaces
+ * not related by inheritance are never subtypes of each
+ * other, which is what lets unions and intersections skip
+ * the subtype checks between them.
+ */
+public class UtilTest {
+
+    public static void main(String[] args) throws Exception {
+        TypeChecker typeChecker = builder(new File("test/main/capture"))
+                .getTypeChecker();
+        typeChecker.process();
+        Unit unit = null;
+        List<ProducedType> types = new ArrayList<ProducedType>();
+        for (Package pkg: typeChecker.getContext().getModules()
+                .getLanguageModule().getPackages()) {
+            for (Declaration d: pkg.getMembers()) {
+                if (d instanceof ClassOrInterface &&
+                        !((ClassOrInterface) d).isAlias()) {
+                    types.add(((ClassOrInterface) d).getType());
+                    unit = d.getUnit();
+                }
+            }
+        }
+        check(types.size()>50, "language module types: " + types);
+
+        for (ProducedType p: types) {
+            for (ProducedType q: types) {
+                if (!p.getDeclaration().inherits(q.getDeclaration()) &&
+                        !q.getDeclaration().inherits(p.getDeclaration())) {
+                    check(!p.isSubtypeOf(q), p.getProducedTypeName() +
+                            " is a subtype of the unrelated type " +
+                            q.getProducedTypeName());
+                }
+            }
+        }
+
+        checkUnion(types, unit);
+        for (int i=0; i+3<=types.size(); i++) {
+            List<ProducedType> window = types.subList(i, i+3);
+            checkUnion(window, unit);
+            checkIntersection(window, unit);
+        }
+    }
+
+    private static void checkUnion(List<ProducedType> types, Unit unit) {
+        ProducedType union = types.get(0);
+        for (ProducedType pt: types.subList(1, types.size())) {
+            union = Util.unionType(union, pt, unit);
+        }
+        ProducedType all = Util.unionType(types, unit);
+        check(all.isExactly(union), "union of " + types + ": " +
+                all.getProducedTypeName() + " instead of " +
+                union.getProducedTypeName());
+    }
+
+    private static void checkIntersection(List<ProducedType> types, Unit unit) {
+        ProducedType intersection = types.get(0);
+        for (ProducedType pt: types.subList(1, types.size())) {
+            intersection = Util.intersectionType(intersection, pt, unit);
+        }
+        ProducedType all = Util.intersectionType(types, unit);
+        check(all.isExactly(intersection), "intersection of " + types + ": " +
+                all.getProducedTypeName() + " instead of " +
+                intersection.getProducedTypeName());
+    }
+
+}
@@ -0,0 +1,128 @@
+package com.redhat.ceylon.compiler.typechecker.tree;
+
+import static com.redhat.ceylon.compiler.typechecker.Tests.builder;
+import static com.redhat.ceylon.compiler.typechecker.Tests.check;
+import static com.redhat.ceylon.compiler.typechecker.Tests.checkEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.redhat.ceylon.compiler.typechecker.TypeChecker;
+import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
+
+/**
+ * Checks that each of the visitors walking a tree together
+ * visits exactly the nodes it visits on its own, in the
+ * same order, whether it visits them before or after their
+ * children, or skips their children.
+ */
+public class CompositeVisitorTest {
+
+    public static void main(String[] args) throws Exception {
+        TypeChecker typeChecker = builder(new File("test/main"))
+                .getTypeChecker();
+        List<PhasedUnit> units = typeChecker.getPhasedUnits().getPhasedUnits();
+        check(!units.isEmpty(), "no unit parsed");
+        int visited = 0;
+        for (PhasedUnit pu: units) {
+            visited += checkFusion(pu.getCompilationUnit());
+        }
+        check(visited>1000, "nodes visited: " + visited);
+
+        Recorder single = new Before();
+        check(CompositeVisitor.of(single)==single, "single visitor wrapped");
+        Visitor natural = CompositeVisitor.of(new NaturalBefore(), new NaturalAfter());
+        check(natural instanceof NaturalVisitor, "natural visitors walked in another order");
+        try {
+            CompositeVisitor.of(new Before(), new NaturalAfter());
+            throw new RuntimeException("visitors walking in different orders fused");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    private static int checkFusion(Tree.CompilationUnit cu) {
+        List<Recorder> alone = recorders();
+        for (Recorder recorder: alone) {
+            cu.visit(recorder);
+        }
+        List<Recorder> fused = recorders();
+        CompositeVisitor composite = (CompositeVisitor) CompositeVisitor.of(
+                fused.toArray(new Visitor[fused.size()]));
+        checkEquals(fused, composite.getVisitors(), "visitors");
+        cu.visit(composite);
+        for (int i=0; i<alone.size(); i++) {
+            Recorder recorder = alone.get(i);
+            check(recorder.events.equals(fused.get(i).events),
+                    recorder.getClass().getSimpleName() +
+                    " visited other nodes of " + cu.getUnit());
+        }
+        return alone.get(0).events.size();
+    }
+
+    private static List<Recorder> recorders() {
+        return Arrays.<Recorder>asList(new Before(), new After(),
+                new Skipping(), new Before());
+    }
+
+    private static abstract class Recorder extends Visitor {
+        final List<Object> events = new ArrayList<Object>();
+        void record(String event, Node that) {
+            events.add(event);
+            events.add(that);
+        }
+    }
+
+    /**
+     * Visits each node before its children.
+     */
+    private static class Before extends Recorder {
+        @Override
+        public void visitAny(Node that) {
+            record("before", that);
+            super.visitAny(that);
+        }
+    }
+
+    /**
+     * Visits each node after its children.
+     */
+    private static class After extends Recorder {
+        @Override
+        public void visitAny(Node that) {
+            super.visitAny(that);
+            record("after", that);
+        }
+    }
+
+    /**
+     * Skips the bodies of classes and interfaces, and
+     * visits expressions both before and after their
+     * children.
+     */
+    private static class Skipping extends Recorder {
+        @Override
+        public void visitAny(Node that) {
+            record("any", that);
+            super.visitAny(that);
+        }
+        @Override
+        public void visit(Tree.ClassOrInterface that) {
+            record("type", that);
+        }
+        @Override
+        public void visit(Tree.Expression that) {
+            record("before", that);
+            super.visit(that);
+            record("after", that);
+        }
+    }
+
+    private static class NaturalBefore extends Before
+            implements NaturalVisitor {}
+
+    private static class NaturalAfter extends After
+            implements NaturalVisitor {}
+
+}
@@ -0,0 +1,143 @@
+package com.redhat.ceylon.compiler.typechecker.tree;
+
+import static com.redhat.ceylon.compiler.typechecker.Tests.builder;
+import static com.redhat.ceylon.compiler.typechecker.Tests.check;
+import static com.redhat.ceylon.compiler.typechecker.Tests.checkEquals;
+import static com.redhat.ceylon.compiler.typechecker.tree.Visitor.NODE_CLASSES;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.redhat.ceylon.compiler.typechecker.TypeChecker;
+import com.redhat.ceylon.compiler.typechecker.analyzer.ExpressionVisitor;
+import com.redhat.ceylon.compiler.typechecker.analyzer.TypeVisitor;
+import com.redhat.ceylon.compiler.typechecker.context.PhasedUnit;
+
+/**
+ * Checks that each node is handled by the visit() method
+ * of its closest supertype which the visitor overrides, as
+ * when climbing the node type hierarchy through each of the
+ * default visit() methods, and that a visitor calling the
+ * visit() method of its superclass reaches the next one.
+ */
+public class DispatchTableTest {
+
+    public static void main(String[] args) throws Exception {
+        Map<Class<?>, Integer> kinds = new HashMap<Class<?>, Integer>();
+        for (int kind=0; kind<NODE_CLASSES.length; kind++) {
+            check(NODE_CLASSES[kind]!=null, "no class of kind " + kind);
+            check(kinds.put(NODE_CLASSES[kind], kind)==null,
+                    "two kinds of " + NODE_CLASSES[kind]);
+        }
+        checkEquals(Tree.NODE_KINDS, kinds.size(), "kinds");
+
+        for (Class<? extends Visitor> visitorClass:
+                Arrays.<Class<? extends Visitor>>asList(Visitor.class,
+                        Recorder.class, ExpressionRecorder.class,
+                        ExpressionVisitor.class, TypeVisitor.class)) {
+            checkHandlers(visitorClass, kinds);
+        }
+
+        TypeChecker typeChecker = builder(new File("test/main"))
+                .getTypeChecker();
+        int handled = 0;
+        for (PhasedUnit pu: typeChecker.getPhasedUnits().getPhasedUnits()) {
+            Recorder recorder = new Recorder();
+            pu.getCompilationUnit().visit(recorder);
+            ExpressionRecorder expressionRecorder = new ExpressionRecorder();
+            pu.getCompilationUnit().visit(expressionRecorder);
+            checkEquals(recorder.nodes, expressionRecorder.nodes, "nodes");
+            handled += recorder.nodes;
+        }
+        check(handled>1000, "nodes handled: " + handled);
+    }
+
+    /**
+     * Compares the table of the given visitor class with
+     * the visit() methods it overrides, found by climbing
+     * the Java class hierarchy of the nodes.
+     */
+    private static void checkHandlers(Class<? extends Visitor> visitorClass,
+            Map<Class<?>, Integer> kinds) throws Exception {
+        int[] handlers = DispatchTable.handlers(visitorClass);
+        check(handlers==DispatchTable.handlers(visitorClass),
+                "handlers of " + visitorClass + " computed twice");
+        checkEquals(NODE_CLASSES.length, handlers.length, "handlers");
+        for (int kind=0; kind<handlers.length; kind++) {
+            int expected = DispatchTable.NONE;
+            for (Class<?> c = NODE_CLASSES[kind]; kinds.containsKey(c);
+                    c = c.getSuperclass()) {
+                if (visitorClass.getMethod("visit", c).getDeclaringClass()!=Visitor.class) {
+                    expected = kinds.get(c);
+                    break;
+                }
+            }
+            checkEquals(expected, handlers[kind], visitorClass.getSimpleName() +
+                    " handler of " + NODE_CLASSES[kind].getSimpleName());
+        }
+    }
+
+    /**
+     * Records the visit() methods which handle each node,
+     * and checks them against the types of the node.
+     */
+    private static class Recorder extends Visitor {
+        final List<String> handlers = new ArrayList<String>();
+        int nodes;
+        @Override
+        public void visit(Tree.AnyClass that) {
+            handlers.add("class");
+            super.visit(that);
+        }
+        @Override
+        public void visit(Tree.Declaration that) {
+            handlers.add("declaration");
+            super.visit(that);
+        }
+        @Override
+        public void visitAny(Node that) {
+            handlers.add("any");
+            checkEquals(expected(that), handlers, "handlers of " +
+                    that.getNodeType() + " at " + that.getLocation());
+            handlers.clear();
+            nodes++;
+            super.visitAny(that);
+        }
+        List<String> expected(Node that) {
+            List<String> expected = new ArrayList<String>();
+            if (that instanceof Tree.AnyClass) {
+                expected.add("class");
+            }
+            if (that instanceof Tree.Declaration) {
+                expected.add("declaration");
+            }
+            expected.add("any");
+            return expected;
+        }
+    }
+
+    /**
+     * Inherits the visit() methods of its superclass, and
+     * overrides another.
+     */
+    private static class ExpressionRecorder extends Recorder {
+        @Override
+        public void visit(Tree.Expression that) {
+            handlers.add("expression");
+            super.visit(that);
+        }
+        @Override
+        List<String> expected(Node that) {
+            List<String> expected = super.expected(that);
+            if (that instanceof Tree.Expression) {
+                expected.add(0, "expression");
+            }
+            return expected;
+        }
+    }
+
+}
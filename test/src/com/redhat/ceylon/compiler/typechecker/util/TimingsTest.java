@@ -0,0 +1,80 @@
+package com.redhat.ceylon.compiler.typechecker.util;
+
+import static com.redhat.ceylon.compiler.typechecker.Tests.check;
+import static com.redhat.ceylon.compiler.typechecker.Tests.checkEquals;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.redhat.ceylon.compiler.typechecker.tree.CompositeVisitor;
+import com.redhat.ceylon.compiler.typechecker.tree.NaturalVisitor;
+import com.redhat.ceylon.compiler.typechecker.tree.Visitor;
+
+/**
+ * Checks that the work of phases and visitors is recorded,
+ * and that the allocation is measured as zero, rather than
+ * failing, when the JVM has no way to measure it.
+ */
+public class TimingsTest {
+
+    static List<int[]> allocated;
+
+    public static void main(String[] args) throws Exception {
+        Timings timings = new Timings();
+        String report = record(timings);
+        Timings.Measurement phase = timings.getPhases().get(0);
+        if (report.contains("\"allocationSupported\": true")) {
+            check(phase.getAllocatedBytes()>0, "no allocation measured: " + phase);
+        }
+        else {
+            checkEquals(0L, phase.getAllocatedBytes(), "allocated bytes");
+        }
+
+        check(Timings.threadAllocatedBytesMethod("com.example.MissingThreadMXBean")==null,
+                "allocation measured by a missing class");
+        Timings unsupported = new Timings(
+                Timings.threadAllocatedBytesMethod("com.example.MissingThreadMXBean"));
+        report = record(unsupported);
+        check(report.contains("\"allocationSupported\": false"), "report: " + report);
+        for (Timings.Measurement m: unsupported.getPhases()) {
+            checkEquals(0L, m.getAllocatedBytes(), "allocated bytes of " + m);
+        }
+        for (Timings.Measurement m: unsupported.getVisitors()) {
+            checkEquals(0L, m.getAllocatedBytes(), "allocated bytes of " + m);
+        }
+    }
+
+    private static String record(Timings timings) throws Exception {
+        Timings.Timer timer = timings.start();
+        allocated = new ArrayList<int[]>();
+        for (int i=0; i<100; i++) {
+            allocated.add(new int[1000]);
+        }
+        timings.recordPhase("phase", timer);
+        timings.recordPhase("phase", timings.start());
+        Timings.Measurement phase = timings.getPhases().get(0);
+        checkEquals("phase", phase.getName(), "phase");
+        checkEquals(2, phase.getCount(), "runs of the phase");
+        check(phase.getWallTime()>0, "no time measured: " + phase);
+
+        timings.recordVisitor("unit.ceylon",
+                CompositeVisitor.of(new First(), new Second()), timings.start());
+        List<Timings.Measurement> visitors = timings.getVisitors();
+        checkEquals(1, visitors.size(), "visitors");
+        checkEquals(First.class.getName() + "+" + Second.class.getName(),
+                visitors.get(0).getName(), "visitors walking together");
+        checkEquals("unit.ceylon", timings.getUnits().get(0).getName(), "unit");
+
+        StringWriter report = new StringWriter();
+        timings.writeReport(report, 10);
+        check(report.toString().contains("\"name\": \"phase\", \"count\": 2"),
+                "report: " + report);
+        return report.toString();
+    }
+
+    private static class First extends Visitor implements NaturalVisitor {}
+
+    private static class Second extends Visitor implements NaturalVisitor {}
+
+}
@@ -8,6 +8,11 @@ grammar Treegen;
     package com.redhat.ceylon.compiler.typechecker.treegen; 
 }
 
+@parser::members {
+    //the kind of the next node class
+    int kind = 0;
+}
+
 nodeList : { 
            println("package com.redhat.ceylon.compiler.typechecker.tree;\n");
            println("import static com.redhat.ceylon.compiler.typechecker.tree.Walker.*;\n");
@@ -17,6 +22,8 @@ nodeList : {
            }
            (nodeDescription? node)+ 
            EOF
+           { println("    //the number of kinds of node"); }
+           { println("    public static final int NODE_KINDS = " + kind + ";\n"); }
            { println("}"); }
            ;
 
@@ -28,17 +35,29 @@ node : '^' '('
        { print(className($n.text)); }
        extendsNode
        { println(" {\n"); }
+       { println("        public static final int KIND = " + kind++ + ";\n"); }
        { println("        public " + className($n.text) + "(Token token) {" ); }
        { println("            super(token);" ); }
        { println("        }\n" ); }
        { println("        @Override public void visit(Visitor visitor) {" ); }
        { println("            try {" ); }
-       { println("                visitor.visit(this);" ); }
+       { println("                visitor.dispatch(KIND, this);" ); }
        { println("            }" ); }
        { println("            catch (Exception e) {" ); }
        { println("                visitor.handleException(e, this);"); }
        { println("            }" ); }
        { println("        }\n" ); }
+       { println("        @Override public void dispatch(Visitor visitor) {" ); }
+       { println("            try {" ); }
+       { println("                visitor.dispatch(KIND, this);" ); }
+       { println("            }" ); }
+       { println("            catch (Exception e) {" ); }
+       { println("                visitor.handleException(e, this);"); }
+       { println("            }" ); }
+       { println("        }\n" ); }
+       { println("        @Override public int getNodeKind() {" ); }
+       { println("            return KIND;" ); }
+       { println("        }\n" ); }
        { println("        @Override public void visitChildren(Visitor visitor) {" ); }
        { println("            walk" + className($n.text) +"(visitor, this);"); }      
        { println("        }\n" ); }
@@ -8,16 +8,57 @@ grammar Visitorgen;
     package com.redhat.ceylon.compiler.typechecker.treegen; 
 }
 
+@parser::members {
+    //the supertype of each node class, or null
+    java.util.Map<String,String> supers = new java.util.LinkedHashMap<String,String>();
+    
+    void printDispatch(String className) {
+        println("    final void dispatch(int kind, " + className + " that) {");
+        println("        switch (handlers[kind]) {");
+        for (String c=className; c!=null; c=supers.get(c)) {
+            //the node only needs a cast to be visited as a supertype
+            String arg = c.equals(className) ? "that" : "(" + c + ") that";
+            println("        case " + c + ".KIND: visit(" + arg + "); break;");
+        }
+        println("        default: visitAny(that);");
+        println("        }");
+        println("    }");
+    }
+}
+
 nodeList : { 
            println("package com.redhat.ceylon.compiler.typechecker.tree;\n");
            println("import static com.redhat.ceylon.compiler.typechecker.tree.Tree.*;");
            println("import static com.redhat.ceylon.compiler.typechecker.tree.Tree.Package;\n");
            println("public abstract class Visitor {\n");
            println("    public void handleException(Exception e, Node that) { that.handleException(e, this); }\n");
-           println("    public void visitAny(Node that) { that.visitChildren(this); }\n");
+           println("    public void visitAny(Node that) {");
+           println("        //a composite visitor walking the tree with this visitor");
+           println("        //visits the children with the visitors that visit them");
+           println("        if (!CompositeVisitor.proceed(this, that)) {");
+           println("            that.visitChildren(this);");
+           println("        }");
+           println("    }\n");
+           println("    //for each kind of node, the kind of the closest supertype");
+           println("    //whose visit() method this visitor overrides, if any");
+           println("    private final int[] handlers = DispatchTable.handlers(getClass());\n");
            }
            (DESCRIPTION? node)+ 
            EOF
+           { println(""); }
+           { println("    //visit the given node, as a node of the given kind, with the"); }
+           { println("    //most specific visit() method this visitor overrides, or with"); }
+           { println("    //visitAny() if it overrides none, in a single call"); }
+           { for (String c: supers.keySet()) printDispatch(c); }
+           { println(""); }
+           { println("    //the class, and the kind of the supertype, of each kind of node"); }
+           { println("    static final Class<?>[] NODE_CLASSES = new Class<?>[NODE_KINDS];"); }
+           { println("    static final int[] SUPER_KINDS = new int[NODE_KINDS];"); }
+           { println("    static {"); }
+           { for (String c: supers.keySet()) println("        NODE_CLASSES[" + c + ".KIND] = " + c + ".class;"); }
+           { for (String c: supers.keySet()) println("        SUPER_KINDS[" + c + ".KIND] = " + 
+                   (supers.get(c)==null ? "DispatchTable.NONE" : supers.get(c) + ".KIND") + ";"); }
+           { println("    }"); }
            { println("\n}"); }
            ;
 
@@ -25,8 +66,10 @@ node : '^' '('
        'abstract'? n=NODE_NAME
        (
          { println("    public void visit(" + className($n.text) + " that) { visitAny(that); }"); }
+         { supers.put(className($n.text), null); }
        | ':' en=NODE_NAME
-         { println("    public void visit(" + className($n.text) + " that) { visit((" + className($en.text) + ") that); }"); }
+         { println("    public void visit(" + className($n.text) + " that) { dispatch(" + className($en.text) + ".KIND, that); }"); }
+         { supers.put(className($n.text), className($en.text)); }
        ) 
        (DESCRIPTION? subnode)*
        (DESCRIPTION? field)*